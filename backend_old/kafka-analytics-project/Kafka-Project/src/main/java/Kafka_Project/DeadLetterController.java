@@ -0,0 +1,63 @@
+package Kafka_Project;
+
+import Kafka_Project.service.DeadLetterReplayService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Admin API for the dead-letter topics (events.&lt;family&gt;.dlt).
+ *
+ * Endpoints:
+ * - POST /api/admin/dlt/{family}/replay?rate=100&amp;max=0 - Replay the DLT into the original topics
+ * - GET /api/admin/dlt/{family}/replay - Status of the latest replay
+ * - DELETE /api/admin/dlt/{family}/replay - Stop a running replay
+ */
+@RestController
+@RequestMapping("/api/admin/dlt")
+public class DeadLetterController {
+
+    private final DeadLetterReplayService replayService;
+
+    public DeadLetterController(DeadLetterReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    /**
+     * Start a replay at the given rate (records per second), optionally limited to max records.
+     */
+    @PostMapping("/{family}/replay")
+    public ResponseEntity<?> replay(@PathVariable String family,
+                                    @RequestParam(defaultValue = "100") double rate,
+                                    @RequestParam(defaultValue = "0") long max) {
+        try {
+            DeadLetterReplayService.ReplayJob running = replayService.get(family);
+            if (running != null && running.isRunning()) {
+                return ResponseEntity.status(409).body(running.status());
+            }
+            return ResponseEntity.accepted().body(replayService.start(family, rate, max).status());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{family}/replay")
+    public ResponseEntity<?> status(@PathVariable String family) {
+        DeadLetterReplayService.ReplayJob job = replayService.get(family);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.status());
+    }
+
+    @DeleteMapping("/{family}/replay")
+    public ResponseEntity<?> stop(@PathVariable String family) {
+        DeadLetterReplayService.ReplayJob job = replayService.get(family);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        replayService.stop(family);
+        return ResponseEntity.ok(Map.of("family", family, "state", "stopping"));
+    }
+}
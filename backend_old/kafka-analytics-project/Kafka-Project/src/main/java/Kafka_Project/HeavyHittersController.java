@@ -0,0 +1,62 @@
+package Kafka_Project;
+
+import Kafka_Project.service.HeavyHitterTracker;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live top-K lists per tracking_id from the Count-Min Sketch heavy-hitter tracker.
+ *
+ * Endpoints:
+ * - GET /api/top/{trackingId}/{dimension}?limit=20&amp;window=merged - Top items of page_url, element_id,
+ *   link_url or product_id for the current, previous or merged (current + previous) window
+ */
+@RestController
+@RequestMapping("/api/top")
+public class HeavyHittersController {
+
+    private static final int MAX_LIMIT = 50;
+
+    private final HeavyHitterTracker tracker;
+
+    public HeavyHittersController(HeavyHitterTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @GetMapping("/{trackingId}/{dimension}")
+    public ResponseEntity<?> top(@PathVariable String trackingId,
+                                 @PathVariable String dimension,
+                                 @RequestParam(defaultValue = "20") int limit,
+                                 @RequestParam(defaultValue = "merged") String window) {
+        HeavyHitterTracker.Dimension selected;
+        HeavyHitterTracker.Window selectedWindow;
+        try {
+            selected = HeavyHitterTracker.Dimension.fromKey(dimension);
+            selectedWindow = HeavyHitterTracker.Window.valueOf(window.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_LIMIT));
+        }
+
+        HeavyHitterTracker.TopList top =
+            tracker.top(trackingId, selected, selectedWindow, limit, System.currentTimeMillis());
+        List<Map<String, Object>> items = top.items().stream()
+            .map(item -> Map.<String, Object>of("value", item.value(), "count", item.count()))
+            .toList();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tracking_id", trackingId);
+        body.put("dimension", selected.getKey());
+        body.put("window", selectedWindow.name().toLowerCase());
+        body.put("window_start", top.windowStartMs());
+        body.put("total", top.total());
+        body.put("error_bound", top.errorBound());
+        body.put("items", items);
+        return ResponseEntity.ok(body);
+    }
+}
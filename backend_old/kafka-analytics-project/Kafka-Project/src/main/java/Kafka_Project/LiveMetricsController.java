@@ -0,0 +1,49 @@
+package Kafka_Project;
+
+import Kafka_Project.service.LiveMetricsAggregator;
+import Kafka_Project.service.LiveMetricsBroadcaster;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Live counters per tracking_id, computed in the consumer path (see LiveMetricsAggregator).
+ *
+ * Endpoints:
+ * - GET /api/live/{trackingId}/stream - Server-Sent Events: a "snapshot" event, then "delta" events once per second
+ * - GET /api/live/{trackingId} - Current values as JSON
+ */
+@RestController
+@RequestMapping("/api/live")
+public class LiveMetricsController {
+
+    private final LiveMetricsAggregator aggregator;
+    private final LiveMetricsBroadcaster broadcaster;
+
+    public LiveMetricsController(LiveMetricsAggregator aggregator, LiveMetricsBroadcaster broadcaster) {
+        this.aggregator = aggregator;
+        this.broadcaster = broadcaster;
+    }
+
+    @GetMapping("/{trackingId}/stream")
+    public ResponseEntity<?> stream(@PathVariable String trackingId) {
+        try {
+            return ResponseEntity.ok(broadcaster.subscribe(trackingId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{trackingId}")
+    public ResponseEntity<?> current(@PathVariable String trackingId) {
+        long nowSec = System.currentTimeMillis() / 1000;
+        Map<String, Object> body = new LinkedHashMap<>(aggregator.snapshot(trackingId, nowSec));
+        body.put("tracking_id", trackingId);
+        body.put("ts", nowSec);
+        return ResponseEntity.ok(body);
+    }
+}
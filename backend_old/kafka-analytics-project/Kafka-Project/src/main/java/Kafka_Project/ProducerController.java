@@ -1,11 +1,12 @@
 package Kafka_Project;
 
+import Kafka_Project.service.EventEnvelopeBatcher;
+import Kafka_Project.service.EventIngestParser;
 import Kafka_Project.service.KafkaProducerService;
 import Kafka_Project.service.TrackingIdValidationService;
 
 import java.time.Instant;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,12 +15,10 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import Kafka_Project.Redis.RateLimiter;
 import jakarta.servlet.http.HttpServletRequest;
@@ -34,7 +33,8 @@ public class ProducerController {
     private final RateLimiter rateLimiter;
     private final KafkaProducerService kafkaProducerService;
     private final TrackingIdValidationService trackingIdValidationService;
-    private final ObjectMapper objectMapper;
+    private final EventIngestParser eventIngestParser;
+    private final EventEnvelopeBatcher envelopeBatcher;
 
     // VALID_TOPICS - includes video event types from tracker
     private static final Set<String> VALID_TOPICS = Set.of(
@@ -48,19 +48,16 @@ public class ProducerController {
         "video_play", "video_pause", "video_complete"
     );
 
-    // Fields that should NOT be moved into data (metadata fields)
-    private static final Set<String> METADATA_FIELDS = Set.of(
-        "type", "event_type", "ts", "timestamp"
-    );
-
     public ProducerController(KafkaProducerService kafkaProducerService, 
                              RateLimiter rateLimiter,
                              TrackingIdValidationService trackingIdValidationService,
-                             ObjectMapper objectMapper) {
+                             EventIngestParser eventIngestParser,
+                             EventEnvelopeBatcher envelopeBatcher) {
         this.kafkaProducerService = kafkaProducerService;
         this.rateLimiter = rateLimiter;
         this.trackingIdValidationService = trackingIdValidationService;
-        this.objectMapper = objectMapper;
+        this.eventIngestParser = eventIngestParser;
+        this.envelopeBatcher = envelopeBatcher;
     }
 
     private String getClientIP(HttpServletRequest request) {
@@ -80,157 +77,69 @@ public class ProducerController {
         return ip;
     }
     
-    /**
-     * Extract tracking_id from the request (works for both flat and nested formats)
-     */
-    private String extractTrackingId(JsonNode eventNode) {
-        // Check top-level tracking_id
-        if (eventNode.has("tracking_id")) {
-            return eventNode.get("tracking_id").asText();
-        }
-        // Check inside data object
-        if (eventNode.has("data")) {
-            JsonNode data = eventNode.get("data");
-            if (data.has("tracking_id")) {
-                return data.get("tracking_id").asText();
-            }
-            if (data.has("trackingId")) {
-                return data.get("trackingId").asText();
-            }
-        }
-        return "anonymous";
-    }
-
-    /**
-     * Get event type from the request (supports both 'type' and 'event_type' fields)
-     */
-    private String getEventType(JsonNode eventNode) {
-        if (eventNode.has("event_type")) {
-            return eventNode.get("event_type").asText();
-        }
-        if (eventNode.has("type")) {
-            return eventNode.get("type").asText();
-        }
-        return "unknown";
-    }
-
-    /**
-     * Map video event types from tracker to the video_events topic
-     */
-    private String mapToTopic(String eventType) {
-        // Video events should go to video_events topic
-        if (Set.of("play", "pause", "complete", "progress_25", "progress_50", "progress_75",
-                   "video_play", "video_pause", "video_complete").contains(eventType)) {
-            return "video_events";
-        }
-        return eventType;
-    }
-
-    /**
-     * Convert flat tracker format to nested data format expected by consumers
-     * Tracker sends: {"type":"page_load","session_id":"...","url":"..."}
-     * Consumer expects: {"event_type":"page_load","data":{"session_id":"...","url":"..."}}
-     */
-    private ObjectNode normalizeEventFormat(JsonNode eventNode, String clientIp) {
-        ObjectNode messageNode = objectMapper.createObjectNode();
-        
-        String eventType = getEventType(eventNode);
-        String trackingId = extractTrackingId(eventNode);
-        
-        messageNode.put("timestamp", Instant.now().toString());
-        messageNode.put("event_type", eventType);
-        messageNode.put("client_ip", clientIp);
-        
-        // If the event already has a "data" field, use it
-        if (eventNode.has("data")) {
-            messageNode.set("data", eventNode.get("data"));
-        } else {
-            // Convert flat format to nested data format
-            ObjectNode dataNode = objectMapper.createObjectNode();
-            Iterator<Map.Entry<String, JsonNode>> fields = eventNode.fields();
-            
-            while (fields.hasNext()) {
-                Map.Entry<String, JsonNode> field = fields.next();
-                String fieldName = field.getKey();
-                
-                // Skip metadata fields, include everything else in data
-                if (!METADATA_FIELDS.contains(fieldName)) {
-                    dataNode.set(fieldName, field.getValue());
-                }
-            }
-            
-            // Ensure tracking_id is in data
-            if (!dataNode.has("tracking_id") && !trackingId.equals("anonymous")) {
-                dataNode.put("tracking_id", trackingId);
-            }
-            
-            messageNode.set("data", dataNode);
-        }
-        
-        // Copy metadata if present
-        if (eventNode.has("metadata")) {
-            messageNode.set("metadata", eventNode.get("metadata"));
-        }
-        
-        return messageNode;
-    }
-
     /**
      * Main endpoint - accepts both single object and array formats
      * Single object: {"type":"page_load","session_id":"...","tracking_id":"..."}
      * Array format: [{"event_type":"page_load","data":{...}}]
+     *
+     * The body is read as raw bytes and normalized event by event with the streaming
+     * {@link EventIngestParser}; no JsonNode tree is built.
      */
     @PostMapping("/receive_data")
     public ResponseEntity<?> receiveData(
-            @RequestBody JsonNode requestBody, 
+            @RequestBody byte[] requestBody, 
             HttpServletRequest httpRequest,
             @RequestHeader(value = "X-User-Id", required = false) String userIdHeader) {
         
         String clientIp = getClientIP(httpRequest);
         
+        EventIngestParser.EventStream events;
         try {
-            // Rate limiting check
-            if (!rateLimiter.rateLimiter(clientIp)) {
-                logger.warn("Rate limit exceeded for IP: {}", clientIp);
+            events = eventIngestParser.open(requestBody, clientIp);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            logger.warn("Invalid request format from IP: {}", clientIp);
+            return ResponseEntity.status(400)
+                .body(Map.of("error", "Invalid request format: expected object or array"));
+        } catch (Exception error) {
+            logger.error("Error processing request from IP: {}", clientIp, error);
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Internal server error: " + error.getMessage()));
+        }
+
+        try (events) {
+            EventIngestParser.IngestEvent firstEvent = events.next();
+            String trackingId = firstEvent != null ? firstEvent.trackingId() : "unknown";
+
+            // Rate limiting check (per IP and/or tracking_id of the first event)
+            RateLimiter.Decision rateLimit = rateLimiter.tryAcquire(clientIp, firstEvent != null ? trackingId : null);
+            HttpHeaders rateLimitHeaders = rateLimitHeaders(rateLimit);
+            if (!rateLimit.allowed()) {
+                logger.warn("Rate limit exceeded for IP: {} (tracking_id: {})", clientIp, trackingId);
+                rateLimitHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, rateLimit.retryAfterSeconds())));
                 return ResponseEntity.status(429)
+                    .headers(rateLimitHeaders)
                     .body(Map.of("error", "Too many requests, try again later"));
             }
 
-            // Convert single object to array for uniform processing
-            ArrayNode eventsArray;
-            if (requestBody.isArray()) {
-                eventsArray = (ArrayNode) requestBody;
-            } else if (requestBody.isObject()) {
-                // Single object from tracker - wrap in array
-                eventsArray = objectMapper.createArrayNode();
-                eventsArray.add(requestBody);
-            } else {
-                logger.warn("Invalid request format from IP: {}", clientIp);
-                return ResponseEntity.status(400)
-                    .body(Map.of("error", "Invalid request format: expected object or array"));
-            }
-
             // Validate tracking ID (from first event in batch)
             // Per documentation 3.3.1: "validate to ensure data originates from a registered tracking ID"
-            if (eventsArray.size() > 0) {
-                String trackingId = extractTrackingId(eventsArray.get(0));
-                
-                if (!trackingIdValidationService.isValidTrackingId(trackingId)) {
-                    logger.warn("Unregistered tracking ID rejected: {} from IP: {}", trackingId, clientIp);
-                    return ResponseEntity.status(403)
-                        .body(Map.of(
-                            "error", "Invalid or unregistered tracking ID",
-                            "tracking_id", trackingId
-                        ));
-                }
+            if (firstEvent != null && !trackingIdValidationService.isValidTrackingId(trackingId)) {
+                logger.warn("Unregistered tracking ID rejected: {} from IP: {}", trackingId, clientIp);
+                return ResponseEntity.status(403)
+                    .body(Map.of(
+                        "error", "Invalid or unregistered tracking ID",
+                        "tracking_id", trackingId
+                    ));
             }
 
             int processedCount = 0;
             int skippedCount = 0;
+            // Sends each event right away, or packs events per topic and key when envelope batching is on
+            EventEnvelopeBatcher.Batch outgoing = envelopeBatcher.begin();
 
-            for (JsonNode eventNode : eventsArray) {
+            for (EventIngestParser.IngestEvent event = firstEvent; event != null; event = events.next()) {
                 try {
-                    String eventType = getEventType(eventNode);
+                    String eventType = event.eventType();
                     
                     if ("unknown".equals(eventType) || !VALID_TOPICS.contains(eventType)) {
                         logger.debug("Skipping event with invalid/unknown type: {}", eventType);
@@ -238,17 +147,14 @@ public class ProducerController {
                         continue;
                     }
 
-                    // Normalize the event format
-                    ObjectNode messageNode = normalizeEventFormat(eventNode, clientIp);
-                    String message = objectMapper.writeValueAsString(messageNode);
-                    
-                    // Map event type to appropriate Kafka topic
-                    String topic = mapToTopic(eventType);
-                    
-                    kafkaProducerService.sendMessage(message, topic);
+                    // Keyed by session so one consumer thread sees a session's events in order;
+                    // the topic follows kafka.topics.producer-mode (video types share video_events)
+                    String key = kafkaProducerService.partitionKey(event.sessionId(), event.trackingId());
+                    outgoing.add(event.payload(), eventType, key, event.trackingId(), event.sessionId(),
+                        event.timestamp());
                     processedCount++;
                     
-                    logger.debug("Sent event {} to topic {}", eventType, topic);
+                    logger.debug("Sent event {}", eventType);
                     
                 } catch (Exception e) {
                     logger.error("Error processing individual event", e);
@@ -256,16 +162,24 @@ public class ProducerController {
                 }
             }
 
-            String trackingId = eventsArray.size() > 0 ? extractTrackingId(eventsArray.get(0)) : "unknown";
+            outgoing.flush();
+
             logger.info("Processed {} events, skipped {} events for tracking_id: {}", 
                 processedCount, skippedCount, trackingId);
 
-            return ResponseEntity.ok(Map.of(
-                "status", "success",
-                "processed", processedCount,
-                "skipped", skippedCount
-            ));
-
+            return ResponseEntity.ok()
+                .headers(rateLimitHeaders)
+                .body(Map.of(
+                    "status", "success",
+                    "processed", processedCount,
+                    "skipped", skippedCount
+                ));
+
+        } catch (JsonProcessingException error) {
+            // Events before the malformed part have already been sent
+            logger.warn("Malformed JSON from IP: {}: {}", clientIp, error.getOriginalMessage());
+            return ResponseEntity.status(400)
+                .body(Map.of("error", "Malformed JSON: " + error.getOriginalMessage()));
         } catch (Exception error) {
             logger.error("Error processing request from IP: {}", clientIp, error);
             return ResponseEntity.status(500)
@@ -273,6 +187,19 @@ public class ProducerController {
         }
     }
 
+    /**
+     * X-RateLimit-* headers for the most restrictive bucket (none when rate limiting is off)
+     */
+    private HttpHeaders rateLimitHeaders(RateLimiter.Decision decision) {
+        HttpHeaders headers = new HttpHeaders();
+        if (decision.limit() >= 0) {
+            headers.set("X-RateLimit-Limit", String.valueOf(decision.limit()));
+            headers.set("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+            headers.set("X-RateLimit-Reset", String.valueOf(decision.resetSeconds()));
+        }
+        return headers;
+    }
+
     @GetMapping("/health")
     public ResponseEntity<?> health() {
         return ResponseEntity.ok(Map.of(
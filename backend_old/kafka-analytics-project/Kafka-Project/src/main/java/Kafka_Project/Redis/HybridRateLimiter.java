@@ -0,0 +1,258 @@
+package Kafka_Project.Redis;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limiting without a Redis call on the request path (rate-limit.mode=hybrid).
+ *
+ * Requests are counted per key and per fixed window in striped local counters ({@link LongAdder}).
+ * A background task pushes the non-zero local deltas to Redis and reads back the cluster-wide totals,
+ * all in one pipelined round trip. Keys without new requests only have their totals read again
+ * (one MGET) every rate-limit.hybrid.refresh-interval-ms. A request is allowed while the last known
+ * global total plus this node's unsynced count is under the window budget.
+ *
+ * Error bound: when a node's unsynced count for a key reaches rate-limit.hybrid.max-error times
+ * the budget, a sync starts right away. The cluster can therefore overshoot a budget by about
+ * nodes x max-error x budget, plus whatever arrives during one sync round trip.
+ * If Redis is unreachable, each node keeps limiting on its own counts.
+ *
+ * When a key's window ends, its counter is replaced on the next request; the old counter's unsynced
+ * count is still pushed to Redis with the next sync, so the finished window's total stays complete.
+ * A replaced counter whose push fails is kept for the next sync the same way.
+ */
+@Component
+public class HybridRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridRateLimiter.class);
+
+    private final RedisService redisService;
+    private final ConcurrentHashMap<String, WindowCounter> counters = new ConcurrentHashMap<>();
+    // Counters of finished windows replaced before their last requests were synced
+    private final Set<WindowCounter> retired = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean syncRequested = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    @Value("${rate-limit.mode:redis}")
+    private String mode;
+
+    @Value("${rate-limit.hybrid.window-seconds:60}")
+    private int windowSeconds;
+
+    @Value("${rate-limit.hybrid.sync-interval-ms:250}")
+    private long syncIntervalMs;
+
+    @Value("${rate-limit.hybrid.max-error:0.05}")
+    private double maxError;
+
+    @Value("${rate-limit.hybrid.refresh-interval-ms:2000}")
+    private long refreshIntervalMs;
+
+    public HybridRateLimiter(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!"hybrid".equals(mode)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-limit-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Hybrid rate limiter started (window-seconds={}, sync-interval-ms={}, max-error={})",
+            windowSeconds, syncIntervalMs, maxError);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Budget for one window from a refill rate (requests per second).
+     */
+    public long budgetFor(double refillPerSecond) {
+        return Math.max(1, Math.round(refillPerSecond * windowSeconds));
+    }
+
+    /**
+     * Count one request against every key if all of them are still under budget.
+     *
+     * @param keys bucket keys (already prefixed)
+     * @param budgets requests allowed per window for the key at the same index
+     */
+    public RateLimiter.Decision tryAcquire(List<String> keys, List<Long> budgets) {
+        long nowMs = System.currentTimeMillis();
+        long windowMs = windowSeconds * 1000L;
+        long window = nowMs / windowMs;
+        long resetSeconds = ((window + 1) * windowMs - nowMs + 999) / 1000;
+
+        WindowCounter[] current = new WindowCounter[keys.size()];
+        boolean allowed = true;
+        long limit = 0;
+        long remaining = -1;
+        for (int i = 0; i < current.length; i++) {
+            long budget = budgets.get(i);
+            WindowCounter counter = counter(keys.get(i), window, budget);
+            current[i] = counter;
+            long left = Math.max(0, budget - counter.estimate());
+            if (left == 0) {
+                allowed = false;
+            }
+            if (remaining < 0 || left < remaining) {
+                remaining = left;
+                limit = budget;
+            }
+        }
+
+        if (allowed) {
+            for (WindowCounter counter : current) {
+                counter.unsynced.increment();
+                if (counter.unsynced.sum() >= counter.syncThreshold) {
+                    requestSync();
+                }
+            }
+            remaining = Math.max(0, remaining - 1);
+        }
+        return new RateLimiter.Decision(allowed, limit, remaining, allowed ? 0 : resetSeconds, resetSeconds);
+    }
+
+    private WindowCounter counter(String key, long window, long budget) {
+        WindowCounter counter = counters.get(key);
+        if (counter != null && counter.window == window) {
+            return counter;
+        }
+        return counters.compute(key, (k, existing) -> {
+            if (existing != null && existing.window == window) {
+                return existing;
+            }
+            if (existing != null && existing.unsynced.sum() > 0) {
+                retired.add(existing);
+                requestSync();
+            }
+            return new WindowCounter(k, window, budget);
+        });
+    }
+
+    private void requestSync() {
+        if (scheduler != null && syncRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::sync);
+        }
+    }
+
+    /**
+     * Push local deltas to Redis and pull the global totals for the current window.
+     */
+    void sync() {
+        syncRequested.set(false);
+        long nowMs = System.currentTimeMillis();
+        long window = nowMs / (windowSeconds * 1000L);
+        Map<String, WindowCounter> pending = new LinkedHashMap<>();
+        for (WindowCounter counter : counters.values()) {
+            pending.put(counter.redisKey, counter);
+        }
+        for (Iterator<WindowCounter> it = retired.iterator(); it.hasNext(); ) {
+            WindowCounter old = it.next();
+            it.remove();
+            pending.put(old.redisKey, old);
+        }
+
+        Map<String, Long> deltas = new HashMap<>();
+        List<WindowCounter> idle = new ArrayList<>();
+        for (WindowCounter counter : pending.values()) {
+            long delta = counter.unsynced.sumThenReset();
+            if (delta != 0) {
+                counter.inFlight = delta;
+                deltas.put(counter.redisKey, delta);
+            } else if (counter.window == window && nowMs - counter.refreshedAtMs >= refreshIntervalMs) {
+                idle.add(counter);
+            }
+        }
+
+        try {
+            if (!deltas.isEmpty()) {
+                Map<String, Long> totals = redisService.incrementCounters(deltas, windowSeconds * 2);
+                for (Map.Entry<String, Long> entry : totals.entrySet()) {
+                    WindowCounter counter = pending.get(entry.getKey());
+                    counter.global = entry.getValue();
+                    counter.inFlight = 0;
+                    counter.refreshedAtMs = nowMs;
+                }
+            }
+            if (!idle.isEmpty()) {
+                List<Long> totals = redisService.getCounters(idle.stream().map(counter -> counter.redisKey).toList());
+                for (int i = 0; i < idle.size(); i++) {
+                    idle.get(i).global = totals.get(i);
+                    idle.get(i).refreshedAtMs = nowMs;
+                }
+            }
+        } catch (Exception e) {
+            for (String redisKey : deltas.keySet()) {
+                WindowCounter counter = pending.get(redisKey);
+                if (counter.inFlight != 0) {
+                    counter.unsynced.add(counter.inFlight);
+                    counter.inFlight = 0;
+                }
+            }
+            logger.debug("Rate limit sync failed, limiting locally: {}", e.getMessage());
+        }
+
+        // Counters replaced before or during the sync that got requests since, or whose push failed,
+        // go out with the next one
+        for (WindowCounter counter : pending.values()) {
+            if (counters.get(counter.key) != counter && counter.unsynced.sum() > 0) {
+                retired.add(counter);
+            }
+        }
+        // Counters from finished windows have been flushed and are no longer needed, unless counted since
+        counters.values().removeIf(counter -> counter.window < window && counter.unsynced.sum() == 0);
+    }
+
+    private final class WindowCounter {
+        final String key;
+        final long window;
+        final String redisKey;
+        final long syncThreshold;
+        final LongAdder unsynced = new LongAdder();
+        volatile long inFlight;
+        volatile long global;
+        // Only read and written by the sync task
+        long refreshedAtMs;
+
+        WindowCounter(String key, long window, long budget) {
+            this.key = key;
+            this.window = window;
+            this.redisKey = key + ":w" + window;
+            this.syncThreshold = Math.max(1, (long) (budget * maxError));
+        }
+
+        long estimate() {
+            return global + inFlight + unsynced.sum();
+        }
+    }
+}
@@ -1,28 +1,170 @@
 package Kafka_Project.Redis;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token-bucket rate limiter evaluated in Redis as a single Lua script (one EVALSHA per request).
+ *
+ * Buckets can be kept per client IP, per tracking_id or both (rate-limit.key-by=ip|tracking_id|both).
+ * With both, a request must find a token in every bucket and only then is one taken from each.
+ * Each bucket holds up to capacity tokens and refills continuously at refill-per-second.
+ *
+ * With rate-limit.mode=hybrid the check is answered from local counters instead and Redis is only
+ * reconciled in the background, see {@link HybridRateLimiter}.
+ */
 @Component
 public class RateLimiter {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    // KEYS[i]: bucket hash; ARGV[2i-1]: capacity, ARGV[2i]: refill rate in tokens per millisecond.
+    // Returns {allowed, limit, remaining, retry_after_ms, reset_ms} for the most restrictive bucket.
+    private static final String TOKEN_BUCKET_SCRIPT = """
+        local t = redis.call('TIME')
+        local now = t[1] * 1000 + math.floor(t[2] / 1000)
+        local n = #KEYS
+        local tokens, capacity, rate = {}, {}, {}
+        local allowed = 1
+        for i = 1, n do
+          capacity[i] = tonumber(ARGV[2 * i - 1])
+          rate[i] = tonumber(ARGV[2 * i])
+          local state = redis.call('HMGET', KEYS[i], 'tokens', 'ts')
+          local last = tonumber(state[1]) or capacity[i]
+          local ts = tonumber(state[2]) or now
+          tokens[i] = math.min(capacity[i], last + math.max(0, now - ts) * rate[i])
+          if tokens[i] < 1 then
+            allowed = 0
+          end
+        end
+        local limit, remaining, retry, reset = 0, -1, 0, 0
+        for i = 1, n do
+          if allowed == 1 then
+            tokens[i] = tokens[i] - 1
+          else
+            retry = math.max(retry, math.ceil((1 - tokens[i]) / rate[i]))
+          end
+          local full = math.ceil((capacity[i] - tokens[i]) / rate[i])
+          redis.call('HSET', KEYS[i], 'tokens', tostring(tokens[i]), 'ts', now)
+          redis.call('PEXPIRE', KEYS[i], full + 1000)
+          local left = math.max(0, math.floor(tokens[i]))
+          if remaining < 0 or left < remaining then
+            remaining, limit = left, capacity[i]
+          end
+          reset = math.max(reset, full)
+        end
+        return {allowed, limit, remaining, retry, reset}
+        """;
+
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private HybridRateLimiter hybridRateLimiter;
 
-    @Value("${spring.data.redis.ssl.enabled}")
+    @Value("${rate-limit.enabled:false}")
     private boolean rateLimitEnabled;
 
-    public boolean rateLimiter(String key) {
+    // redis (exact, one EVALSHA per request) or hybrid (local counters, periodic reconciliation)
+    @Value("${rate-limit.mode:redis}")
+    private String mode;
+
+    // ip, tracking_id or both
+    @Value("${rate-limit.key-by:ip}")
+    private String keyBy;
+
+    @Value("${rate-limit.key-prefix:rate_limit}")
+    private String keyPrefix;
+
+    @Value("${rate-limit.ip.capacity:100}")
+    private long ipCapacity;
+
+    @Value("${rate-limit.ip.refill-per-second:1.0}")
+    private double ipRefillPerSecond;
+
+    @Value("${rate-limit.tracking-id.capacity:1000}")
+    private long trackingIdCapacity;
+
+    @Value("${rate-limit.tracking-id.refill-per-second:50.0}")
+    private double trackingIdRefillPerSecond;
+
+    private volatile String scriptSha;
+
+    /**
+     * Outcome of a rate limit check. Times are in seconds, rounded up, for the HTTP headers.
+     *
+     * @param limit bucket capacity of the most restrictive bucket, -1 when limiting is off
+     * @param remaining tokens left in that bucket after this request
+     * @param retryAfterSeconds wait before a denied request can succeed (0 if allowed)
+     * @param resetSeconds time until all buckets are full again
+     */
+    public record Decision(boolean allowed, long limit, long remaining, long retryAfterSeconds, long resetSeconds) {
+
+        public static Decision unlimited() {
+            return new Decision(true, -1, -1, 0, 0);
+        }
+    }
+
+    /**
+     * Take one token for a request from the given client IP and tracking ID.
+     */
+    public Decision tryAcquire(String clientIp, String trackingId) {
+        if (!rateLimitEnabled) {
+            return Decision.unlimited();
+        }
+
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(4);
+        List<Long> budgets = new ArrayList<>(2);
+        if (("ip".equals(keyBy) || "both".equals(keyBy)) && clientIp != null) {
+            keys.add(keyPrefix + ":ip:" + clientIp);
+            args.add(Long.toString(ipCapacity));
+            args.add(Double.toString(ipRefillPerSecond / 1000.0));
+            budgets.add(hybridRateLimiter.budgetFor(ipRefillPerSecond));
+        }
+        if (("tracking_id".equals(keyBy) || "both".equals(keyBy)) && trackingId != null) {
+            keys.add(keyPrefix + ":tid:" + trackingId);
+            args.add(Long.toString(trackingIdCapacity));
+            args.add(Double.toString(trackingIdRefillPerSecond / 1000.0));
+            budgets.add(hybridRateLimiter.budgetFor(trackingIdRefillPerSecond));
+        }
+        if (keys.isEmpty()) {
+            return Decision.unlimited();
+        }
+        if ("hybrid".equals(mode)) {
+            return hybridRateLimiter.tryAcquire(keys, budgets);
+        }
+
         try {
-            if (!rateLimitEnabled) {
-                return true; 
-            }
-            Long requestCount = redisService.incrementCounter(key, 3600);
-            return requestCount <= 100;
+            RedisService.ScriptResult result = redisService.evalScript(scriptSha, TOKEN_BUCKET_SCRIPT, keys, args);
+            scriptSha = result.sha();
+            List<?> values = (List<?>) result.value();
+            return new Decision(
+                ((Number) values.get(0)).longValue() == 1,
+                ((Number) values.get(1)).longValue(),
+                ((Number) values.get(2)).longValue(),
+                toSeconds(((Number) values.get(3)).longValue()),
+                toSeconds(((Number) values.get(4)).longValue()));
         } catch (Exception e) {
-            return false;
+            logger.warn("✗ Rate limit check failed for {}: {}", keys, e.getMessage());
+            return new Decision(false, 0, 0, 1, 1);
         }
     }
+
+    /**
+     * IP-only check kept for existing callers.
+     */
+    public boolean rateLimiter(String key) {
+        return tryAcquire(key, null).allowed();
+    }
+
+    private static long toSeconds(long millis) {
+        return (millis + 999) / 1000;
+    }
 }
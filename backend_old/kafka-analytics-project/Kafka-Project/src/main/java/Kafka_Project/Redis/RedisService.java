@@ -5,7 +5,16 @@ import org.springframework.stereotype.Service;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Service
@@ -13,6 +22,10 @@ public class RedisService {
     
     // Key for storing registered tracking IDs
     private static final String TRACKING_IDS_SET_KEY = "registered_tracking_ids";
+    // Bumped on every change to the set so ingest nodes can detect stale local copies
+    private static final String TRACKING_IDS_VERSION_KEY = "registered_tracking_ids:version";
+    // Change notifications carrying the new version
+    public static final String TRACKING_IDS_CHANNEL = "registered_tracking_ids:changed";
     
     @Autowired
     private JedisPool jedisPool;
@@ -44,6 +57,136 @@ public class RedisService {
             return count;
         }
     }
+
+    /**
+     * Add several deltas in one pipelined round trip and return the resulting totals.
+     * A zero delta just reads the current value. Every key gets the given expiry.
+     */
+    public Map<String, Long> incrementCounters(Map<String, Long> deltas, int expireSeconds) {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        if (deltas.isEmpty()) {
+            return totals;
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Long>> responses = new ArrayList<>(deltas.size());
+            for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                responses.add(pipeline.incrBy(entry.getKey(), entry.getValue()));
+                pipeline.expire(entry.getKey(), expireSeconds);
+            }
+            pipeline.sync();
+            int i = 0;
+            for (String key : deltas.keySet()) {
+                totals.put(key, responses.get(i++).get());
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Current values of several counters in one MGET, in key order. Missing keys read as 0.
+     */
+    public List<Long> getCounters(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            List<String> values = jedis.mget(keys.toArray(new String[0]));
+            List<Long> counts = new ArrayList<>(values.size());
+            for (String value : values) {
+                counts.add(value == null ? 0L : Long.parseLong(value));
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Run a Lua script by its SHA1, loading it first if the server does not have it cached yet
+     * (after a restart or SCRIPT FLUSH). Returns the SHA1 to pass on the next call.
+     */
+    public ScriptResult evalScript(String sha, String script, List<String> keys, List<String> args) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (sha != null) {
+                try {
+                    return new ScriptResult(sha, jedis.evalsha(sha, keys, args));
+                } catch (JedisNoScriptException e) {
+                    // Fall through and reload
+                }
+            }
+            String loaded = jedis.scriptLoad(script);
+            return new ScriptResult(loaded, jedis.evalsha(loaded, keys, args));
+        }
+    }
+
+    public record ScriptResult(String sha, Object value) {
+    }
+
+    /**
+     * Set and remove fields of a hash and renew its expiry, in one pipelined round trip.
+     */
+    public void updateHash(String key, Map<String, String> put, Collection<String> remove, int expireSeconds) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            if (!put.isEmpty()) {
+                pipeline.hset(key, put);
+            }
+            if (!remove.isEmpty()) {
+                pipeline.hdel(key, remove.toArray(new String[0]));
+            }
+            pipeline.expire(key, expireSeconds);
+            pipeline.sync();
+        }
+    }
+
+    /**
+     * Set fields of several hashes and give each hash the expiry, in one pipelined round trip.
+     */
+    public void putHashes(Map<String, Map<String, String>> hashes, int expireSeconds) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Map<String, String>> entry : hashes.entrySet()) {
+                pipeline.hset(entry.getKey(), entry.getValue());
+                pipeline.expire(entry.getKey(), expireSeconds);
+            }
+            pipeline.sync();
+        }
+    }
+
+    public Map<String, String> getHash(String key) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.hgetAll(key);
+        }
+    }
+
+    /**
+     * Add elements to several HyperLogLogs in one pipelined round trip. Each key gets the expiry
+     * (seconds) given for it in expireSeconds.
+     */
+    public void addToHyperLogLogs(Map<String, ? extends Collection<String>> elements, Map<String, Long> expireSeconds) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, ? extends Collection<String>> entry : elements.entrySet()) {
+                pipeline.pfadd(entry.getKey(), entry.getValue().toArray(new String[0]));
+                pipeline.expire(entry.getKey(), expireSeconds.get(entry.getKey()));
+            }
+            pipeline.sync();
+        }
+    }
+
+    /**
+     * Estimated cardinality of the union of the given HyperLogLogs. Missing keys count as empty.
+     */
+    public long countHyperLogLogs(Collection<String> keys) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.pfcount(keys.toArray(new String[0]));
+        }
+    }
     
     // ==========================================
     // Tracking ID Validation Methods
@@ -56,8 +199,8 @@ public class RedisService {
         if (trackingId == null || trackingId.isEmpty()) {
             return false;
         }
-        try (Jedis jedis = jedisPool.getResource()) {
-            return jedis.sismember(TRACKING_IDS_SET_KEY, trackingId);
+        try {
+            return isTrackingIdMember(trackingId);
         } catch (Exception e) {
             // If Redis fails, we'll allow the request (fail-open)
             // In production, you might want to fail-closed instead
@@ -65,6 +208,15 @@ public class RedisService {
         }
     }
     
+    /**
+     * Check set membership without the fail-open fallback (Redis errors are thrown)
+     */
+    public boolean isTrackingIdMember(String trackingId) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.sismember(TRACKING_IDS_SET_KEY, trackingId);
+        }
+    }
+    
     /**
      * Register a new tracking ID
      */
@@ -74,6 +226,7 @@ public class RedisService {
         }
         try (Jedis jedis = jedisPool.getResource()) {
             jedis.sadd(TRACKING_IDS_SET_KEY, trackingId);
+            publishTrackingIdChange(jedis);
         }
     }
     
@@ -86,6 +239,7 @@ public class RedisService {
         }
         try (Jedis jedis = jedisPool.getResource()) {
             jedis.sadd(TRACKING_IDS_SET_KEY, trackingIds.toArray(new String[0]));
+            publishTrackingIdChange(jedis);
         }
     }
     
@@ -98,6 +252,7 @@ public class RedisService {
         }
         try (Jedis jedis = jedisPool.getResource()) {
             jedis.srem(TRACKING_IDS_SET_KEY, trackingId);
+            publishTrackingIdChange(jedis);
         }
     }
     
@@ -125,6 +280,31 @@ public class RedisService {
     public void clearAllTrackingIds() {
         try (Jedis jedis = jedisPool.getResource()) {
             jedis.del(TRACKING_IDS_SET_KEY);
+            publishTrackingIdChange(jedis);
         }
     }
+    
+    /**
+     * Current version of the tracking ID set (null if it was never changed)
+     */
+    public String getTrackingIdVersion() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.get(TRACKING_IDS_VERSION_KEY);
+        }
+    }
+    
+    /**
+     * Block the calling thread and deliver tracking ID change notifications to the listener
+     * until it unsubscribes or the connection fails.
+     */
+    public void subscribeTrackingIdChanges(JedisPubSub listener) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.subscribe(listener, TRACKING_IDS_CHANNEL);
+        }
+    }
+    
+    private void publishTrackingIdChange(Jedis jedis) {
+        long version = jedis.incr(TRACKING_IDS_VERSION_KEY);
+        jedis.publish(TRACKING_IDS_CHANNEL, String.valueOf(version));
+    }
 }
\ No newline at end of file
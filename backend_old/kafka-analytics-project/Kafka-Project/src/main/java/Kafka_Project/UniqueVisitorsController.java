@@ -0,0 +1,75 @@
+package Kafka_Project;
+
+import Kafka_Project.service.UniqueVisitorSketches;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unique users and sessions per tracking_id from the HyperLogLog sketches (see UniqueVisitorSketches).
+ *
+ * Endpoints:
+ * - GET /api/uniques/{trackingId}?minutes=30&amp;metric=users - Distinct users in the last 30 minutes
+ * - GET /api/uniques/{trackingId}?hours=6&amp;metric=sessions - Distinct sessions in the last 6 hours
+ * - GET /api/uniques/{trackingId}?days=7 - Distinct users in the last 7 days
+ */
+@RestController
+@RequestMapping("/api/uniques")
+public class UniqueVisitorsController {
+
+    private static final Logger logger = LoggerFactory.getLogger(UniqueVisitorsController.class);
+
+    private final UniqueVisitorSketches sketches;
+
+    public UniqueVisitorsController(UniqueVisitorSketches sketches) {
+        this.sketches = sketches;
+    }
+
+    @GetMapping("/{trackingId}")
+    public ResponseEntity<?> count(@PathVariable String trackingId,
+                                   @RequestParam(defaultValue = "users") String metric,
+                                   @RequestParam(required = false) Integer minutes,
+                                   @RequestParam(required = false) Integer hours,
+                                   @RequestParam(required = false) Integer days) {
+        UniqueVisitorSketches.Metric selected = "sessions".equals(metric)
+            ? UniqueVisitorSketches.Metric.SESSIONS
+            : "users".equals(metric) ? UniqueVisitorSketches.Metric.USERS : null;
+        if (selected == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "metric must be users or sessions"));
+        }
+        UniqueVisitorSketches.Granularity granularity;
+        int count;
+        if (days != null) {
+            granularity = UniqueVisitorSketches.Granularity.DAY;
+            count = days;
+        } else if (hours != null) {
+            granularity = UniqueVisitorSketches.Granularity.HOUR;
+            count = hours;
+        } else {
+            granularity = UniqueVisitorSketches.Granularity.MINUTE;
+            count = minutes == null ? 30 : minutes;
+        }
+
+        try {
+            long nowSec = System.currentTimeMillis() / 1000;
+            long estimate = sketches.countUnique(selected, trackingId, granularity, count, nowSec);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("tracking_id", trackingId);
+            body.put("metric", selected.getKey());
+            body.put("window_seconds", count * granularity.getSeconds());
+            body.put("estimate", estimate);
+            body.put("standard_error", UniqueVisitorSketches.STANDARD_ERROR);
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error counting unique visitors", e);
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Failed to count unique visitors: " + e.getMessage()));
+        }
+    }
+}
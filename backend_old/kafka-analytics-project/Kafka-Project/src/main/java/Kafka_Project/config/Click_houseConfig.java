@@ -6,7 +6,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class Click_houseConfig {
@@ -22,19 +27,65 @@ public class Click_houseConfig {
     
     @Value("${spring.datasource.driver-class-name}")
     private String driverClassName;
+
+    // ===== Connection pool =====
+    @Value("${clickhouse.pool.minimum-idle:2}")
+    private int minimumIdle;
+
+    @Value("${clickhouse.pool.maximum-pool-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${clickhouse.pool.connection-timeout-ms:30000}")
+    private long connectionTimeoutMs;
+
+    @Value("${clickhouse.pool.validation-timeout-ms:5000}")
+    private long validationTimeoutMs;
+
+    @Value("${clickhouse.pool.idle-timeout-ms:600000}")
+    private long idleTimeoutMs;
+
+    @Value("${clickhouse.pool.max-lifetime-ms:1800000}")
+    private long maxLifetimeMs;
+
+    @Value("${clickhouse.pool.keepalive-time-ms:120000}")
+    private long keepaliveTimeMs;
+
+    // 0 disables leak detection
+    @Value("${clickhouse.pool.leak-detection-threshold-ms:60000}")
+    private long leakDetectionThresholdMs;
     
-    @Bean
-    public DataSource dataSource() {
-        DriverManagerDataSource ds = new DriverManagerDataSource();
-        ds.setDriverClassName(driverClassName);
-        ds.setUrl(url);
-        ds.setUsername(username);
-        ds.setPassword(password);
-        return ds;
+    /**
+     * Pooled ClickHouse DataSource. Connections are validated with JDBC4 isValid() on borrow and
+     * keepalive, idle connections above minimum-idle are evicted after idle-timeout, and pool
+     * metrics (hikaricp.connections.active/idle/pending, hikaricp.connections.acquire) are
+     * published under pool="clickhouse-pool".
+     */
+    @Bean(destroyMethod = "close")
+    public DataSource dataSource(MeterRegistry meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("clickhouse-pool");
+        config.setDriverClassName(driverClassName);
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+
+        config.setMinimumIdle(minimumIdle);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setValidationTimeout(validationTimeoutMs);
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        config.setKeepaliveTime(keepaliveTimeMs);
+        config.setLeakDetectionThreshold(leakDetectionThresholdMs);
+
+        // Start even if ClickHouse is not reachable yet; connections are created on demand
+        config.setInitializationFailTimeout(-1);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new HikariDataSource(config);
     }
 
     @Bean
     public JdbcTemplate jdbcTemplate(DataSource dataSource) {
         return new JdbcTemplate(dataSource);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package Kafka_Project.config;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Kafka topic layout for tracker events.
+ *
+ * Legacy layout: one topic per event type (video event types share video_events).
+ * Consolidated layout: a few topics grouping event families, routed by the event_type header:
+ *
+ *   events.page         page_load, page_view, page_hidden, page_visible, page_unload
+ *   events.interaction  clicks, downloads, forms, video and custom events
+ *   events.commerce     product_view, cart_add, cart_remove, purchase, checkout_step
+ *   events.highvolume   mouse_move, scroll_depth, periodic_events
+ *
+ * kafka.topics.producer-mode (legacy | dual | consolidated) selects where events are published and
+ * kafka.topics.consumer-mode (legacy | both | consolidated) which topics the listeners read.
+ *
+ * Failed records of either layout go to per-family retry topics (events.page.retry-0, ...) and
+ * finally to the family's dead-letter topic (events.page.dlt).
+ */
+public final class EventTopics {
+
+    public static final String PAGE = "events.page";
+    public static final String INTERACTION = "events.interaction";
+    public static final String COMMERCE = "events.commerce";
+    public static final String HIGH_VOLUME = "events.highvolume";
+
+    public static final String VIDEO_EVENTS = "video_events";
+
+    private static final Set<String> VIDEO_EVENT_TYPES = Set.of(
+        "play", "pause", "complete", "progress_25", "progress_50", "progress_75",
+        "video_play", "video_pause", "video_complete"
+    );
+
+    // Legacy topic -> consolidated topic, in the order the legacy topics are created
+    private static final Map<String, String> FAMILIES = new LinkedHashMap<>();
+
+    static {
+        for (String topic : List.of("page_load", "page_view", "page_hidden", "page_visible", "page_unload")) {
+            FAMILIES.put(topic, PAGE);
+        }
+        for (String topic : List.of("link_click", "button_click", "mouse_click", "file_download",
+                                    "form_submit", "form_focus", "form_input", VIDEO_EVENTS, "custom_event")) {
+            FAMILIES.put(topic, INTERACTION);
+        }
+        for (String topic : List.of("product_view", "cart_add", "cart_remove", "purchase", "checkout_step")) {
+            FAMILIES.put(topic, COMMERCE);
+        }
+        for (String topic : List.of("mouse_move", "scroll_depth", "periodic_events")) {
+            FAMILIES.put(topic, HIGH_VOLUME);
+        }
+    }
+
+    public static final List<String> LEGACY_TOPICS = List.copyOf(FAMILIES.keySet());
+    public static final List<String> CONSOLIDATED_TOPICS = List.of(PAGE, INTERACTION, COMMERCE, HIGH_VOLUME);
+    public static final List<String> FAMILY_NAMES = List.of("page", "interaction", "commerce", "highvolume");
+
+    // Every retry topic of every family
+    public static final String RETRY_TOPIC_PATTERN = "events\\.[a-z]+\\.retry-[0-9]+";
+
+    private EventTopics() {
+    }
+
+    /**
+     * Legacy topic of an event type: the type itself, or video_events for video event types.
+     */
+    public static String legacyTopic(String eventType) {
+        return VIDEO_EVENT_TYPES.contains(eventType) ? VIDEO_EVENTS : eventType;
+    }
+
+    /**
+     * Consolidated topic of an event type, or null if the type has no topic.
+     */
+    public static String consolidatedTopic(String eventType) {
+        return FAMILIES.get(legacyTopic(eventType));
+    }
+
+    /**
+     * Family name (page, interaction, commerce, highvolume) of a legacy, consolidated, retry or
+     * dead-letter topic. Unknown topics count as interaction.
+     */
+    public static String family(String topic) {
+        if (topic.startsWith("events.")) {
+            int end = topic.indexOf('.', "events.".length());
+            return topic.substring("events.".length(), end < 0 ? topic.length() : end);
+        }
+        String consolidated = FAMILIES.get(topic);
+        return (consolidated != null ? consolidated : INTERACTION).substring("events.".length());
+    }
+
+    public static String retryTopic(String family, int attempt) {
+        return "events." + family + ".retry-" + attempt;
+    }
+
+    public static String deadLetterTopic(String family) {
+        return "events." + family + ".dlt";
+    }
+}
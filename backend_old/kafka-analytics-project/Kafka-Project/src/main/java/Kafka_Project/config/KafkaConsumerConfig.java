@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -12,6 +13,11 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import Kafka_Project.service.EventHeaderFilter;
 
 @EnableKafka
 @Configuration
@@ -19,12 +25,32 @@ public class KafkaConsumerConfig {
     
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
+
+    // Batch-mode fetch sizing: larger polls mean fewer, bigger ClickHouse inserts
+    @Value("${kafka.consumer.batch.max-poll-records:2000}")
+    private int batchMaxPollRecords;
+
+    @Value("${kafka.consumer.batch.fetch-min-bytes:65536}")
+    private int batchFetchMinBytes;
+
+    @Value("${kafka.consumer.batch.fetch-max-wait-ms:500}")
+    private int batchFetchMaxWaitMs;
+
+    @Value("${kafka.consumer.batch.retry-max-interval-ms:30000}")
+    private long batchRetryMaxIntervalMs;
+
+    private final EventHeaderFilter eventHeaderFilter;
+
+    public KafkaConsumerConfig(EventHeaderFilter eventHeaderFilter) {
+        this.eventHeaderFilter = eventHeaderFilter;
+    }
     
     public Map<String, Object> consumerConfig() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        // Values stay as raw UTF-8 JSON bytes; listeners parse them without a String copy
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "analytics-consumers");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
@@ -34,17 +60,61 @@ public class KafkaConsumerConfig {
     }
     
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, byte[]> consumerFactory() {
         return new DefaultKafkaConsumerFactory<>(consumerConfig());
     }
     
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.setConcurrency(3);
         factory.getContainerProperties().setPollTimeout(3000);
+        if (eventHeaderFilter.isEnabled()) {
+            factory.setRecordFilterStrategy(eventHeaderFilter);
+        }
+        return factory;
+    }
+
+    /**
+     * Consumer settings for batch listeners: offsets are committed manually after the
+     * poll's rows have been written to ClickHouse, never by the auto-commit timer.
+     */
+    public Map<String, Object> batchConsumerConfig() {
+        Map<String, Object> props = consumerConfig();
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxPollRecords);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchFetchMinBytes);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchFetchMaxWaitMs);
+        return props;
+    }
+
+    @Bean
+    public ConsumerFactory<String, byte[]> batchConsumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(batchConsumerConfig());
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(batchConsumerFactory());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // Records dropped by header are removed from the poll before the listener sees it; an
+        // emptied poll still reaches the listener so its offsets are acknowledged
+        if (eventHeaderFilter.isEnabled()) {
+            factory.setRecordFilterStrategy(eventHeaderFilter);
+        }
+
+        // A failed ClickHouse write rethrows from the listener; seek back and redeliver the
+        // whole batch with capped exponential backoff instead of skipping it
+        ExponentialBackOff backOff = new ExponentialBackOff(1000L, 2.0);
+        backOff.setMaxInterval(batchRetryMaxIntervalMs);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
         return factory;
     }
 }
\ No newline at end of file
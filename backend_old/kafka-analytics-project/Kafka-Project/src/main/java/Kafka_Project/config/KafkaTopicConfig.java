@@ -1,42 +1,75 @@
 package Kafka_Project.config;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.springframework.kafka.core.KafkaAdmin;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
 
 @Configuration
 public class KafkaTopicConfig {
-    private static final List<String> TOPIC_NAMES = List.of(
-        // Page events
-        "page_load", "page_view", "page_hidden", "page_visible", "page_unload",
-        // Interaction events
-        "link_click", "button_click", "mouse_click", "mouse_move", "scroll_depth",
-        // Form events
-        "form_submit", "form_focus", "form_input",
-        // Video events (unified topic for all video event types)
-        "video_events",
-        // E-commerce events
-        "product_view", "cart_add", "cart_remove", "purchase", "checkout_step",
-        // Other events
-        "periodic_events", "custom_event", "file_download"
-    );
+
+    @Value("${kafka.topics.producer-mode:legacy}")
+    private String producerMode;
+
+    @Value("${kafka.topics.consumer-mode:legacy}")
+    private String consumerMode;
+
+    // Partition counts of the consolidated topics; the high-volume family gets the most consumer threads
+    @Value("${kafka.topics.consolidated.partitions.page:6}")
+    private int pagePartitions;
+
+    @Value("${kafka.topics.consolidated.partitions.interaction:6}")
+    private int interactionPartitions;
+
+    @Value("${kafka.topics.consolidated.partitions.commerce:3}")
+    private int commercePartitions;
+
+    @Value("${kafka.topics.consolidated.partitions.highvolume:12}")
+    private int highVolumePartitions;
+
+    @Value("${kafka.retry.enabled:true}")
+    private boolean retryEnabled;
+
+    @Value("${kafka.retry.attempts:4}")
+    private int retryAttempts;
 
     @Bean
     public KafkaAdmin.NewTopics createTopics() {
-        
-        return new KafkaAdmin.NewTopics(
-            TOPIC_NAMES.stream()
-                .map(name -> TopicBuilder.name(name)
-                    .partitions(3)
-                    .replicas(3)
-                    .config("min.insync.replicas", "2")
-                    .config("retention.ms", "604800000")
-                    .build())
-                .toArray(NewTopic[]::new)
-        );
+        List<NewTopic> topics = new ArrayList<>();
+        // Legacy topics stay until neither side uses them, so a migration can be rolled back
+        if (!"consolidated".equals(producerMode) || !"consolidated".equals(consumerMode)) {
+            for (String name : EventTopics.LEGACY_TOPICS) {
+                topics.add(topic(name, 3));
+            }
+        }
+        if (!"legacy".equals(producerMode) || !"legacy".equals(consumerMode)) {
+            topics.add(topic(EventTopics.PAGE, pagePartitions));
+            topics.add(topic(EventTopics.INTERACTION, interactionPartitions));
+            topics.add(topic(EventTopics.COMMERCE, commercePartitions));
+            topics.add(topic(EventTopics.HIGH_VOLUME, highVolumePartitions));
+        }
+        if (retryEnabled) {
+            for (String family : EventTopics.FAMILY_NAMES) {
+                for (int attempt = 0; attempt < retryAttempts; attempt++) {
+                    topics.add(topic(EventTopics.retryTopic(family, attempt), 3));
+                }
+                topics.add(topic(EventTopics.deadLetterTopic(family), 3));
+            }
+        }
+        return new KafkaAdmin.NewTopics(topics.toArray(NewTopic[]::new));
+    }
+
+    private static NewTopic topic(String name, int partitions) {
+        return TopicBuilder.name(name)
+            .partitions(partitions)
+            .replicas(3)
+            .config("min.insync.replicas", "2")
+            .config("retention.ms", "604800000")
+            .build();
     }
-}   
\ No newline at end of file
+}
@@ -0,0 +1,355 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers rows per ClickHouse table and writes them as one batched INSERT.
+ *
+ * Each table flushes when its buffer reaches the configured row count or estimated byte size,
+ * or when the oldest buffered row has waited longer than the linger time. Defaults come from
+ * clickhouse.batch.*, and any table can override them with
+ * clickhouse.batch.tables.&lt;table_name&gt;.(max-rows|max-bytes|linger-ms).
+ *
+ * The insert transport is chosen per table: clickhouse.sink.default (jdbc) or
+ * clickhouse.sink.tables.&lt;table_name&gt;=jdbc|rowbinary.
+ *
+ * Batch-mode listeners bypass the buffers and hand a whole poll to {@link #write(ClickHouseRowBatch)},
+ * which inserts synchronously so offsets can be committed afterwards. A batch carrying a
+ * deduplication token is inserted with insert_deduplication_token, so a redelivered poll
+ * rebuilt into the same batch is dropped by ClickHouse instead of being written twice.
+ */
+@Service
+public class ClickHouseBatchWriter implements ClickHouseRowSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClickHouseBatchWriter.class);
+
+    private final Map<String, ClickHouseSink> sinks = new HashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final Map<ClickHouseTable, TableBuffer> buffers = new EnumMap<>(ClickHouseTable.class);
+    private ScheduledExecutorService scheduler;
+
+    @Value("${clickhouse.batch.max-rows:5000}")
+    private int defaultMaxRows;
+
+    @Value("${clickhouse.batch.max-bytes:4194304}")
+    private long defaultMaxBytes;
+
+    @Value("${clickhouse.batch.linger-ms:1000}")
+    private long defaultLingerMs;
+
+    @Value("${clickhouse.sink.default:jdbc}")
+    private String defaultSink;
+
+    public ClickHouseBatchWriter(List<ClickHouseSink> sinks, MeterRegistry meterRegistry, Environment environment) {
+        for (ClickHouseSink sink : sinks) {
+            this.sinks.put(sink.getFormat(), sink);
+        }
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    void start() {
+        long minLingerMs = Long.MAX_VALUE;
+        for (ClickHouseTable table : ClickHouseTable.values()) {
+            String prefix = "clickhouse.batch.tables." + table.getTableName() + ".";
+            int maxRows = environment.getProperty(prefix + "max-rows", Integer.class, defaultMaxRows);
+            long maxBytes = environment.getProperty(prefix + "max-bytes", Long.class, defaultMaxBytes);
+            long lingerMs = environment.getProperty(prefix + "linger-ms", Long.class, defaultLingerMs);
+            String format = environment.getProperty("clickhouse.sink.tables." + table.getTableName(), defaultSink);
+            ClickHouseSink sink = sinks.get(format);
+            if (sink == null) {
+                throw new IllegalStateException("Unknown ClickHouse sink '" + format + "' for " +
+                    table.getTableName() + ", expected one of " + sinks.keySet());
+            }
+            buffers.put(table, new TableBuffer(table, sink, Math.max(1, maxRows), maxBytes, lingerMs));
+            minLingerMs = Math.min(minLingerMs, lingerMs);
+        }
+
+        long tickMs = Math.max(10, Math.min(1000, minLingerMs / 2));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "clickhouse-batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushExpired, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        logger.info("ClickHouse batch writer started (max-rows={}, max-bytes={}, linger-ms={})",
+            defaultMaxRows, defaultMaxBytes, defaultLingerMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        flushAll();
+    }
+
+    @Override
+    public void add(ClickHouseTable table, Object... row) {
+        append(table, row);
+    }
+
+    /**
+     * Buffer one row for the given table. Values must follow {@link ClickHouseTable#getColumns()}.
+     *
+     * @return a future completed once the batch containing this row has been written
+     */
+    public CompletableFuture<Void> append(ClickHouseTable table, Object... row) {
+        if (row.length != table.getColumnCount()) {
+            throw new IllegalArgumentException("Expected " + table.getColumnCount() + " values for " +
+                table.getTableName() + " but got " + row.length);
+        }
+        TableBuffer buffer = buffers.get(table);
+        PendingBatch ready = null;
+        CompletableFuture<Void> completion;
+
+        synchronized (buffer) {
+            if (buffer.rows.isEmpty()) {
+                buffer.firstRowNanos = System.nanoTime();
+            }
+            buffer.rows.add(row);
+            buffer.bytes += estimateBytes(row);
+            completion = buffer.completion;
+
+            if (buffer.rows.size() >= buffer.maxRows) {
+                ready = buffer.drain("rows");
+            } else if (buffer.bytes >= buffer.maxBytes) {
+                ready = buffer.drain("bytes");
+            }
+        }
+
+        if (ready != null) {
+            write(buffer, ready);
+        }
+        return completion;
+    }
+
+    /**
+     * Buffer several rows of one table under a single lock. The buffer is flushed once afterwards if
+     * the rows took it over its row or byte limit.
+     */
+    @Override
+    public void addAll(ClickHouseTable table, List<Object[]> rows) {
+        long bytes = 0;
+        for (Object[] row : rows) {
+            if (row.length != table.getColumnCount()) {
+                throw new IllegalArgumentException("Expected " + table.getColumnCount() + " values for " +
+                    table.getTableName() + " but got " + row.length);
+            }
+            bytes += estimateBytes(row);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        TableBuffer buffer = buffers.get(table);
+        PendingBatch ready = null;
+
+        synchronized (buffer) {
+            if (buffer.rows.isEmpty()) {
+                buffer.firstRowNanos = System.nanoTime();
+            }
+            buffer.rows.addAll(rows);
+            buffer.bytes += bytes;
+
+            if (buffer.rows.size() >= buffer.maxRows) {
+                ready = buffer.drain("rows");
+            } else if (buffer.bytes >= buffer.maxBytes) {
+                ready = buffer.drain("bytes");
+            }
+        }
+
+        if (ready != null) {
+            write(buffer, ready);
+        }
+    }
+
+    /**
+     * Write whatever is currently buffered for a table.
+     */
+    public void flush(ClickHouseTable table) {
+        TableBuffer buffer = buffers.get(table);
+        PendingBatch ready;
+        synchronized (buffer) {
+            ready = buffer.rows.isEmpty() ? null : buffer.drain("manual");
+        }
+        if (ready != null) {
+            write(buffer, ready);
+        }
+    }
+
+    /**
+     * Write everything currently buffered for all tables.
+     */
+    public void flushAll() {
+        for (ClickHouseTable table : ClickHouseTable.values()) {
+            flush(table);
+        }
+    }
+
+    /**
+     * Insert all rows of a batch right away, one INSERT per table.
+     *
+     * @throws RuntimeException if any table insert fails; tables written before the failure are not rolled back
+     */
+    public void write(ClickHouseRowBatch batch) {
+        for (Map.Entry<ClickHouseTable, List<Object[]>> entry : batch.getRows().entrySet()) {
+            List<Object[]> rows = entry.getValue();
+            long bytes = 0;
+            for (Object[] row : rows) {
+                bytes += estimateBytes(row);
+            }
+            TableBuffer buffer = buffers.get(entry.getKey());
+            try {
+                insert(buffer, rows, bytes, "poll", batch.getDedupToken());
+            } catch (RuntimeException e) {
+                buffer.failureCounter.increment();
+                throw e;
+            }
+        }
+    }
+
+    private void flushExpired() {
+        long now = System.nanoTime();
+        for (TableBuffer buffer : buffers.values()) {
+            PendingBatch ready = null;
+            synchronized (buffer) {
+                if (!buffer.rows.isEmpty() && now - buffer.firstRowNanos >= buffer.lingerNanos) {
+                    ready = buffer.drain("linger");
+                }
+            }
+            if (ready != null) {
+                write(buffer, ready);
+            }
+        }
+    }
+
+    private void write(TableBuffer buffer, PendingBatch batch) {
+        try {
+            insert(buffer, batch.rows, batch.bytes, batch.trigger, null);
+            batch.completion.complete(null);
+        } catch (Exception e) {
+            buffer.failureCounter.increment();
+            batch.completion.completeExceptionally(e);
+            logger.error("✗ Failed to flush {} rows into {}: {}",
+                batch.rows.size(), buffer.table.getTableName(), e.getMessage(), e);
+        }
+    }
+
+    private void insert(TableBuffer buffer, List<Object[]> rows, long bytes, String trigger, String dedupToken) {
+        ClickHouseTable table = buffer.table;
+        long start = System.nanoTime();
+
+        buffer.sink.insert(table, rows, dedupToken);
+
+        buffer.flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        buffer.rowsSummary.record(rows.size());
+        buffer.bytesSummary.record(bytes);
+        meterRegistry.counter("clickhouse.batch.flushes", "table", table.getTableName(),
+            "sink", buffer.sink.getFormat(), "trigger", trigger).increment();
+        logger.debug("✓ Flushed {} rows ({} bytes) into {} [{}]", rows.size(), bytes, table.getTableName(), trigger);
+    }
+
+    private static long estimateBytes(Object[] row) {
+        long size = 0;
+        for (Object value : row) {
+            if (value == null) {
+                size += 1;
+            } else if (value instanceof String s) {
+                size += s.length() + 1;
+            } else {
+                size += 8;
+            }
+        }
+        return size;
+    }
+
+    private record PendingBatch(List<Object[]> rows, long bytes, String trigger, CompletableFuture<Void> completion) {
+    }
+
+    private final class TableBuffer {
+        final ClickHouseTable table;
+        final ClickHouseSink sink;
+        final int maxRows;
+        final long maxBytes;
+        final long lingerNanos;
+        final Timer flushTimer;
+        final DistributionSummary rowsSummary;
+        final DistributionSummary bytesSummary;
+        final Counter failureCounter;
+
+        List<Object[]> rows;
+        long bytes;
+        long firstRowNanos;
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        TableBuffer(ClickHouseTable table, ClickHouseSink sink, int maxRows, long maxBytes, long lingerMs) {
+            this.table = table;
+            this.sink = sink;
+            this.maxRows = maxRows;
+            this.maxBytes = maxBytes;
+            this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+            this.rows = new ArrayList<>(Math.min(maxRows, 1024));
+
+            String name = table.getTableName();
+            this.flushTimer = Timer.builder("clickhouse.batch.flush.duration")
+                .description("Time spent writing one batch to ClickHouse")
+                .tag("table", name)
+                .tag("sink", sink.getFormat())
+                .register(meterRegistry);
+            this.rowsSummary = DistributionSummary.builder("clickhouse.batch.rows")
+                .description("Rows per flushed batch")
+                .tag("table", name)
+                .register(meterRegistry);
+            this.bytesSummary = DistributionSummary.builder("clickhouse.batch.bytes")
+                .description("Estimated bytes per flushed batch")
+                .baseUnit("bytes")
+                .tag("table", name)
+                .register(meterRegistry);
+            this.failureCounter = Counter.builder("clickhouse.batch.flush.failures")
+                .tag("table", name)
+                .register(meterRegistry);
+            Gauge.builder("clickhouse.batch.pending.rows", this, b -> b.pendingRows())
+                .tag("table", name)
+                .register(meterRegistry);
+        }
+
+        synchronized int pendingRows() {
+            return rows.size();
+        }
+
+        /** Caller must hold this buffer's monitor. */
+        PendingBatch drain(String trigger) {
+            PendingBatch batch = new PendingBatch(rows, bytes, trigger, completion);
+            rows = new ArrayList<>(Math.min(maxRows, 1024));
+            bytes = 0;
+            completion = new CompletableFuture<>();
+            return batch;
+        }
+    }
+}
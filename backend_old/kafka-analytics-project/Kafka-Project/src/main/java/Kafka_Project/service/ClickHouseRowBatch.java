@@ -0,0 +1,71 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows collected from one Kafka poll, grouped per table.
+ * Not thread-safe: a batch belongs to the listener thread that fills it.
+ */
+public class ClickHouseRowBatch implements ClickHouseRowSink {
+
+    private final Map<ClickHouseTable, List<Object[]>> rows = new EnumMap<>(ClickHouseTable.class);
+    private final String dedupToken;
+    private int rowCount;
+
+    public ClickHouseRowBatch() {
+        this(null);
+    }
+
+    /**
+     * @param dedupToken insert_deduplication_token for the INSERTs of this batch, or null for none.
+     *                   It must identify exactly the records the rows came from (see {@link DedupBlockPlanner}).
+     */
+    public ClickHouseRowBatch(String dedupToken) {
+        this.dedupToken = dedupToken;
+    }
+
+    @Override
+    public void add(ClickHouseTable table, Object... row) {
+        checkWidth(table, row);
+        rows.computeIfAbsent(table, t -> new ArrayList<>()).add(row);
+        rowCount++;
+    }
+
+    @Override
+    public void addAll(ClickHouseTable table, List<Object[]> tableRows) {
+        for (Object[] row : tableRows) {
+            checkWidth(table, row);
+        }
+        rows.computeIfAbsent(table, t -> new ArrayList<>(tableRows.size())).addAll(tableRows);
+        rowCount += tableRows.size();
+    }
+
+    private static void checkWidth(ClickHouseTable table, Object[] row) {
+        if (row.length != table.getColumnCount()) {
+            throw new IllegalArgumentException("Expected " + table.getColumnCount() + " values for " +
+                table.getTableName() + " but got " + row.length);
+        }
+    }
+
+    public Map<ClickHouseTable, List<Object[]>> getRows() {
+        return Collections.unmodifiableMap(rows);
+    }
+
+    public String getDedupToken() {
+        return dedupToken;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+}
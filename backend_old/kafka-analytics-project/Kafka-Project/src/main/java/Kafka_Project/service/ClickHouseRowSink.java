@@ -0,0 +1,24 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import java.util.List;
+
+/**
+ * Destination for rows produced by the consumers.
+ * Values must follow the column order of {@link ClickHouseTable#getColumns()}.
+ */
+public interface ClickHouseRowSink {
+
+    void add(ClickHouseTable table, Object... row);
+
+    /**
+     * Add several rows of one table. Sinks override this to take their lock or look up their buffer
+     * once for the whole list.
+     */
+    default void addAll(ClickHouseTable table, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            add(table, row);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import java.util.List;
+
+/**
+ * Transport used by {@link ClickHouseBatchWriter} to insert one batch of rows into a table.
+ * The transport for each table is selected with clickhouse.sink.tables.&lt;table_name&gt;.
+ */
+public interface ClickHouseSink {
+
+    /**
+     * Name used in configuration, e.g. "jdbc" or "rowbinary".
+     */
+    String getFormat();
+
+    /**
+     * Insert all rows as a single INSERT. Throws if the insert fails.
+     */
+    void insert(ClickHouseTable table, List<Object[]> rows);
+
+    /**
+     * Insert all rows with an insert_deduplication_token, so that ClickHouse drops the insert if a
+     * block with the same token was already written (see non_replicated_deduplication_window).
+     * A null token inserts without deduplication.
+     */
+    void insert(ClickHouseTable table, List<Object[]> rows, String dedupToken);
+}
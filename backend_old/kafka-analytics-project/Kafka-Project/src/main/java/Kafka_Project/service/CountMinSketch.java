@@ -0,0 +1,172 @@
+package Kafka_Project.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Count-Min Sketch over strings: depth rows of width counters. An estimate is never below the true
+ * count and exceeds it by at most e / width * total() with probability 1 - e^-depth.
+ *
+ * Sketches of the same dimensions merge by adding their counters, which gives the sketch of the
+ * combined stream. Not thread-safe.
+ */
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int[] counters;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+    }
+
+    /**
+     * Count one occurrence of item and return its new estimate.
+     */
+    public long add(String item) {
+        int h1 = mix(item.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + Math.floorMod(h1 + row * h2, width);
+            if (counters[index] < Integer.MAX_VALUE) {
+                counters[index]++;
+            }
+            estimate = Math.min(estimate, counters[index]);
+        }
+        total++;
+        return estimate;
+    }
+
+    public long estimate(String item) {
+        int h1 = mix(item.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + Math.floorMod(h1 + row * h2, width)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Add the counters of a sketch of the same dimensions to this one.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge a " + other.depth + "x" + other.width +
+                " sketch into a " + depth + "x" + width + " one");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (int) Math.min(Integer.MAX_VALUE, (long) counters[i] + other.counters[i]);
+        }
+        total += other.total;
+    }
+
+    public CountMinSketch copy() {
+        CountMinSketch copy = new CountMinSketch(depth, width);
+        System.arraycopy(counters, 0, copy.counters, 0, counters.length);
+        copy.total = total;
+        return copy;
+    }
+
+    /**
+     * Serialized form for other nodes: depth, width, total and the counters as unsigned LEB128 varints,
+     * so the many small counters of a sparse sketch take one byte each.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        out.writeLong(total);
+        for (int counter : counters) {
+            int value = counter;
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    public static CountMinSketch readFrom(DataInputStream in) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(in.readInt(), in.readInt());
+        sketch.total = in.readLong();
+        for (int i = 0; i < sketch.counters.length; i++) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            sketch.counters[i] = value;
+        }
+        return sketch;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(counters.length + 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static CountMinSketch fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return readFrom(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable sketch", e);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+
+    /**
+     * Number of items added, which bounds the overestimate.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Largest expected overestimate: e / width * total().
+     */
+    public long errorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    // Murmur3 finalizer, spreads String.hashCode over the row width
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
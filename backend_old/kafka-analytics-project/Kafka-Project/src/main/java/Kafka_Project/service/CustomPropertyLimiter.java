@@ -0,0 +1,108 @@
+package Kafka_Project.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the property keys of custom events bounded per tracking_id before they are stored in the
+ * custom_events.properties JSON column.
+ *
+ * Each tracking_id may use at most custom.properties.max-keys distinct top-level keys: the first ones
+ * seen are admitted, later new keys are dropped from the stored properties (their values with them)
+ * and counted in custom.properties.dropped. Keys longer than custom.properties.max-key-length are
+ * always dropped. Nested values of an admitted key are kept as they are. The admitted keys live in
+ * memory, so every consumer node and every restart admits keys on its own; the cap bounds what one
+ * node writes, not the union.
+ */
+@Service
+public class CustomPropertyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CustomPropertyLimiter.class);
+
+    private final Map<String, Set<String>> keysByTenant = new ConcurrentHashMap<>();
+    private final Counter dropped;
+
+    @Value("${custom.properties.max-keys:200}")
+    private int maxKeys = 200;
+
+    @Value("${custom.properties.max-key-length:128}")
+    private int maxKeyLength = 128;
+
+    public CustomPropertyLimiter(MeterRegistry meterRegistry) {
+        this.dropped = Counter.builder("custom.properties.dropped")
+            .description("Custom event properties dropped by the per-tracking_id key cap")
+            .register(meterRegistry);
+        Gauge.builder("custom.properties.tenants", keysByTenant, Map::size)
+            .description("Tracking IDs with admitted custom event property keys")
+            .register(meterRegistry);
+    }
+
+    /**
+     * The properties of one custom event as compact JSON, without the keys over the cap. A value that
+     * is not an object is stored under the key "value".
+     */
+    public String toJson(String trackingId, JsonNode properties) {
+        if (properties == null || properties.isMissingNode() || properties.isNull()) {
+            return "{}";
+        }
+        ObjectNode source;
+        if (properties.isObject()) {
+            source = (ObjectNode) properties;
+        } else {
+            source = JsonNodeFactory.instance.objectNode();
+            source.set("value", properties);
+        }
+        Set<String> keys = keysByTenant.computeIfAbsent(trackingId, id -> ConcurrentHashMap.newKeySet());
+        ObjectNode kept = JsonNodeFactory.instance.objectNode();
+        int rejected = 0;
+        for (Map.Entry<String, JsonNode> field : source.properties()) {
+            if (admit(keys, field.getKey())) {
+                kept.set(field.getKey(), field.getValue());
+            } else {
+                rejected++;
+            }
+        }
+        if (rejected > 0) {
+            dropped.increment(rejected);
+            logger.debug("Dropped {} custom event properties over the key cap of tracking_id {}", rejected, trackingId);
+        }
+        return kept.toString();
+    }
+
+    /**
+     * Distinct property keys admitted for a tracking_id.
+     */
+    public int keyCount(String trackingId) {
+        Set<String> keys = keysByTenant.get(trackingId);
+        return keys == null ? 0 : keys.size();
+    }
+
+    private boolean admit(Set<String> keys, String key) {
+        if (key.length() > maxKeyLength) {
+            return false;
+        }
+        if (keys.contains(key)) {
+            return true;
+        }
+        if (keys.size() >= maxKeys) {
+            return false;
+        }
+        // Concurrent first sightings may overshoot the cap by a few keys
+        keys.add(key);
+        return true;
+    }
+}
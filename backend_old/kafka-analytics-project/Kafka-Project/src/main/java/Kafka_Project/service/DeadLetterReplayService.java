@@ -0,0 +1,223 @@
+package Kafka_Project.service;
+
+import Kafka_Project.config.EventTopics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a family's dead-letter topic into the topics the records originally came from, so the
+ * normal consumers handle them again.
+ *
+ * One replay per family runs at a time on its own thread with its own consumer group
+ * (analytics-dlt-replay), paced to a fixed number of records per second. Offsets are committed
+ * after each poll's records have been published, so a stopped replay resumes where it left off and
+ * a finished one does not replay the same records twice. Retry and failure headers are removed,
+ * so a replayed record that fails again starts a fresh round of retries.
+ */
+@Service
+public class DeadLetterReplayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayService.class);
+
+    private static final String GROUP_ID = "analytics-dlt-replay";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(2);
+    // Stop once this many consecutive polls come back empty
+    private static final int IDLE_POLLS = 3;
+
+    private static final Set<String> FAILURE_HEADERS = Set.of(
+        EventHeaders.RETRY_ATTEMPT, EventHeaders.RETRY_DUE, EventHeaders.FAILURE_STAGE,
+        EventHeaders.FAILURE_REASON, EventHeaders.FAILED_AT, EventHeaders.ORIGINAL_TOPIC,
+        EventHeaders.ORIGINAL_PARTITION, EventHeaders.ORIGINAL_OFFSET
+    );
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+
+    public DeadLetterReplayService(@Qualifier("consumerFactory") ConsumerFactory<String, byte[]> consumerFactory,
+                                   KafkaTemplate<String, byte[]> kafkaTemplate,
+                                   MeterRegistry meterRegistry) {
+        this.consumerFactory = consumerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Progress of one replay.
+     */
+    public final class ReplayJob implements Runnable {
+
+        private final String family;
+        private final double recordsPerSecond;
+        private final long maxRecords;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong replayed = new AtomicLong();
+        private volatile String state = "running";
+        private volatile String error;
+        private volatile boolean stopRequested;
+
+        private ReplayJob(String family, double recordsPerSecond, long maxRecords) {
+            this.family = family;
+            this.recordsPerSecond = recordsPerSecond;
+            this.maxRecords = maxRecords;
+        }
+
+        public Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("family", family);
+            status.put("topic", EventTopics.deadLetterTopic(family));
+            status.put("state", state);
+            status.put("replayed", replayed.get());
+            status.put("rate_per_second", recordsPerSecond);
+            status.put("max_records", maxRecords);
+            status.put("started_at", startedAt.toString());
+            if (error != null) {
+                status.put("error", error);
+            }
+            return status;
+        }
+
+        public boolean isRunning() {
+            return "running".equals(state);
+        }
+
+        @Override
+        public void run() {
+            Properties overrides = new Properties();
+            overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+            overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+            overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(Math.max(1, (int) Math.min(500, recordsPerSecond))));
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / recordsPerSecond);
+            long next = System.nanoTime();
+            int idlePolls = 0;
+
+            try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer(GROUP_ID, "dlt-replay-" + family, null, overrides)) {
+                consumer.subscribe(List.of(EventTopics.deadLetterTopic(family)));
+                while (!stopRequested && idlePolls < IDLE_POLLS && (maxRecords <= 0 || replayed.get() < maxRecords)) {
+                    ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                    if (records.isEmpty()) {
+                        idlePolls++;
+                        continue;
+                    }
+                    idlePolls = 0;
+                    List<CompletableFuture<?>> sends = new ArrayList<>(records.count());
+                    Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                    for (ConsumerRecord<String, byte[]> record : records) {
+                        if (stopRequested || (maxRecords > 0 && replayed.get() + sends.size() >= maxRecords)) {
+                            // Not committed, so the next replay starts with these records
+                            break;
+                        }
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        next = Math.max(next, System.nanoTime() - intervalNanos) + intervalNanos;
+                        sends.add(kafkaTemplate.send(replayRecord(record)));
+                        offsets.put(new TopicPartition(record.topic(), record.partition()),
+                            new OffsetAndMetadata(record.offset() + 1));
+                    }
+                    CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+                    consumer.commitSync(offsets);
+                    replayed.addAndGet(sends.size());
+                    meterRegistry.counter("kafka.dlt.replayed", "family", family).increment(sends.size());
+                }
+                state = stopRequested ? "stopped" : "completed";
+                logger.info("✓ DLT replay of {} {}: {} records", family, state, replayed.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                state = "stopped";
+            } catch (Exception e) {
+                state = "failed";
+                error = e.getMessage();
+                logger.error("✗ DLT replay of {} failed after {} records: {}", family, replayed.get(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Start replaying a family's dead-letter topic.
+     *
+     * @param maxRecords stop after this many records, 0 for the whole topic
+     * @return the new job, or the running one if a replay of the family is already in progress
+     * @throws IllegalArgumentException for an unknown family or a non-positive rate
+     */
+    public synchronized ReplayJob start(String family, double recordsPerSecond, long maxRecords) {
+        if (!EventTopics.FAMILY_NAMES.contains(family)) {
+            throw new IllegalArgumentException("Unknown event family: " + family);
+        }
+        if (recordsPerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        ReplayJob current = jobs.get(family);
+        if (current != null && current.isRunning()) {
+            return current;
+        }
+        ReplayJob job = new ReplayJob(family, recordsPerSecond, maxRecords);
+        jobs.put(family, job);
+        Thread thread = new Thread(job, "dlt-replay-" + family);
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Started DLT replay of {} at {} records/s", family, recordsPerSecond);
+        return job;
+    }
+
+    /**
+     * @return the latest replay of the family, or null if none was started
+     */
+    public ReplayJob get(String family) {
+        return jobs.get(family);
+    }
+
+    public void stop(String family) {
+        ReplayJob job = jobs.get(family);
+        if (job != null) {
+            job.stopRequested = true;
+        }
+    }
+
+    private static ProducerRecord<String, byte[]> replayRecord(ConsumerRecord<String, byte[]> record) {
+        String topic = EventHeaders.get(record.headers(), EventHeaders.ORIGINAL_TOPIC);
+        if (topic == null) {
+            topic = "events." + EventTopics.family(record.topic());
+        }
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!FAILURE_HEADERS.contains(header.key())) {
+                headers.add(header);
+            }
+        }
+        return new ProducerRecord<>(topic, null, record.key(), record.value(), headers);
+    }
+}
@@ -0,0 +1,181 @@
+package Kafka_Project.service;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits a batch poll into replay-stable blocks, one per partition, each covering an offset range
+ * [start, end]. The rows of a block are inserted with the deduplication token
+ * "topic:partition:start-end", so a block that is written again after a crash or rebalance is
+ * dropped by ClickHouse.
+ *
+ * That only works if a redelivery rebuilds exactly the same block, and a redelivered poll may
+ * return more or fewer records than the first one. Before a block is inserted its range is therefore
+ * committed as offset metadata ("dedup:start-end", at offset start, so the position does not move).
+ * Whoever consumes the partition next finds the plan and cuts its first block at the same end offset,
+ * waiting for more records (seek back) if the poll stops short of it. Once the block is written, end + 1
+ * is committed without metadata.
+ *
+ * Offsets this consumer committed itself are cached per partition and group generation, so the
+ * committed offsets are only read from the broker after a rebalance, a seek or a filtered record.
+ *
+ * Instances are shared by the listener threads of one service; each partition is owned by one thread.
+ */
+public class DedupBlockPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DedupBlockPlanner.class);
+
+    static final String PLAN_PREFIX = "dedup:";
+
+    private final int maxDeferrals;
+    private final Map<TopicPartition, Position> committed = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Integer> deferrals = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxDeferrals polls to wait for the records of a pending plan before giving up on it and
+     *                     planning afresh (at-least-once for that range)
+     */
+    public DedupBlockPlanner(int maxDeferrals) {
+        this.maxDeferrals = maxDeferrals;
+    }
+
+    /**
+     * Records of one partition with offsets start to end, written as one set of INSERTs.
+     */
+    public record Block(TopicPartition partition, long start, long end, List<ConsumerRecord<String, byte[]>> records) {
+
+        public String dedupToken() {
+            return partition.topic() + ":" + partition.partition() + ":" + start + "-" + end;
+        }
+    }
+
+    private record Position(int generation, long offset) {
+    }
+
+    /**
+     * Cut a poll into blocks and commit the plan of every new block. Records that cannot be
+     * processed in this poll (beyond a pending plan, or short of it) are sought back and redelivered.
+     */
+    public List<Block> plan(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> byPartition = new LinkedHashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), tp -> new ArrayList<>())
+                .add(record);
+        }
+        if (byPartition.isEmpty()) {
+            return List.of();
+        }
+
+        int generation = generation(consumer);
+        Set<TopicPartition> unknown = new HashSet<>();
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, byte[]>>> entry : byPartition.entrySet()) {
+            Position position = committed.get(entry.getKey());
+            if (position == null || position.generation() != generation
+                    || position.offset() != entry.getValue().get(0).offset()) {
+                unknown.add(entry.getKey());
+            }
+        }
+        Map<TopicPartition, OffsetAndMetadata> stored = unknown.isEmpty() ? Map.of() : consumer.committed(unknown);
+
+        List<Block> blocks = new ArrayList<>(byPartition.size());
+        Map<TopicPartition, OffsetAndMetadata> plans = new HashMap<>();
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, byte[]>>> entry : byPartition.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            List<ConsumerRecord<String, byte[]>> partitionRecords = entry.getValue();
+            long start = partitionRecords.get(0).offset();
+            long last = partitionRecords.get(partitionRecords.size() - 1).offset();
+            long plannedEnd = plannedEnd(stored.get(partition), start);
+
+            if (plannedEnd < 0) {
+                blocks.add(new Block(partition, start, last, partitionRecords));
+                plans.put(partition, new OffsetAndMetadata(start, PLAN_PREFIX + start + "-" + last));
+            } else if (last < plannedEnd) {
+                int deferred = deferrals.merge(partition, 1, Integer::sum);
+                if (deferred <= maxDeferrals) {
+                    logger.debug("Waiting for offsets up to {} of {} to rebuild block {}-{} (poll ended at {})",
+                        plannedEnd, partition, start, plannedEnd, last);
+                    consumer.seek(partition, start);
+                    continue;
+                }
+                logger.warn("Gave up on block {}-{} of {} after {} short polls; rows may be written twice",
+                    start, plannedEnd, partition, maxDeferrals);
+                blocks.add(new Block(partition, start, last, partitionRecords));
+                plans.put(partition, new OffsetAndMetadata(start, PLAN_PREFIX + start + "-" + last));
+            } else {
+                int count = 0;
+                while (count < partitionRecords.size() && partitionRecords.get(count).offset() <= plannedEnd) {
+                    count++;
+                }
+                if (count < partitionRecords.size()) {
+                    consumer.seek(partition, plannedEnd + 1);
+                }
+                logger.info("Rebuilt pending block {}-{} of {} for deduplication", start, plannedEnd, partition);
+                blocks.add(new Block(partition, start, plannedEnd, partitionRecords.subList(0, count)));
+            }
+            deferrals.remove(partition);
+        }
+        if (!plans.isEmpty()) {
+            consumer.commitSync(plans);
+        }
+        return blocks;
+    }
+
+    /**
+     * Commit the offsets after the given blocks once their rows have been written.
+     */
+    public void complete(List<Block> blocks, Consumer<?, ?> consumer) {
+        if (blocks.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Block block : blocks) {
+            offsets.put(block.partition(), new OffsetAndMetadata(block.end() + 1));
+        }
+        consumer.commitSync(offsets);
+        int generation = generation(consumer);
+        for (Block block : blocks) {
+            committed.put(block.partition(), new Position(generation, block.end() + 1));
+        }
+    }
+
+    /**
+     * End offset of the pending plan stored with a committed offset, or -1 if there is none for this start.
+     */
+    static long plannedEnd(OffsetAndMetadata stored, long start) {
+        if (stored == null || stored.offset() != start || stored.metadata() == null
+                || !stored.metadata().startsWith(PLAN_PREFIX)) {
+            return -1;
+        }
+        String range = stored.metadata().substring(PLAN_PREFIX.length());
+        int dash = range.indexOf('-');
+        try {
+            long planStart = Long.parseLong(range.substring(0, dash));
+            long planEnd = Long.parseLong(range.substring(dash + 1));
+            return planStart == start && planEnd >= start ? planEnd : -1;
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring unreadable dedup plan '{}'", stored.metadata());
+            return -1;
+        }
+    }
+
+    private static int generation(Consumer<?, ?> consumer) {
+        try {
+            return consumer.groupMetadata().generationId();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package Kafka_Project.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Packs the events of one /receive_data request into multi-event Kafka records.
+ *
+ * With ingest.envelope-batching.enabled, events of a request with the same event type and record key
+ * (and therefore the same topic and partition) are sent as one record:
+ *
+ *   {"events":[envelope, envelope, ...]}
+ *
+ * where each envelope is exactly the single-event record value. The record carries the usual
+ * event headers plus envelope=batch and event_count; KafkaConsumerService unpacks it from a single
+ * parse. Groups of one event are sent as plain single-event records. When disabled, every event is
+ * sent as soon as it is added.
+ */
+@Component
+public class EventEnvelopeBatcher {
+
+    public static final String ENVELOPE_BATCH = "batch";
+
+    private static final byte[] PREFIX = "{\"events\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+    // Approximate fixed size of a Kafka v2 record (length, attributes, deltas, key/value lengths, header count)
+    private static final int RECORD_OVERHEAD_BYTES = 12;
+
+    private final KafkaProducerService kafkaProducerService;
+    private final Counter eventsCounter;
+    private final Counter recordsCounter;
+    private final Counter bytesSavedCounter;
+    private final DistributionSummary eventsPerRecord;
+
+    @Value("${ingest.envelope-batching.enabled:false}")
+    private boolean enabled;
+
+    // Limits per record; the byte limit stays well under the producer's max.request.size
+    @Value("${ingest.envelope-batching.max-events:500}")
+    private int maxEvents = 500;
+
+    @Value("${ingest.envelope-batching.max-bytes:524288}")
+    private int maxBytes = 524288;
+
+    public EventEnvelopeBatcher(KafkaProducerService kafkaProducerService, MeterRegistry meterRegistry) {
+        this.kafkaProducerService = kafkaProducerService;
+        this.eventsCounter = Counter.builder("ingest.envelope.events")
+            .description("Events sent inside multi-event records")
+            .register(meterRegistry);
+        this.recordsCounter = Counter.builder("ingest.envelope.records")
+            .description("Multi-event records sent")
+            .register(meterRegistry);
+        this.bytesSavedCounter = Counter.builder("ingest.envelope.bytes.saved")
+            .description("Estimated record, key and header bytes saved by packing events")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.eventsPerRecord = DistributionSummary.builder("ingest.envelope.events.per.record")
+            .description("Events per multi-event record")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Start collecting the events of one request. Not thread-safe.
+     */
+    public Batch begin() {
+        return new Batch();
+    }
+
+    public final class Batch {
+
+        private final Map<GroupKey, Group> groups = new LinkedHashMap<>();
+
+        private Batch() {
+        }
+
+        public void add(byte[] payload, String eventType, String key, String trackingId, String sessionId,
+                        Instant timestamp) {
+            if (!enabled) {
+                kafkaProducerService.sendEvent(payload, eventType, key,
+                    EventHeaders.forEvent(eventType, trackingId, sessionId, timestamp));
+                return;
+            }
+            GroupKey groupKey = new GroupKey(eventType, key);
+            Group group = groups.get(groupKey);
+            if (group != null && (group.count >= maxEvents || group.size() + payload.length + 1 > maxBytes)) {
+                send(groupKey, group);
+                group = null;
+            }
+            if (group == null) {
+                group = new Group(payload, trackingId, sessionId, timestamp);
+                groups.put(groupKey, group);
+            } else {
+                group.add(payload, trackingId, sessionId);
+            }
+        }
+
+        /**
+         * Send every pending group.
+         */
+        public void flush() {
+            for (Map.Entry<GroupKey, Group> entry : groups.entrySet()) {
+                send(entry.getKey(), entry.getValue());
+            }
+            groups.clear();
+        }
+
+        private void send(GroupKey groupKey, Group group) {
+            Headers headers = EventHeaders.forEvent(groupKey.eventType(), group.trackingId, group.sessionId, group.timestamp);
+            if (group.count == 1) {
+                kafkaProducerService.sendEvent(group.first, groupKey.eventType(), groupKey.key(), headers);
+                return;
+            }
+            int singleRecordOverhead = recordOverhead(groupKey.key(), headers);
+            headers.add(EventHeaders.ENVELOPE, ENVELOPE_BATCH.getBytes(StandardCharsets.UTF_8));
+            headers.add(EventHeaders.EVENT_COUNT, String.valueOf(group.count).getBytes(StandardCharsets.UTF_8));
+            byte[] value = group.close();
+            kafkaProducerService.sendEvent(value, groupKey.eventType(), groupKey.key(), headers);
+
+            // Wrapper and separators are the only bytes the batched value adds
+            int addedBytes = PREFIX.length + SUFFIX.length + group.count - 1;
+            long saved = (long) group.count * singleRecordOverhead
+                - recordOverhead(groupKey.key(), headers) - addedBytes;
+            eventsCounter.increment(group.count);
+            recordsCounter.increment();
+            eventsPerRecord.record(group.count);
+            if (saved > 0) {
+                bytesSavedCounter.increment(saved);
+            }
+        }
+    }
+
+    private static int recordOverhead(String key, Headers headers) {
+        int size = RECORD_OVERHEAD_BYTES + (key == null ? 0 : key.getBytes(StandardCharsets.UTF_8).length);
+        for (Header header : headers) {
+            size += 2 + header.key().length() + (header.value() == null ? 0 : header.value().length);
+        }
+        return size;
+    }
+
+    private record GroupKey(String eventType, String key) {
+    }
+
+    /**
+     * Events of one group. The first payload is kept as is in case it stays alone.
+     */
+    private static final class Group {
+
+        final byte[] first;
+        final Instant timestamp;
+        String trackingId;
+        String sessionId;
+        ByteArrayOutputStream value;
+        int count = 1;
+
+        Group(byte[] first, String trackingId, String sessionId, Instant timestamp) {
+            this.first = first;
+            this.trackingId = trackingId;
+            this.sessionId = sessionId;
+            this.timestamp = timestamp;
+        }
+
+        void add(byte[] payload, String trackingId, String sessionId) {
+            if (value == null) {
+                value = new ByteArrayOutputStream(PREFIX.length + first.length * 4);
+                value.writeBytes(PREFIX);
+                value.writeBytes(first);
+            }
+            value.write(',');
+            value.writeBytes(payload);
+            count++;
+            // Headers only describe the record when every event agrees
+            if (!Objects.equals(this.trackingId, trackingId)) {
+                this.trackingId = null;
+            }
+            if (!Objects.equals(this.sessionId, sessionId)) {
+                this.sessionId = null;
+            }
+        }
+
+        int size() {
+            return value == null ? PREFIX.length + first.length + SUFFIX.length : value.size() + SUFFIX.length;
+        }
+
+        byte[] close() {
+            value.writeBytes(SUFFIX);
+            return value.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package Kafka_Project.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Drops records by their event headers before the listener parses the JSON value.
+ *
+ * Event types listed in kafka.consumer.filter.drop-event-types are discarded from headers alone.
+ * Records without headers (written before headers were added) always reach the listener.
+ */
+@Component
+public class EventHeaderFilter implements RecordFilterStrategy<String, byte[]> {
+
+    private final Set<String> dropEventTypes;
+    private final MeterRegistry meterRegistry;
+
+    public EventHeaderFilter(@Value("${kafka.consumer.filter.drop-event-types:}") String dropEventTypes,
+                             MeterRegistry meterRegistry) {
+        this.dropEventTypes = Arrays.stream(dropEventTypes.split(","))
+            .map(String::trim)
+            .filter(type -> !type.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return true to discard the record
+     */
+    @Override
+    public boolean filter(ConsumerRecord<String, byte[]> record) {
+        if (dropEventTypes.isEmpty()) {
+            return false;
+        }
+        String eventType = EventHeaders.get(record.headers(), EventHeaders.EVENT_TYPE);
+        if (eventType == null || !dropEventTypes.contains(eventType)) {
+            return false;
+        }
+        meterRegistry.counter("kafka.consumer.filtered", "event_type", eventType).increment();
+        return true;
+    }
+
+    public boolean isEnabled() {
+        return !dropEventTypes.isEmpty();
+    }
+}
@@ -0,0 +1,95 @@
+package Kafka_Project.service;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Kafka record headers carrying the routing metadata of an event envelope.
+ *
+ * The same values are in the JSON value, but headers can be read without deserializing it, so
+ * consumers can filter, route and time-bucket records before (or instead of) parsing them.
+ * All values are UTF-8 strings; ingest_ts is the envelope timestamp in epoch milliseconds.
+ */
+public final class EventHeaders {
+
+    public static final String EVENT_TYPE = "event_type";
+    public static final String TRACKING_ID = "tracking_id";
+    public static final String SESSION_ID = "session_id";
+    public static final String INGEST_TS = "ingest_ts";
+    public static final String SCHEMA_VERSION = "schema_version";
+    // Set on the consolidated copy of a dual-published event; the legacy copy is the one consumed
+    public static final String DUAL_PUBLISH = "dual_publish";
+    // Set on multi-event records (see EventEnvelopeBatcher): envelope=batch and the number of events
+    public static final String ENVELOPE = "envelope";
+    public static final String EVENT_COUNT = "event_count";
+    // Set by EventRetryRouter on records sent to a retry topic or dead-letter topic
+    public static final String RETRY_ATTEMPT = "retry_attempt";
+    public static final String RETRY_DUE = "retry_due_ms";
+    public static final String FAILURE_STAGE = "failure_stage";
+    public static final String FAILURE_REASON = "failure_reason";
+    public static final String FAILED_AT = "failed_at";
+    public static final String ORIGINAL_TOPIC = "original_topic";
+    public static final String ORIGINAL_PARTITION = "original_partition";
+    public static final String ORIGINAL_OFFSET = "original_offset";
+
+    // Version of the JSON envelope written by EventIngestParser; bump when its layout changes
+    public static final String CURRENT_SCHEMA_VERSION = "1";
+
+    private EventHeaders() {
+    }
+
+    /**
+     * Headers for one ingested event. A missing session_id is left out rather than sent empty.
+     */
+    public static Headers forEvent(String eventType, String trackingId, String sessionId, Instant ingestedAt) {
+        RecordHeaders headers = new RecordHeaders();
+        add(headers, EVENT_TYPE, eventType);
+        add(headers, TRACKING_ID, trackingId);
+        add(headers, SESSION_ID, sessionId);
+        if (ingestedAt != null) {
+            add(headers, INGEST_TS, String.valueOf(ingestedAt.toEpochMilli()));
+        }
+        add(headers, SCHEMA_VERSION, CURRENT_SCHEMA_VERSION);
+        return headers;
+    }
+
+    /**
+     * @return the last value of the header as a string, or null if the record does not carry it
+     */
+    public static String get(Headers headers, String name) {
+        Header header = headers == null ? null : headers.lastHeader(name);
+        return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return ingest_ts in epoch milliseconds, or -1 if missing or malformed
+     */
+    public static long ingestTimestamp(Headers headers) {
+        return getLong(headers, INGEST_TS, -1);
+    }
+
+    /**
+     * @return the header parsed as a long, or the default if missing or malformed
+     */
+    public static long getLong(Headers headers, String name, long defaultValue) {
+        String value = get(headers, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void add(Headers headers, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package Kafka_Project.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Streaming parser for /receive_data request bodies.
+ *
+ * Reads a single event object or an array of events with Jackson's {@link JsonParser} and writes
+ * each normalized Kafka envelope with a {@link JsonGenerator}, without building a JsonNode tree:
+ *
+ *   {"timestamp":"...","event_type":"...","client_ip":"...","data":{...},"metadata":{...}}
+ *
+ * Tracker events in the flat form have every field except type/event_type/ts/timestamp moved into
+ * data. Events that already carry a "data" field keep it as is. The result is the same JSON the
+ * tree-based normalization in ProducerController used to produce.
+ *
+ * Buffered pieces (data, metadata) are spliced into the envelope as raw bytes, and the buffers and
+ * generators are kept per thread, so steady-state allocation is roughly the envelope itself.
+ *
+ * For events that already carry a "data" object or array, the parser only skips over it (reading
+ * tracking_id on the way) and the envelope gets the original byte range of the request. Large
+ * periodic_events payloads are therefore never re-encoded. Set ingest.raw-data-passthrough=false
+ * to copy data token by token instead.
+ */
+@Component
+public class EventIngestParser {
+
+    private final JsonFactory jsonFactory;
+    private final boolean rawDataPassthrough;
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    public EventIngestParser(ObjectMapper objectMapper,
+                             @Value("${ingest.raw-data-passthrough:true}") boolean rawDataPassthrough) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.rawDataPassthrough = rawDataPassthrough;
+    }
+
+    /**
+     * One normalized event.
+     *
+     * @param eventType event_type (or type) of the incoming event, "unknown" if missing
+     * @param trackingId tracking_id from the event or its data, "anonymous" if missing
+     * @param sessionId session_id from the event or its data, null if missing
+     * @param timestamp ingest time written to the envelope, null for array elements that are not objects
+     * @param payload the UTF-8 JSON envelope, null for array elements that are not objects
+     */
+    public record IngestEvent(String eventType, String trackingId, String sessionId, Instant timestamp,
+                              byte[] payload) {
+    }
+
+    /**
+     * Start reading a request body.
+     *
+     * @throws IllegalArgumentException if the body is not a JSON object or array
+     */
+    public EventStream open(byte[] body, String clientIp) throws IOException {
+        JsonParser parser = jsonFactory.createParser(body);
+        JsonToken root = parser.nextToken();
+        if (root != JsonToken.START_ARRAY && root != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new IllegalArgumentException("Invalid request format: expected object or array");
+        }
+        Workspace workspace = workspaces.get();
+        if (workspace.inUse) {
+            workspace = new Workspace();
+        }
+        workspace.inUse = true;
+        return new EventStream(parser, body, workspace, root == JsonToken.START_ARRAY, clientIp);
+    }
+
+    /**
+     * Events of one request, read lazily. Not thread-safe.
+     */
+    public final class EventStream implements Closeable {
+
+        private final JsonParser parser;
+        private final byte[] body;
+        private final Workspace workspace;
+        private final boolean array;
+        private final String clientIp;
+        private final Buffer flat;
+        private final Buffer data;
+        private final Buffer metadata;
+        private final Buffer envelope;
+        private boolean singleRead;
+
+        private EventStream(JsonParser parser, byte[] body, Workspace workspace, boolean array, String clientIp) {
+            this.parser = parser;
+            this.body = body;
+            this.workspace = workspace;
+            this.array = array;
+            this.clientIp = clientIp;
+            this.flat = workspace.flat;
+            this.data = workspace.data;
+            this.metadata = workspace.metadata;
+            this.envelope = workspace.envelope;
+        }
+
+        /**
+         * @return the next event, or null when the body has no more
+         */
+        public IngestEvent next() throws IOException {
+            if (array) {
+                JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    return new IngestEvent("unknown", "anonymous", null, null, null);
+                }
+            } else {
+                if (singleRead) {
+                    return null;
+                }
+                singleRead = true;
+            }
+            try {
+                return readEvent();
+            } catch (IOException | RuntimeException e) {
+                // Generators may be left inside an object; do not hand them to the next request
+                workspace.broken = true;
+                throw e;
+            }
+        }
+
+        private IngestEvent readEvent() throws IOException {
+            flat.reset();
+            data.reset();
+            metadata.reset();
+
+            String eventType = null;
+            String type = null;
+            String trackingId = null;
+            String dataTrackingId = null;
+            String dataTrackingIdCamel = null;
+            String sessionId = null;
+            String dataSessionId = null;
+            String dataSessionIdCamel = null;
+            boolean hasData = false;
+            boolean hasMetadata = false;
+            // Byte range of data in the request body when it is passed through untouched
+            int dataStart = -1;
+            int dataEnd = -1;
+
+            flat.generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "event_type" -> eventType = scalarText();
+                    case "type" -> type = scalarText();
+                    case "ts", "timestamp" -> parser.skipChildren();
+                    case "data" -> {
+                        hasData = true;
+                        data.reset();
+                        dataStart = -1;
+                        dataTrackingId = null;
+                        dataTrackingIdCamel = null;
+                        dataSessionId = null;
+                        dataSessionIdCamel = null;
+                        if (rawDataPassthrough && parser.currentToken().isStructStart()) {
+                            dataStart = (int) parser.currentTokenLocation().getByteOffset();
+                            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    String field = parser.currentName();
+                                    parser.nextToken();
+                                    switch (field) {
+                                        case "tracking_id" -> dataTrackingId = peekText();
+                                        case "trackingId" -> dataTrackingIdCamel = peekText();
+                                        case "session_id" -> dataSessionId = peekText();
+                                        case "sessionId" -> dataSessionIdCamel = peekText();
+                                        default -> { }
+                                    }
+                                    parser.skipChildren();
+                                }
+                            } else {
+                                parser.skipChildren();
+                            }
+                            dataEnd = (int) parser.currentLocation().getByteOffset();
+                        } else if (parser.currentToken() == JsonToken.START_OBJECT) {
+                            JsonGenerator generator = data.generator;
+                            generator.writeStartObject();
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String field = parser.currentName();
+                                parser.nextToken();
+                                switch (field) {
+                                    case "tracking_id" -> dataTrackingId = peekText();
+                                    case "trackingId" -> dataTrackingIdCamel = peekText();
+                                    case "session_id" -> dataSessionId = peekText();
+                                    case "sessionId" -> dataSessionIdCamel = peekText();
+                                    default -> { }
+                                }
+                                generator.writeFieldName(field);
+                                generator.copyCurrentStructure(parser);
+                            }
+                            generator.writeEndObject();
+                        } else {
+                            data.generator.copyCurrentStructure(parser);
+                        }
+                        data.generator.flush();
+                    }
+                    case "metadata" -> {
+                        // Kept at the top level and, in the flat form, inside data as well
+                        hasMetadata = true;
+                        metadata.reset();
+                        metadata.generator.copyCurrentStructure(parser);
+                        metadata.generator.flush();
+                        flat.generator.writeFieldName(name);
+                        flat.writeRawValue(metadata);
+                    }
+                    default -> {
+                        if ("tracking_id".equals(name)) {
+                            trackingId = peekText();
+                        } else if ("session_id".equals(name)) {
+                            sessionId = peekText();
+                        }
+                        flat.generator.writeFieldName(name);
+                        flat.generator.copyCurrentStructure(parser);
+                    }
+                }
+            }
+            flat.generator.writeEndObject();
+            flat.generator.flush();
+
+            if (eventType == null) {
+                eventType = type != null ? type : "unknown";
+            }
+            if (trackingId == null) {
+                trackingId = dataTrackingId != null ? dataTrackingId
+                    : dataTrackingIdCamel != null ? dataTrackingIdCamel : "anonymous";
+            }
+            if (sessionId == null || sessionId.isEmpty()) {
+                sessionId = dataSessionId != null && !dataSessionId.isEmpty() ? dataSessionId : dataSessionIdCamel;
+            }
+
+            Instant timestamp = Instant.now();
+            envelope.reset();
+            JsonGenerator generator = envelope.generator;
+            generator.writeStartObject();
+            generator.writeStringField("timestamp", timestamp.toString());
+            generator.writeStringField("event_type", eventType);
+            generator.writeStringField("client_ip", clientIp);
+            generator.writeFieldName("data");
+            if (dataStart >= 0) {
+                envelope.writeRawValue(body, dataStart, dataEnd - dataStart);
+            } else {
+                envelope.writeRawValue(hasData ? data : flat);
+            }
+            if (hasMetadata) {
+                generator.writeFieldName("metadata");
+                envelope.writeRawValue(metadata);
+            }
+            generator.writeEndObject();
+            generator.flush();
+
+            return new IngestEvent(eventType, trackingId, sessionId, timestamp, envelope.toByteArray());
+        }
+
+        /**
+         * Text of the current value as JsonNode.asText() would give it, skipping containers.
+         */
+        private String scalarText() throws IOException {
+            if (parser.currentToken().isStructStart()) {
+                parser.skipChildren();
+                return "";
+            }
+            return parser.getText();
+        }
+
+        /**
+         * Like {@link #scalarText()} but leaves the parser on the value so it can still be copied.
+         */
+        private String peekText() throws IOException {
+            return parser.currentToken().isStructStart() ? "" : parser.getText();
+        }
+
+        @Override
+        public void close() throws IOException {
+            workspace.inUse = false;
+            if (workspace.broken && workspaces.get() == workspace) {
+                workspaces.remove();
+            }
+            parser.close();
+        }
+    }
+
+    /**
+     * Output buffers of one thread, reused across requests.
+     */
+    private final class Workspace {
+        final Buffer flat = new Buffer();
+        final Buffer data = new Buffer();
+        final Buffer metadata = new Buffer();
+        final Buffer envelope = new Buffer();
+        boolean inUse;
+        boolean broken;
+    }
+
+    /**
+     * Reusable output buffer with its own generator.
+     */
+    private final class Buffer extends ByteArrayOutputStream {
+
+        final JsonGenerator generator;
+
+        Buffer() {
+            super(512);
+            try {
+                generator = jsonFactory.createGenerator(this);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            generator.setRootValueSeparator(null);
+        }
+
+        /**
+         * Write a complete JSON value held in another buffer as the next value of this generator.
+         * An empty raw value lets the generator emit the separator, then the bytes go straight to the stream.
+         */
+        void writeRawValue(Buffer value) throws IOException {
+            writeRawValue(value.buf, 0, value.count);
+        }
+
+        void writeRawValue(byte[] bytes, int offset, int length) throws IOException {
+            generator.writeRawValue("");
+            generator.flush();
+            write(bytes, offset, length);
+        }
+    }
+}
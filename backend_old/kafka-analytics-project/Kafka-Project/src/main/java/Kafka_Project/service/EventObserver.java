@@ -0,0 +1,35 @@
+package Kafka_Project.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stage of the consumer path that sees every event whose rows were written, e.g. the sessionizer
+ * or the live counters. Observers are called on the listener threads and must not block.
+ */
+public interface EventObserver {
+
+    /**
+     * One event envelope ({"event_type", "timestamp", "data": {...}}) and its parsed timestamp.
+     * Records that go through the retry topics are observed once, when they succeed.
+     */
+    void observe(JsonNode event, LocalDateTime timestamp);
+
+    /**
+     * Number of user events an envelope stands for. A periodic_events envelope carries the events of
+     * the last interval in one array per kind (linkClicks, mouseClicks, scrollEvents, ...).
+     */
+    static int eventCount(String eventType, JsonNode data) {
+        if (!"periodic_events".equals(eventType)) {
+            return 1;
+        }
+        int count = 0;
+        for (JsonNode value : data) {
+            if (value.isArray()) {
+                count += value.size();
+            }
+        }
+        return count;
+    }
+}
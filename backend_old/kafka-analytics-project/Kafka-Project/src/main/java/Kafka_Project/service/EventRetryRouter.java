@@ -0,0 +1,173 @@
+package Kafka_Project.service;
+
+import Kafka_Project.config.EventTopics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking retry for records the consumers could not process.
+ *
+ * A failed record is re-published with failure headers to the retry topic of its family,
+ * events.&lt;family&gt;.retry-&lt;n&gt;, whose delay grows exponentially with n. The retry listener
+ * handles it once retry_due_ms has passed. After kafka.retry.attempts retries, or straight away
+ * for records that cannot be parsed, the record goes to events.&lt;family&gt;.dlt.
+ *
+ * Headers added: retry_attempt, retry_due_ms, failure_stage, failure_reason, failed_at and, from
+ * the first failure, original_topic / original_partition / original_offset.
+ */
+@Component
+public class EventRetryRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventRetryRouter.class);
+
+    private static final int MAX_REASON_LENGTH = 512;
+
+    // Rewritten on every hop; the original_* headers are kept from the first failure
+    private static final Set<String> RETRY_HEADERS = Set.of(
+        EventHeaders.RETRY_ATTEMPT, EventHeaders.RETRY_DUE, EventHeaders.FAILURE_STAGE,
+        EventHeaders.FAILURE_REASON, EventHeaders.FAILED_AT
+    );
+
+    /**
+     * Where a record failed. Records that cannot be parsed are not retried.
+     */
+    public enum Stage {
+        PARSE(false), HANDLER(true), INSERT(true);
+
+        private final boolean retryable;
+
+        Stage(boolean retryable) {
+            this.retryable = retryable;
+        }
+    }
+
+    public record Failure(ConsumerRecord<String, byte[]> record, Stage stage, Exception cause) {
+    }
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.retry.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${kafka.retry.attempts:4}")
+    private int attempts = 4;
+
+    @Value("${kafka.retry.initial-delay-ms:2000}")
+    private long initialDelayMs = 2000;
+
+    @Value("${kafka.retry.multiplier:4.0}")
+    private double multiplier = 4.0;
+
+    @Value("${kafka.retry.send-timeout-ms:30000}")
+    private long sendTimeoutMs = 30000;
+
+    public EventRetryRouter(KafkaTemplate<String, byte[]> kafkaTemplate, MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Delay before retry number attempt (0-based).
+     */
+    public long delayMs(int attempt) {
+        return (long) (initialDelayMs * Math.pow(multiplier, attempt));
+    }
+
+    /**
+     * @return epoch millis at which a retry-topic record may be handled, 0 for any other record
+     */
+    public static long dueAt(ConsumerRecord<String, byte[]> record) {
+        return EventHeaders.getLong(record.headers(), EventHeaders.RETRY_DUE, 0);
+    }
+
+    /**
+     * Publish the failures to their retry or dead-letter topics and wait until Kafka has them, so
+     * the caller can commit the original offsets afterwards. Does nothing when retry is disabled
+     * (the failures have already been logged).
+     *
+     * @throws IllegalStateException if a record could not be published; the caller must not commit
+     */
+    public void routeAll(List<Failure> failures) {
+        if (!enabled || failures.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<?>> sends = new ArrayList<>(failures.size());
+        for (Failure failure : failures) {
+            sends.add(route(failure));
+        }
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to publish " + failures.size() + " records to retry topics", e);
+        }
+    }
+
+    private CompletableFuture<?> route(Failure failure) {
+        ConsumerRecord<String, byte[]> record = failure.record();
+        String family = EventTopics.family(record.topic());
+        // Records read from a retry topic carry their attempt number; anything else is attempt 0
+        int attempt = (int) EventHeaders.getLong(record.headers(), EventHeaders.RETRY_ATTEMPT, -1) + 1;
+        boolean deadLetter = !failure.stage().retryable || attempt >= attempts;
+        String topic = deadLetter ? EventTopics.deadLetterTopic(family) : EventTopics.retryTopic(family, attempt);
+
+        long now = System.currentTimeMillis();
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!RETRY_HEADERS.contains(header.key())) {
+                headers.add(header);
+            }
+        }
+        if (headers.lastHeader(EventHeaders.ORIGINAL_TOPIC) == null) {
+            add(headers, EventHeaders.ORIGINAL_TOPIC, record.topic());
+            add(headers, EventHeaders.ORIGINAL_PARTITION, String.valueOf(record.partition()));
+            add(headers, EventHeaders.ORIGINAL_OFFSET, String.valueOf(record.offset()));
+        }
+        add(headers, EventHeaders.RETRY_ATTEMPT, String.valueOf(attempt));
+        if (!deadLetter) {
+            add(headers, EventHeaders.RETRY_DUE, String.valueOf(now + delayMs(attempt)));
+        }
+        add(headers, EventHeaders.FAILURE_STAGE, failure.stage().name().toLowerCase());
+        add(headers, EventHeaders.FAILURE_REASON, reason(failure.cause()));
+        add(headers, EventHeaders.FAILED_AT, Instant.ofEpochMilli(now).toString());
+
+        meterRegistry.counter("kafka.retry.published", "family", family, "target", deadLetter ? "dlt" : "retry").increment();
+        if (deadLetter) {
+            logger.warn("✗ Record {}-{}@{} sent to {} after {} retries: {}",
+                record.topic(), record.partition(), record.offset(), topic, attempt, reason(failure.cause()));
+        }
+        return kafkaTemplate.send(new ProducerRecord<>(topic, null, record.key(), record.value(), headers));
+    }
+
+    private static String reason(Exception cause) {
+        String reason = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+
+    private static void add(Headers headers, String name, String value) {
+        headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
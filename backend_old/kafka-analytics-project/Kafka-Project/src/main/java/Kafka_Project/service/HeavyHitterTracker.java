@@ -0,0 +1,546 @@
+package Kafka_Project.service;
+
+import Kafka_Project.Redis.RedisService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming top-K per tracking_id for the "top pages" and "most clicked elements" panels, so they do
+ * not need GROUP BY scans of page_events and interaction_events.
+ *
+ * Each tracking_id and dimension (page_url, element_id, link_url, product_id) has a Count-Min Sketch
+ * and a bounded min-heap of candidates: an item enters the heap when its estimate beats the smallest
+ * candidate. Memory per tracking_id is fixed by topk.sketch-depth, topk.sketch-width and
+ * topk.candidates, and at most topk.max-tenants tracking IDs are tracked.
+ *
+ * Counts are kept per tumbling window of topk.window-minutes (event time is not used, windows follow
+ * the consumer clock). When a window ends it becomes the previous window and the current one starts
+ * empty. A query for the "merged" window adds the sketches of both windows and re-ranks the union of
+ * their candidates, so the list covers between one and two windows without a hard drop at the reset.
+ *
+ * Pages are counted from page_load and page_view. Trackers send either or both for each page, so like
+ * the Sessionizer a page_load and a page_view of the same page in a row of one session count once. For
+ * that the last page event of up to topk.page-sessions sessions (across all tracking IDs, least
+ * recently active dropped first) is remembered as a URL hash.
+ *
+ * Every consumer node only sees the partitions it is assigned, so each node publishes its changed
+ * rankings (sketch and candidates) every topk.cluster.publish-interval-ms to a Redis hash per tracking_id,
+ * dimension and window, one field per node. A query merges the rankings of the other nodes into its own:
+ * sketches add up like the two windows do, and the union of all candidates is re-ranked.
+ */
+@Service
+public class HeavyHitterTracker implements EventObserver {
+
+    public enum Dimension {
+        PAGE_URL("page_url"), ELEMENT_ID("element_id"), LINK_URL("link_url"), PRODUCT_ID("product_id");
+
+        private final String key;
+
+        Dimension(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Dimension fromKey(String key) {
+            for (Dimension dimension : values()) {
+                if (dimension.key.equals(key)) {
+                    return dimension;
+                }
+            }
+            throw new IllegalArgumentException("Unknown dimension " + key + ", expected page_url, element_id, " +
+                "link_url or product_id");
+        }
+    }
+
+    public enum Window {
+        CURRENT, PREVIOUS, MERGED
+    }
+
+    /**
+     * One ranked item. count may exceed the true count by up to errorBound of its list.
+     */
+    public record Item(String value, long count) {
+    }
+
+    public record TopList(List<Item> items, long total, long errorBound, long windowStartMs) {
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitterTracker.class);
+    private static final String CLUSTER_KEY_PREFIX = "topk:";
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final Counter dropped;
+    private final RedisService redisService;
+    // A restarted node publishes under a new id; what the old one published stays valid for its window
+    private final String nodeId = UUID.randomUUID().toString();
+    private ScheduledExecutorService publisher;
+
+    @Value("${topk.cluster.enabled:true}")
+    private boolean clusterEnabled = true;
+
+    @Value("${topk.cluster.publish-interval-ms:5000}")
+    private long publishIntervalMs = 5000;
+
+    @Value("${topk.window-minutes:60}")
+    private long windowMinutes = 60;
+
+    @Value("${topk.sketch-depth:4}")
+    private int sketchDepth = 4;
+
+    @Value("${topk.sketch-width:1024}")
+    private int sketchWidth = 1024;
+
+    @Value("${topk.candidates:64}")
+    private int candidates = 64;
+
+    @Value("${topk.max-tenants:200}")
+    private int maxTenants = 200;
+
+    @Value("${topk.page-sessions:20000}")
+    private int pageSessions = 20_000;
+
+    // "tracking_id session_id" -> last page event, least recently seen first; guarded by itself
+    private final Map<String, PageEvent> lastPages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageEvent> eldest) {
+            return size() > pageSessions;
+        }
+    };
+
+    public HeavyHitterTracker(RedisService redisService, MeterRegistry meterRegistry) {
+        this.redisService = redisService;
+        this.dropped = Counter.builder("topk.events.dropped")
+            .description("Events not counted because topk.max-tenants tracking IDs are tracked")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!clusterEnabled) {
+            return;
+        }
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "topk-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publishSafely, publishIntervalMs, publishIntervalMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+        }
+        if (clusterEnabled) {
+            publishSafely();
+        }
+    }
+
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        record(event, System.currentTimeMillis());
+    }
+
+    /**
+     * Count the items of one event envelope.
+     */
+    public void record(JsonNode event, long nowMs) {
+        JsonNode data = event.path("data");
+        String trackingId = data.path("tracking_id").asText("");
+        if (trackingId.isEmpty()) {
+            return;
+        }
+        String eventType = event.path("event_type").asText("");
+        Map<Dimension, List<String>> items = new EnumMap<>(Dimension.class);
+        boolean pageEvent = "page_load".equals(eventType) || "page_view".equals(eventType);
+        if (pageEvent) {
+            collect(items, Dimension.PAGE_URL, text(data, "page_url", text(data, "url", "")));
+        } else if ("periodic_events".equals(eventType)) {
+            for (JsonNode click : data.path("mouseClicks")) {
+                collect(items, Dimension.ELEMENT_ID, text(click, "element_id", ""));
+            }
+            for (JsonNode click : data.path("linkClicks")) {
+                collect(items, Dimension.LINK_URL, text(click, "url", ""));
+            }
+        } else {
+            collect(items, Dimension.ELEMENT_ID, text(data, "element_id", ""));
+            collect(items, Dimension.LINK_URL, text(data, "link_url", ""));
+            collect(items, Dimension.PRODUCT_ID, text(data, "product_id", ""));
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+
+        Tenant tenant = tenant(trackingId, nowMs);
+        if (tenant == null) {
+            dropped.increment();
+            return;
+        }
+        synchronized (tenant) {
+            tenant.roll(nowMs);
+            tenant.lastEventMs = nowMs;
+            String pageUrl = pageEvent ? items.get(Dimension.PAGE_URL).get(0) : null;
+            if (pageUrl != null && !newPage(trackingId, text(data, "session_id", ""), eventType, pageUrl)) {
+                items.remove(Dimension.PAGE_URL);
+            }
+            items.forEach((dimension, values) -> {
+                Ranking ranking = tenant.current.get(dimension);
+                for (String value : values) {
+                    ranking.add(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * The top limit items of a dimension, highest count first.
+     */
+    public TopList top(String trackingId, Dimension dimension, Window window, int limit, long nowMs) {
+        long currentStart = windowStart(nowMs);
+        long previousStart = currentStart - windowMs();
+        Ranking current = emptyRanking();
+        Ranking previous = emptyRanking();
+        Tenant tenant = tenants.get(trackingId);
+        if (tenant != null) {
+            synchronized (tenant) {
+                tenant.roll(nowMs);
+                current = current.merge(tenant.current.get(dimension));
+                previous = previous.merge(tenant.previous.get(dimension));
+            }
+        }
+        if (clusterEnabled) {
+            try {
+                List<Ranking> remoteCurrent = window == Window.PREVIOUS
+                    ? List.of() : published(trackingId, dimension, currentStart);
+                List<Ranking> remotePrevious = window == Window.CURRENT
+                    ? List.of() : published(trackingId, dimension, previousStart);
+                for (Ranking ranking : remoteCurrent) {
+                    current = current.merge(ranking);
+                }
+                for (Ranking ranking : remotePrevious) {
+                    previous = previous.merge(ranking);
+                }
+            } catch (Exception e) {
+                logger.debug("Top-K of other nodes unavailable from Redis, using this node's counts: {}",
+                    e.getMessage());
+            }
+        }
+        return switch (window) {
+            case CURRENT -> current.top(limit, currentStart);
+            case PREVIOUS -> previous.top(limit, previousStart);
+            case MERGED -> current.merge(previous).top(limit, previousStart);
+        };
+    }
+
+    /**
+     * Write the rankings changed since the last publish for the other nodes.
+     */
+    public void publish(long nowMs) {
+        Map<String, Map<String, String>> hashes = new HashMap<>();
+        List<Ranking> published = new ArrayList<>();
+        tenants.forEach((trackingId, tenant) -> {
+            synchronized (tenant) {
+                tenant.roll(nowMs);
+                collect(hashes, published, trackingId, tenant.current, tenant.windowStartMs);
+                collect(hashes, published, trackingId, tenant.previous, tenant.windowStartMs - windowMs());
+            }
+        });
+        try {
+            // The previous window is still queried for one more window after it ends
+            redisService.putHashes(hashes, (int) (2 * windowMs() / 1000) + 60);
+        } catch (RuntimeException e) {
+            published.forEach(ranking -> ranking.dirty = true);
+            throw e;
+        }
+    }
+
+    private void publishSafely() {
+        try {
+            publish(System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.warn("✗ Top-K publish to Redis failed, retrying on the next one: {}", e.getMessage());
+        }
+    }
+
+    private void collect(Map<String, Map<String, String>> hashes, List<Ranking> published, String trackingId,
+                         Map<Dimension, Ranking> rankings, long windowStartMs) {
+        rankings.forEach((dimension, ranking) -> {
+            if (ranking.dirty) {
+                ranking.dirty = false;
+                published.add(ranking);
+                hashes.put(clusterKey(trackingId, dimension, windowStartMs), Map.of(nodeId, ranking.encode()));
+            }
+        });
+    }
+
+    private List<Ranking> published(String trackingId, Dimension dimension, long windowStartMs) {
+        List<Ranking> rankings = new ArrayList<>();
+        redisService.getHash(clusterKey(trackingId, dimension, windowStartMs)).forEach((node, encoded) -> {
+            if (node.equals(nodeId)) {
+                return;
+            }
+            try {
+                Ranking ranking = Ranking.decode(encoded, candidates);
+                if (ranking.sketch.depth() != sketchDepth || ranking.sketch.width() != sketchWidth) {
+                    logger.warn("✗ Skipping top-K of node {}: sketch {}x{} does not match {}x{}", node,
+                        ranking.sketch.depth(), ranking.sketch.width(), sketchDepth, sketchWidth);
+                    return;
+                }
+                rankings.add(ranking);
+            } catch (IllegalArgumentException e) {
+                logger.warn("✗ Skipping unreadable top-K of node {}: {}", node, e.getMessage());
+            }
+        });
+        return rankings;
+    }
+
+    private static String clusterKey(String trackingId, Dimension dimension, long windowStartMs) {
+        return CLUSTER_KEY_PREFIX + trackingId + ":" + dimension.getKey() + ":" + windowStartMs;
+    }
+
+    private Ranking emptyRanking() {
+        return new Ranking(new CountMinSketch(sketchDepth, sketchWidth), candidates);
+    }
+
+    public int trackedIds() {
+        return tenants.size();
+    }
+
+    private Tenant tenant(String trackingId, long nowMs) {
+        Tenant tenant = tenants.get(trackingId);
+        if (tenant != null) {
+            return tenant;
+        }
+        if (tenants.size() >= maxTenants) {
+            // Tracking IDs without events in the last two windows hold nothing worth keeping
+            long idleBefore = windowStart(nowMs) - windowMs();
+            tenants.values().removeIf(idle -> idle.lastEventMs < idleBefore);
+            if (tenants.size() >= maxTenants) {
+                return null;
+            }
+        }
+        return tenants.computeIfAbsent(trackingId, id -> new Tenant(windowStart(nowMs)));
+    }
+
+    private long windowMs() {
+        return windowMinutes * 60_000;
+    }
+
+    private long windowStart(long nowMs) {
+        return nowMs - Math.floorMod(nowMs, windowMs());
+    }
+
+    /**
+     * False for the page_load of a page whose page_view was just counted, or the other way round.
+     */
+    private boolean newPage(String trackingId, String sessionId, String eventType, String url) {
+        if (sessionId.isEmpty()) {
+            return true;
+        }
+        String key = trackingId + ' ' + sessionId;
+        PageEvent event = new PageEvent("page_load".equals(eventType), url.hashCode());
+        synchronized (lastPages) {
+            PageEvent last = lastPages.get(key);
+            if (last != null && last.urlHash() == event.urlHash() && last.pageLoad() != event.pageLoad()) {
+                // Paired: a reload or a second view of the page counts again
+                lastPages.remove(key);
+                return false;
+            }
+            lastPages.put(key, event);
+            return true;
+        }
+    }
+
+    private static void collect(Map<Dimension, List<String>> items, Dimension dimension, String value) {
+        if (!value.isEmpty()) {
+            items.computeIfAbsent(dimension, d -> new ArrayList<>(1)).add(value);
+        }
+    }
+
+    private static String text(JsonNode node, String field, String fallback) {
+        JsonNode value = node.path(field);
+        return value.isValueNode() && !value.isNull() && !value.asText().isEmpty() ? value.asText() : fallback;
+    }
+
+    /**
+     * Current and previous window of every dimension of one tracking_id.
+     */
+    private final class Tenant {
+        Map<Dimension, Ranking> current = rankings();
+        Map<Dimension, Ranking> previous = rankings();
+        long windowStartMs;
+        volatile long lastEventMs;
+
+        Tenant(long windowStartMs) {
+            this.windowStartMs = windowStartMs;
+            this.lastEventMs = windowStartMs;
+        }
+
+        void roll(long nowMs) {
+            long start = windowStart(nowMs);
+            if (start > windowStartMs) {
+                Map<Dimension, Ranking> recycled = previous;
+                recycled.values().forEach(Ranking::clear);
+                if (start - windowStartMs == windowMs()) {
+                    previous = current;
+                } else {
+                    // More than one window without events: the previous window is empty too
+                    current.values().forEach(Ranking::clear);
+                    previous = current;
+                }
+                current = recycled;
+                windowStartMs = start;
+            }
+        }
+
+        private Map<Dimension, Ranking> rankings() {
+            Map<Dimension, Ranking> rankings = new EnumMap<>(Dimension.class);
+            for (Dimension dimension : Dimension.values()) {
+                rankings.put(dimension, emptyRanking());
+            }
+            return rankings;
+        }
+    }
+
+    private record PageEvent(boolean pageLoad, int urlHash) {
+    }
+
+    /**
+     * A sketch and the candidates with the largest estimates, smallest on top of the heap.
+     */
+    static final class Ranking {
+        private final CountMinSketch sketch;
+        private final int capacity;
+        private final Map<String, Item> index = new HashMap<>();
+        private final PriorityQueue<Item> heap =
+            new PriorityQueue<>(Comparator.comparingLong(Item::count).thenComparing(Item::value));
+        // Changed since it was last published; guarded by the tenant
+        boolean dirty;
+
+        Ranking(CountMinSketch sketch, int capacity) {
+            this.sketch = sketch;
+            this.capacity = capacity;
+        }
+
+        void add(String value) {
+            offer(value, sketch.add(value));
+            dirty = true;
+        }
+
+        private void offer(String value, long estimate) {
+            Item known = index.get(value);
+            if (known != null) {
+                heap.remove(known);
+            } else if (heap.size() >= capacity) {
+                if (estimate <= heap.peek().count()) {
+                    return;
+                }
+                index.remove(heap.poll().value());
+            }
+            Item item = new Item(value, estimate);
+            index.put(value, item);
+            heap.add(item);
+        }
+
+        /**
+         * A new ranking over both streams: the sketches added up and the union of the candidates
+         * re-estimated against it.
+         */
+        Ranking merge(Ranking other) {
+            Ranking merged = new Ranking(sketch.copy(), capacity);
+            merged.sketch.merge(other.sketch);
+            for (String value : index.keySet()) {
+                merged.offer(value, merged.sketch.estimate(value));
+            }
+            for (String value : other.index.keySet()) {
+                merged.offer(value, merged.sketch.estimate(value));
+            }
+            return merged;
+        }
+
+        TopList top(int limit, long windowStartMs) {
+            List<Item> items = new ArrayList<>(heap);
+            items.sort(Comparator.comparingLong(Item::count).reversed().thenComparing(Item::value));
+            return new TopList(List.copyOf(items.subList(0, Math.min(limit, items.size()))),
+                sketch.total(), sketch.errorBound(), windowStartMs);
+        }
+
+        void clear() {
+            sketch.clear();
+            index.clear();
+            heap.clear();
+            dirty = false;
+        }
+
+        /**
+         * The sketch and the candidate values, base64 encoded; estimates are recomputed when merging.
+         */
+        String encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                sketch.writeTo(out);
+                // writeUTF takes at most 64 KB, which a value of up to 16K chars always fits
+                List<String> values = index.keySet().stream().filter(value -> value.length() <= 16_384).toList();
+                out.writeInt(values.size());
+                for (String value : values) {
+                    out.writeUTF(value);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+
+        static Ranking decode(String encoded, int capacity) {
+            byte[] bytes = Base64.getDecoder().decode(encoded);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                Ranking ranking = new Ranking(CountMinSketch.readFrom(in), capacity);
+                for (int i = in.readInt(); i > 0; i--) {
+                    String value = in.readUTF();
+                    ranking.offer(value, ranking.sketch.estimate(value));
+                }
+                return ranking;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Truncated ranking", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Inserts batches through JDBC prepared statements (textual values).
+ *
+ * A batch is sent as one multi-row INSERT rather than a JDBC batch: clickhouse-jdbc (jdbc-v2) runs
+ * addBatch/executeBatch as one INSERT per row, which would create one part per row.
+ */
+@Component
+public class JdbcClickHouseSink implements ClickHouseSink {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcClickHouseSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String getFormat() {
+        return "jdbc";
+    }
+
+    @Override
+    public void insert(ClickHouseTable table, List<Object[]> rows) {
+        insert(table, rows, null);
+    }
+
+    /**
+     * The rows are one statement, so the block's token covers all of them.
+     */
+    @Override
+    public void insert(ClickHouseTable table, List<Object[]> rows, String dedupToken) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(table.getInsertSql(rows.size(), dedupToken), ps -> {
+            int index = 1;
+            for (Object[] row : rows) {
+                index = bind(ps, row, index);
+            }
+        });
+    }
+
+    /**
+     * Bind one row starting at parameter index, rendering DateTime values the way ClickHouse expects
+     * them. Returns the index after the row.
+     */
+    private static int bind(PreparedStatement ps, Object[] row, int index) throws SQLException {
+        for (Object value : row) {
+            if (value instanceof LocalDateTime dateTime) {
+                value = dateTime.format(FORMATTER);
+            }
+            StatementCreatorUtils.setParameterValue(ps, index++, SqlTypeValue.TYPE_UNKNOWN, value);
+        }
+        return index;
+    }
+}
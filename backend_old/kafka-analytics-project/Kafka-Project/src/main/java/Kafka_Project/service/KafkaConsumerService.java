@@ -1,9 +1,12 @@
 package Kafka_Project.service;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,26 +15,118 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import Kafka_Project.config.EventTopics;
+import Kafka_Project.types.ClickHouseTable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class KafkaConsumerService {
     
     private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerService.class);
-    private final JdbcTemplate jdbcTemplate;
+
+    // kafka.consumer.mode selects which set of listeners starts: "batch" (default) or "record";
+    // kafka.topics.consumer-mode whether they read the legacy topics, the consolidated ones or both
+    private static final String LEGACY_TOPICS = "'${kafka.topics.consumer-mode:legacy}' != 'consolidated'";
+    private static final String CONSOLIDATED_TOPICS = "'${kafka.topics.consumer-mode:legacy}' != 'legacy'";
+    private static final String RECORD_MODE = "#{'${kafka.consumer.mode:batch}' == 'record' and " + LEGACY_TOPICS + "}";
+    private static final String BATCH_MODE = "#{'${kafka.consumer.mode:batch}' == 'batch' and " + LEGACY_TOPICS + "}";
+    private static final String CONSOLIDATED_RECORD_MODE =
+        "#{'${kafka.consumer.mode:batch}' == 'record' and " + CONSOLIDATED_TOPICS + "}";
+    private static final String CONSOLIDATED_BATCH_MODE =
+        "#{'${kafka.consumer.mode:batch}' == 'batch' and " + CONSOLIDATED_TOPICS + "}";
+    private static final String RETRY_MODE = "${kafka.retry.enabled:true}";
+    private static final int DEDUP_MAX_DEFERRALS = 10;
+
+    private final ClickHouseBatchWriter batchWriter;
+    private final EventRetryRouter retryRouter;
+    private final List<EventObserver> observers;
+    private final CustomPropertyLimiter customPropertyLimiter;
     private final ObjectMapper objectMapper;
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Legacy topic -> handler, used to route records of the consolidated topics
+    private final Map<String, EventHandler> handlers;
+    private final DedupBlockPlanner blockPlanner;
+
+    // "string" decodes each record to a String before parsing, as the StringDeserializer used to
+    @Value("${kafka.serialization.mode:bytes}")
+    private String serializationMode;
+
+    // Insert each partition's share of a poll as a replay-stable block with a deduplication token
+    @Value("${clickhouse.dedup.enabled:true}")
+    private boolean dedupEnabled = true;
+
+    // Share of sessions whose mouse moves are also stored row by row in mouse_events (0 = heatmap only)
+    @Value("${mouse.raw.sample-rate:0.0}")
+    private double mouseRawSampleRate = 0.0;
+
+    // Without heatmap aggregation every mouse move is stored raw
+    @Value("${heatmap.enabled:true}")
+    private boolean heatmapEnabled = true;
+
+    // Scroll samples are reduced to one row per page view instead of being stored one by one
+    @Value("${scroll.collapse.enabled:true}")
+    private boolean scrollCollapseEnabled = true;
  
-    public KafkaConsumerService(JdbcTemplate jdbcTemplate, KafkaTemplate<String, String> kafkaTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public KafkaConsumerService(ClickHouseBatchWriter batchWriter, EventRetryRouter retryRouter,
+                                List<EventObserver> observers, CustomPropertyLimiter customPropertyLimiter) {
+        this.batchWriter = batchWriter;
+        this.retryRouter = retryRouter;
+        this.observers = observers;
+        this.customPropertyLimiter = customPropertyLimiter;
         this.objectMapper = new ObjectMapper();
-        this.kafkaTemplate = kafkaTemplate;
+        this.blockPlanner = new DedupBlockPlanner(DEDUP_MAX_DEFERRALS);
+        this.handlers = new HashMap<>();
+        for (String topic : List.of("page_load", "page_view", "page_unload", "page_hidden", "page_visible")) {
+            handlers.put(topic, this::handlePageEvents);
+        }
+        for (String topic : List.of("mouse_click", "button_click", "link_click", "file_download")) {
+            handlers.put(topic, this::handleInteractionEvents);
+        }
+        for (String topic : List.of("form_submit", "form_focus", "form_input")) {
+            handlers.put(topic, this::handleFormEvents);
+        }
+        for (String topic : List.of("product_view", "cart_add", "cart_remove", "checkout_step", "purchase")) {
+            handlers.put(topic, this::handleEcommerceEvents);
+        }
+        handlers.put(EventTopics.VIDEO_EVENTS, this::handleVideoEvents);
+        handlers.put("scroll_depth", this::handleScrollEvents);
+        handlers.put("mouse_move", this::handleMouseMoveEvents);
+        handlers.put("periodic_events", this::handlePeriodicEvents);
+        handlers.put("custom_event", this::handleCustomEvents);
+    }
+
+    /**
+     * Turns one event envelope into rows.
+     */
+    @FunctionalInterface
+    private interface EventHandler {
+        void handle(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink);
+    }
+
+    /**
+     * Parse a record value. In bytes mode Jackson reads the UTF-8 record bytes directly.
+     */
+    private JsonNode readPayload(ConsumerRecord<String, byte[]> record) throws IOException {
+        if ("string".equals(serializationMode)) {
+            return objectMapper.readTree(payloadText(record));
+        }
+        return objectMapper.readTree(record.value());
+    }
+
+    private static String payloadText(ConsumerRecord<String, byte[]> record) {
+        return record.value() == null ? null : new String(record.value(), StandardCharsets.UTF_8);
     }
 
     /**
@@ -61,28 +156,200 @@ public class KafkaConsumerService {
         return data.path("url").asText("");
     }
 
+    /**
+     * Parse a record once and hand its event envelope to the handler. A multi-event record
+     * ({"events":[envelope, ...]}, see EventEnvelopeBatcher) is unpacked from the same parse and
+     * each envelope is handled in order.
+     *
+     * Rows are staged and only reach the sink if the whole record was handled, so a record that
+     * fails half way can be retried without leaving duplicates behind. The envelopes of a handled
+     * record are added to handled, for the observers.
+     *
+     * @return the failure, or null if the record was handled
+     */
+    private EventRetryRouter.Failure dispatch(ConsumerRecord<String, byte[]> record, ClickHouseRowSink sink,
+                                              EventHandler handler, List<JsonNode> handled) {
+        JsonNode json;
+        try {
+            json = readPayload(record);
+        } catch (Exception e) {
+            logger.error("✗ Error parsing record from topic {} partition {} offset {}: {}",
+                record.topic(), record.partition(), record.offset(), e.getMessage(), e);
+            return new EventRetryRouter.Failure(record, EventRetryRouter.Stage.PARSE, e);
+        }
+        StagedRows staged = new StagedRows();
+        boolean packed = json.has("events") && !json.has("event_type");
+        try {
+            if (packed) {
+                for (JsonNode event : json.path("events")) {
+                    handler.handle(record, event, staged);
+                }
+            } else {
+                handler.handle(record, json, staged);
+            }
+        } catch (Exception e) {
+            return new EventRetryRouter.Failure(record, EventRetryRouter.Stage.HANDLER, e);
+        }
+        staged.drainTo(sink);
+        if (packed) {
+            json.path("events").forEach(handled::add);
+        } else {
+            handled.add(json);
+        }
+        return null;
+    }
+
+    /**
+     * Rows of one record per table, held back until the record has been handled completely.
+     */
+    private static final class StagedRows implements ClickHouseRowSink {
+
+        private final Map<ClickHouseTable, List<Object[]>> rows = new EnumMap<>(ClickHouseTable.class);
+
+        @Override
+        public void add(ClickHouseTable table, Object... row) {
+            rows.computeIfAbsent(table, t -> new ArrayList<>(2)).add(row);
+        }
+
+        @Override
+        public void addAll(ClickHouseTable table, List<Object[]> tableRows) {
+            rows.computeIfAbsent(table, t -> new ArrayList<>(tableRows.size())).addAll(tableRows);
+        }
+
+        void drainTo(ClickHouseRowSink sink) {
+            rows.forEach(sink::addAll);
+        }
+    }
+
+    /**
+     * Record-mode driver: rows go to the buffered writer, failures to the retry topics.
+     */
+    private void consumeRecord(ConsumerRecord<String, byte[]> record, EventHandler handler) {
+        List<JsonNode> handled = new ArrayList<>(1);
+        EventRetryRouter.Failure failure = dispatch(record, batchWriter, handler, handled);
+        if (failure != null) {
+            retryRouter.routeAll(List.of(failure));
+        }
+        observe(handled);
+    }
+
+    /**
+     * Feed handled envelopes to the observers. Only events whose rows were accepted are counted, so a
+     * record that goes through the retry topics counts once, when it finally succeeds. The rows are
+     * already written by then, so an observer failure is only logged; retrying would write them again.
+     */
+    private void observe(List<JsonNode> handled) {
+        for (JsonNode event : handled) {
+            LocalDateTime timestamp = parseTimestamp(event, event.path("data"));
+            for (EventObserver observer : observers) {
+                try {
+                    observer.observe(event, timestamp);
+                } catch (RuntimeException e) {
+                    logger.warn("✗ {} failed to observe a {} event: {}", observer.getClass().getSimpleName(),
+                        event.path("event_type").asText(""), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Batch-mode driver shared by all consumer groups.
+     * Every record in the poll is converted into rows, the rows are written with one INSERT per table,
+     * and only then are the offsets committed.
+     *
+     * With clickhouse.dedup.enabled the poll is cut into one block per partition (see DedupBlockPlanner):
+     * each block is inserted with a deduplication token derived from its offset range and its offsets are
+     * committed through the consumer, so a block redelivered after a crash or rebalance is dropped by
+     * ClickHouse instead of being written twice.
+     *
+     * Records that fail to parse or convert go to the retry topics (see EventRetryRouter). If the
+     * INSERT fails, the records of the whole block go there too, so the partition keeps moving. Only
+     * when the retry topics cannot be written either (or retry is disabled and the INSERT fails) does
+     * this throw, and the container's error handler seeks back and redelivers the poll (at-least-once).
+     */
+    private void consumeBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                              Consumer<?, ?> consumer, EventHandler handler) {
+        if (!dedupEnabled || consumer == null || records.isEmpty()) {
+            // A poll emptied by the header filter has nothing to deduplicate; acknowledging it commits
+            // the offsets of the dropped records
+            processBatch(records, handler, null);
+            acknowledgment.acknowledge();
+            return;
+        }
+        List<DedupBlockPlanner.Block> blocks = blockPlanner.plan(records, consumer);
+        for (DedupBlockPlanner.Block block : blocks) {
+            processBatch(block.records(), handler, block.dedupToken());
+        }
+        blockPlanner.complete(blocks, consumer);
+    }
+
+    private void processBatch(List<ConsumerRecord<String, byte[]>> records, EventHandler handler, String dedupToken) {
+        ClickHouseRowBatch batch = new ClickHouseRowBatch(dedupToken);
+        List<EventRetryRouter.Failure> failures = new ArrayList<>();
+        List<JsonNode> handled = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            EventRetryRouter.Failure failure = dispatch(record, batch, handler, handled);
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        try {
+            batchWriter.write(batch);
+        } catch (RuntimeException e) {
+            if (!retryRouter.isEnabled()) {
+                throw e;
+            }
+            logger.error("✗ Insert of {} rows failed, sending {} records to retry: {}",
+                batch.getRowCount(), records.size(), e.getMessage(), e);
+            List<EventRetryRouter.Failure> all = new ArrayList<>(failures);
+            for (ConsumerRecord<String, byte[]> record : records) {
+                if (failures.stream().noneMatch(failure -> failure.record() == record)) {
+                    all.add(new EventRetryRouter.Failure(record, EventRetryRouter.Stage.INSERT, e));
+                }
+            }
+            failures = all;
+            handled.clear();
+        }
+        observe(handled);
+        retryRouter.routeAll(failures);
+        logger.debug("✓ Committed {} records after writing {} rows ({} to retry)",
+            records.size(), batch.getRowCount(), failures.size());
+    }
+
     // =========================================================================
     // PAGE EVENTS CONSUMER
     // =========================================================================
     @KafkaListener(
-        topics = {"page_load", "page_view", "page_unload", "page_hidden", "page_visible"}, 
+        topics = {"page_load", "page_view", "page_unload", "page_hidden", "page_visible"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
     )
-    public void consumePageEvents(ConsumerRecord<String, String> record) {
+    public void consumePageEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handlePageEvents);
+    }
+
+    @KafkaListener(
+        topics = {"page_load", "page_view", "page_unload", "page_hidden", "page_visible"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumePageEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                       Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handlePageEvents);
+    }
+
+    private void handlePageEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             String eventType = json.path("event_type").asText();
             JsonNode data = json.path("data");
             
             LocalDateTime timestamp = parseTimestamp(json, data);
             
-            // Insert page event
-            String sql = "INSERT INTO page_events (timestamp, session_id, user_id, tracking_id, " +
-                        "event_type, page_url, page_title, referrer) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            // Buffer page event
+            sink.add(ClickHouseTable.PAGE_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -92,122 +359,44 @@ public class KafkaConsumerService {
                 data.path("referrer").asText("")
             );
             
-            // On page_load, also create/update session
-            if ("page_load".equals(eventType)) {
-                insertSession(data, timestamp);
-            }
-            
-            logger.info("✓ Inserted page event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
+            logger.info("✓ Buffered page event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing page event from topic {}: {}", record.topic(), e.getMessage(), e);
+            throw e;
         }
     }
 
-    // =========================================================================
-    // SESSIONS CONSUMER - Creates session records on page_load
-    // =========================================================================
-    private void insertSession(JsonNode data, LocalDateTime timestamp) {
-        try {
-            String sessionId = data.path("session_id").asText("");
-            String userId = data.path("user_id").asText("");
-            String trackingId = data.path("tracking_id").asText("");
-            
-            if (sessionId.isEmpty() || trackingId.isEmpty()) {
-                logger.warn("Cannot create session without session_id or tracking_id");
-                return;
-            }
-            
-            // Extract device/browser info - ensure non-empty for LowCardinality
-            String deviceType = data.path("device_type").asText(
-                data.path("deviceType").asText("Unknown")
-            );
-            if (deviceType == null || deviceType.isEmpty()) deviceType = "Unknown";
-            
-            String os = data.path("operating_system").asText(
-                data.path("os").asText("Unknown")
-            );
-            if (os == null || os.isEmpty()) os = "Unknown";
-            
-            String browser = data.path("browser").asText("Unknown");
-            if (browser == null || browser.isEmpty()) browser = "Unknown";
-            
-            // Clamp UInt16 (0-65535) to avoid overflow/type errors
-            int screenWidth = Math.max(0, Math.min(65535, data.path("screen_width").asInt(
-                data.path("screenWidth").asInt(0)
-            )));
-            int screenHeight = Math.max(0, Math.min(65535, data.path("screen_height").asInt(
-                data.path("screenHeight").asInt(0)
-            )));
-            int viewportWidth = Math.max(0, Math.min(65535, data.path("viewport_width").asInt(
-                data.path("viewportWidth").asInt(0)
-            )));
-            int viewportHeight = Math.max(0, Math.min(65535, data.path("viewport_height").asInt(
-                data.path("viewportHeight").asInt(0)
-            )));
-            
-            String language = data.path("language").asText("en");
-            if (language == null || language.isEmpty()) language = "en";
-            String timezone = data.path("timezone").asText("UTC");
-            if (timezone == null || timezone.isEmpty()) timezone = "UTC";
-            String referrer = data.path("referrer").asText("");
-            if (referrer == null) referrer = "";
-            String entryPage = getUrl(data);
-            if (entryPage == null || entryPage.isEmpty()) entryPage = "";
-            
-            // Use explicit cast for DateTime string - ClickHouse expects 'YYYY-MM-DD HH:MM:SS'
-            String tsStr = timestamp.format(FORMATTER);
-            
-            String sql = "INSERT INTO sessions (session_id, user_id, tracking_id, start_time, " +
-                        "device_type, operating_system, browser, screen_width, screen_height, " +
-                        "viewport_width, viewport_height, language, timezone, referrer, entry_page, page_views) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                sessionId,
-                userId.isEmpty() ? "guest" : userId,
-                trackingId,
-                tsStr,
-                deviceType,
-                os,
-                browser,
-                screenWidth,
-                screenHeight,
-                viewportWidth,
-                viewportHeight,
-                language,
-                timezone,
-                referrer,
-                entryPage,
-                1  // page_views
-            );
-            
-            logger.info("✓ Created session: {} for tracking_id: {}", sessionId, trackingId);
-        } catch (Exception e) {
-            logger.error("✗ Error creating session: {}", e.getMessage(), e);
-        }
+    @KafkaListener(
+        topics = {"mouse_click", "button_click", "link_click", "file_download"},
+        groupId = "analytics-consumers",
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
+    )
+    public void consumeInteractionEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleInteractionEvents);
     }
 
     @KafkaListener(
-        topics = {"mouse_click", "button_click", "link_click", "file_download"}, 
+        topics = {"mouse_click", "button_click", "link_click", "file_download"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
     )
-    public void consumeInteractionEvents(ConsumerRecord<String, String> record) {
+    public void consumeInteractionEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                              Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleInteractionEvents);
+    }
+
+    private void handleInteractionEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             String eventType = json.path("event_type").asText();
             JsonNode data = json.path("data");
             
             LocalDateTime timestamp = parseTimestamp(json, data);
             
-            // Extended INSERT with all interaction_events fields
-            String sql = "INSERT INTO interaction_events (timestamp, session_id, user_id, tracking_id, " +
-                        "event_type, page_url, x, y, element, element_id, element_class, " +
-                        "button_text, button_type, link_url, link_text, file_name, is_external, target) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            // Extended row with all interaction_events fields
+            sink.add(ClickHouseTable.INTERACTION_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -227,33 +416,44 @@ public class KafkaConsumerService {
                 data.has("target") ? data.get("target").asText() : null
             );
             
-            logger.info("✓ Inserted interaction event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
+            logger.info("✓ Buffered interaction event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing interaction event from topic {}: {}", record.topic(), e.getMessage(), e);
+            throw e;
         }
     }
 
     @KafkaListener(
-        topics = {"form_submit", "form_focus", "form_input"}, 
+        topics = {"form_submit", "form_focus", "form_input"},
+        groupId = "analytics-consumers",
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
+    )
+    public void consumeFormEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleFormEvents);
+    }
+
+    @KafkaListener(
+        topics = {"form_submit", "form_focus", "form_input"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
     )
-    public void consumeFormEvents(ConsumerRecord<String, String> record) {
+    public void consumeFormEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                       Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleFormEvents);
+    }
+
+    private void handleFormEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             String eventType = json.path("event_type").asText();
             JsonNode data = json.path("data");
             
             LocalDateTime timestamp = parseTimestamp(json, data);
             
-            // Extended INSERT with all form_events fields
-            String sql = "INSERT INTO form_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, form_id, form_name, form_action, form_method, " +
-                        "field_name, field_type, field_count, value_length, has_file_upload, success) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            // Extended row with all form_events fields
+            sink.add(ClickHouseTable.FORM_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -271,34 +471,54 @@ public class KafkaConsumerService {
                 data.has("success") ? (data.get("success").asBoolean() ? 1 : 0) : null
             );
             
-            logger.info("✓ Inserted form event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
+            logger.info("✓ Buffered form event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing form event from topic {}: {}", record.topic(), e.getMessage(), e);
+            throw e;
         }
     }
 
-   @KafkaListener(
+    @KafkaListener(
         topics = {"product_view", "cart_add", "cart_remove", "checkout_step", "purchase"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
-)
-public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
+    )
+    public void consumeEcommerceEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleEcommerceEvents);
+    }
+
+    @KafkaListener(
+        topics = {"product_view", "cart_add", "cart_remove", "checkout_step", "purchase"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumeEcommerceEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                            Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleEcommerceEvents);
+    }
+
+private void handleEcommerceEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
 
     logger.info(
-            "🟢 KAFKA CONSUMER START | topic={} partition={} offset={} key={}",
+            "🟢 KAFKA CONSUMER START | topic={} partition={} offset={} key={} event_type={} tracking_id={}",
             record.topic(),
             record.partition(),
             record.offset(),
-            record.key()
+            record.key(),
+            EventHeaders.get(record.headers(), EventHeaders.EVENT_TYPE),
+            EventHeaders.get(record.headers(), EventHeaders.TRACKING_ID)
     );
 
-    logger.info("📦 RAW MESSAGE: {}", record.value());
+    if (logger.isDebugEnabled()) {
+        logger.debug("📦 RAW MESSAGE: {}", payloadText(record));
+    }
 
     try {
         // ===============================
-        // 1️⃣ Parse JSON
+        // 1️⃣ Validate JSON
         // ===============================
-        JsonNode json = objectMapper.readTree(record.value());
         JsonNode data = json.path("data");
 
         if (!json.has("event_type") || data.isMissingNode()) {
@@ -361,14 +581,10 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
         );
 
         // ===============================
-        // 4️⃣ INSERT INTO CLICKHOUSE
+        // 4️⃣ BUFFER FOR CLICKHOUSE
         // ===============================
-        jdbcTemplate.update(
-                "INSERT INTO ecommerce_events (" +
-                        "timestamp, session_id, user_id, tracking_id, page_url, event_type, " +
-                        "product_id, product_name, price, quantity, category, currency, " +
-                        "order_id, total, step, step_name" +
-                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        sink.add(
+                ClickHouseTable.ECOMMERCE_EVENTS,
                 timestamp,
                 data.path("session_id").asText(null),
                 data.path("user_id").asText(null),
@@ -387,7 +603,7 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 data.path("step_name").isMissingNode() ? null : data.path("step_name").asText()
         );
 
-        logger.info("✅ INSERT SUCCESS | trackingId={} offset={}",
+        logger.info("✅ BUFFERED | trackingId={} offset={}",
                 trackingId, record.offset());
 
     } catch (Exception e) {
@@ -395,23 +611,90 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 "💥 CONSUMER FAILED | topic={} offset={} payload={}",
                 record.topic(),
                 record.offset(),
-                record.value(),
+                payloadText(record),
                 e
         );
+        throw e;
     }
 }
 
+    // =========================================================================
+    // CUSTOM EVENTS CONSUMER - analytics.track(name, properties) from the tracker
+    // =========================================================================
+    @KafkaListener(
+        topics = {"custom_event"},
+        groupId = "analytics-consumers",
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
+    )
+    public void consumeCustomEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleCustomEvents);
+    }
+
+    @KafkaListener(
+        topics = {"custom_event"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumeCustomEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                         Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleCustomEvents);
+    }
+
+    private void handleCustomEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
+        try {
+            JsonNode data = json.path("data");
+            String trackingId = data.path("tracking_id").asText("");
+            String eventName = data.path("event_name").asText(data.path("name").asText(""));
+            if (eventName.isEmpty()) {
+                logger.warn("✗ custom_event without event_name for tracking_id: {}, skipped", trackingId);
+                return;
+            }
+            
+            sink.add(ClickHouseTable.CUSTOM_EVENTS,
+                parseTimestamp(json, data),
+                data.path("session_id").asText(""),
+                data.path("user_id").asText(""),
+                trackingId,
+                getUrl(data),
+                eventName,
+                customPropertyLimiter.toJson(trackingId, data.get("properties"))
+            );
+            
+            logger.debug("✓ Buffered custom event: {} for tracking_id: {}", eventName, trackingId);
+        } catch (Exception e) {
+            logger.error("✗ Error processing custom event: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
     // =========================================================================
     // VIDEO EVENTS CONSUMER
     // =========================================================================
     @KafkaListener(
-        topics = {"video_events"}, 
+        topics = {"video_events"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
     )
-    public void consumeVideoEvents(ConsumerRecord<String, String> record) {
+    public void consumeVideoEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleVideoEvents);
+    }
+
+    @KafkaListener(
+        topics = {"video_events"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumeVideoEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                        Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleVideoEvents);
+    }
+
+    private void handleVideoEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             String eventType = json.path("event_type").asText();
             JsonNode data = json.path("data");
             
@@ -428,12 +711,8 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 (float) data.get("current_time").asDouble() :
                 (data.has("currentTime") ? (float) data.get("currentTime").asDouble() : null);
             
-            String sql = "INSERT INTO video_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, video_src, video_duration, current_time) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            sink.add(ClickHouseTable.VIDEO_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -444,9 +723,10 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 currentTime
             );
             
-            logger.info("✓ Inserted video event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
+            logger.info("✓ Buffered video event: {} for tracking_id: {}", eventType, data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing video event: {}", e.getMessage(), e);
+            throw e;
         }
     }
 
@@ -454,13 +734,32 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
     // SCROLL EVENTS CONSUMER
     // =========================================================================
     @KafkaListener(
-        topics = {"scroll_depth"}, 
+        topics = {"scroll_depth"},
+        groupId = "analytics-consumers",
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
+    )
+    public void consumeScrollEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleScrollEvents);
+    }
+
+    @KafkaListener(
+        topics = {"scroll_depth"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
     )
-    public void consumeScrollEvents(ConsumerRecord<String, String> record) {
+    public void consumeScrollEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                         Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleScrollEvents);
+    }
+
+    private void handleScrollEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
+            if (scrollCollapseEnabled) {
+                // One row per page view is written by ScrollDepthReducer
+                return;
+            }
             String eventType = json.path("event_type").asText("scroll_depth");
             JsonNode data = json.path("data");
             
@@ -478,12 +777,8 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 data.get("scroll_percent").asInt() :
                 (data.has("scrollPercent") ? data.get("scrollPercent").asInt() : null);
             
-            String sql = "INSERT INTO scroll_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, depth_percent, scroll_top, scroll_percent) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            sink.add(ClickHouseTable.SCROLL_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -494,9 +789,10 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 scrollPercent
             );
             
-            logger.info("✓ Inserted scroll event for tracking_id: {}", data.path("tracking_id").asText());
+            logger.info("✓ Buffered scroll event for tracking_id: {}", data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing scroll event: {}", e.getMessage(), e);
+            throw e;
         }
     }
 
@@ -504,14 +800,33 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
     // MOUSE EVENTS CONSUMER
     // =========================================================================
     @KafkaListener(
-        topics = {"mouse_move"}, 
+        topics = {"mouse_move"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
     )
-    public void consumeMouseMoveEvents(ConsumerRecord<String, String> record) {
+    public void consumeMouseMoveEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handleMouseMoveEvents);
+    }
+
+    @KafkaListener(
+        topics = {"mouse_move"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumeMouseMoveEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                            Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handleMouseMoveEvents);
+    }
+
+    private void handleMouseMoveEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             JsonNode data = json.path("data");
+            if (!sampleRawMouseMove(data.path("session_id").asText(""))) {
+                // Counted into mouse_heatmap by MouseHeatmapAggregator
+                return;
+            }
             
             LocalDateTime timestamp = parseTimestamp(json, data);
             
@@ -519,11 +834,8 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
             int x = data.path("x").asInt(0);
             int y = data.path("y").asInt(0);
             
-            String sql = "INSERT INTO mouse_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, x, y) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
+            sink.add(ClickHouseTable.MOUSE_EVENTS,
+                timestamp,
                 data.path("session_id").asText(""),
                 data.path("user_id").asText(""),
                 data.path("tracking_id").asText(""),
@@ -532,193 +844,217 @@ public void consumeEcommerceEvents(ConsumerRecord<String, String> record) {
                 y
             );
             
-            logger.debug("✓ Inserted mouse event for tracking_id: {}", data.path("tracking_id").asText());
+            logger.debug("✓ Buffered mouse event for tracking_id: {}", data.path("tracking_id").asText());
         } catch (Exception e) {
             logger.error("✗ Error processing mouse event: {}", e.getMessage(), e);
+            throw e;
         }
     }
 
+    /**
+     * Whether the mouse moves of a session are also written as raw mouse_events rows. Whole sessions
+     * are sampled, so the rows that are kept still form complete traces.
+     */
+    private boolean sampleRawMouseMove(String sessionId) {
+        if (!heatmapEnabled || mouseRawSampleRate >= 1.0) {
+            return true;
+        }
+        if (mouseRawSampleRate <= 0.0) {
+            return false;
+        }
+        return Math.floorMod(sessionId.hashCode() * 0x9E3779B9, 10_000) < mouseRawSampleRate * 10_000;
+    }
+
     // =========================================================================
     // PERIODIC EVENTS CONSUMER - Unpacks batch events and re-publishes
     // =========================================================================
     @KafkaListener(
-        topics = {"periodic_events"}, 
+        topics = {"periodic_events"},
         groupId = "analytics-consumers",
-        containerFactory = "kafkaListenerContainerFactory"
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = RECORD_MODE
     )
-    public void consumePeriodicEvents(ConsumerRecord<String, String> record) {
+    public void consumePeriodicEvents(ConsumerRecord<String, byte[]> record) {
+        consumeRecord(record, this::handlePeriodicEvents);
+    }
+
+    @KafkaListener(
+        topics = {"periodic_events"},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = BATCH_MODE
+    )
+    public void consumePeriodicEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                           Consumer<?, ?> consumer) {
+        consumeBatch(records, acknowledgment, consumer, this::handlePeriodicEvents);
+    }
+
+    private void handlePeriodicEvents(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
         try {
-            JsonNode json = objectMapper.readTree(record.value());
             JsonNode data = json.path("data");
-            String timestampStr = json.path("timestamp").asText();
             String trackingId = data.path("tracking_id").asText("");
-            String sessionId = data.path("session_id").asText("");
-            String userId = data.path("user_id").asText("");
-            String url = getUrl(data);
             
-            logger.info("Processing periodic_events for tracking_id: {}", trackingId);
+            logger.debug("Processing periodic_events for tracking_id: {}", trackingId);
             
-            int processedCount = 0;
+            // All items share the envelope timestamp: parsed once, rows handed over per table
+            LocalDateTime timestamp = parseTimestampString(json.path("timestamp").asText());
+            Map<ClickHouseTable, List<Object[]>> rows =
+                PeriodicEventsDecoder.decode(data, timestamp, getUrl(data), !scrollCollapseEnabled);
             
-            // Process linkClicks array
-            if (data.has("linkClicks") && data.get("linkClicks").isArray()) {
-                for (JsonNode click : data.get("linkClicks")) {
-                    processPeriodicEvent(click, "link_click", trackingId, sessionId, userId, url, timestampStr);
-                    processedCount++;
-                }
-            }
-            
-            // Process videoEvents array
-            if (data.has("videoEvents") && data.get("videoEvents").isArray()) {
-                for (JsonNode video : data.get("videoEvents")) {
-                    String eventType = video.path("type").asText(video.path("event_type").asText("video_play"));
-                    processVideoEvent(video, eventType, trackingId, sessionId, userId, url, timestampStr);
-                    processedCount++;
-                }
-            }
-            
-            // Process mouseClicks array
-            if (data.has("mouseClicks") && data.get("mouseClicks").isArray()) {
-                for (JsonNode click : data.get("mouseClicks")) {
-                    processPeriodicEvent(click, "mouse_click", trackingId, sessionId, userId, url, timestampStr);
-                    processedCount++;
-                }
-            }
-            
-            // Process scrollEvents array
-            if (data.has("scrollEvents") && data.get("scrollEvents").isArray()) {
-                for (JsonNode scroll : data.get("scrollEvents")) {
-                    processScrollEvent(scroll, trackingId, sessionId, userId, url, timestampStr);
-                    processedCount++;
-                }
-            }
-            
-            // Process formEvents array
-            if (data.has("formEvents") && data.get("formEvents").isArray()) {
-                for (JsonNode form : data.get("formEvents")) {
-                    String eventType = form.path("type").asText(form.path("event_type").asText("form_input"));
-                    processFormEvent(form, eventType, trackingId, sessionId, userId, url, timestampStr);
-                    processedCount++;
-                }
+            int processedCount = 0;
+            for (Map.Entry<ClickHouseTable, List<Object[]>> entry : rows.entrySet()) {
+                sink.addAll(entry.getKey(), entry.getValue());
+                processedCount += entry.getValue().size();
             }
             
             logger.info("✓ Processed {} events from periodic_events for tracking_id: {}", processedCount, trackingId);
             
         } catch (Exception e) {
             logger.error("✗ Error processing periodic events: {}", e.getMessage(), e);
+            throw e;
         }
     }
     
-    /**
-     * Process individual event from periodic_events batch and insert into interaction_events
-     */
-    private void processPeriodicEvent(JsonNode event, String eventType, String trackingId, 
-                                      String sessionId, String userId, String url, String timestampStr) {
-        try {
-            LocalDateTime timestamp = parseTimestampString(timestampStr);
-            
-            String sql = "INSERT INTO interaction_events (timestamp, session_id, user_id, tracking_id, " +
-                        "event_type, page_url, element, x, y) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
-                sessionId,
-                userId,
-                trackingId,
-                eventType,
-                event.path("url").asText(url),
-                event.path("element").asText(""),
-                event.has("x") ? event.get("x").asInt() : null,
-                event.has("y") ? event.get("y").asInt() : null
-            );
-        } catch (Exception e) {
-            logger.error("Error processing periodic interaction event: {}", e.getMessage());
+    // =========================================================================
+    // CONSOLIDATED TOPICS CONSUMER - Routes events.* records by their event_type header
+    // =========================================================================
+    @KafkaListener(
+        topics = {EventTopics.PAGE, EventTopics.INTERACTION, EventTopics.COMMERCE, EventTopics.HIGH_VOLUME},
+        groupId = "analytics-consumers",
+        containerFactory = "kafkaListenerContainerFactory",
+        autoStartup = CONSOLIDATED_RECORD_MODE
+    )
+    public void consumeConsolidatedEvents(ConsumerRecord<String, byte[]> record) {
+        if (!isDualCopy(record)) {
+            consumeRecord(record, this::routeByEventType);
         }
     }
-    
-    /**
-     * Process video event from periodic_events batch
-     */
-    private void processVideoEvent(JsonNode event, String eventType, String trackingId,
-                                   String sessionId, String userId, String url, String timestampStr) {
-        try {
-            LocalDateTime timestamp = parseTimestampString(timestampStr);
-            
-            String videoSrc = event.path("video_src").asText(event.path("src").asText("unknown"));
-            Float duration = event.has("duration") ? (float) event.get("duration").asDouble() : null;
-            Float currentTime = event.has("currentTime") ? (float) event.get("currentTime").asDouble() : null;
-            
-            String sql = "INSERT INTO video_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, video_src, video_duration, current_time) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
-                sessionId,
-                userId,
-                trackingId,
-                url,
-                eventType,
-                videoSrc,
-                duration,
-                currentTime
-            );
-        } catch (Exception e) {
-            logger.error("Error processing periodic video event: {}", e.getMessage());
+
+    // One consumer thread per partition of each consolidated topic
+    @KafkaListener(
+        topics = {EventTopics.PAGE},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        concurrency = "${kafka.topics.consolidated.partitions.page:6}",
+        autoStartup = CONSOLIDATED_BATCH_MODE
+    )
+    public void consumeConsolidatedPageEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                                   Consumer<?, ?> consumer) {
+        consumeBatch(withoutDualCopies(records), acknowledgment, consumer, this::routeByEventType);
+    }
+
+    @KafkaListener(
+        topics = {EventTopics.INTERACTION},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        concurrency = "${kafka.topics.consolidated.partitions.interaction:6}",
+        autoStartup = CONSOLIDATED_BATCH_MODE
+    )
+    public void consumeConsolidatedInteractionEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                                          Consumer<?, ?> consumer) {
+        consumeBatch(withoutDualCopies(records), acknowledgment, consumer, this::routeByEventType);
+    }
+
+    @KafkaListener(
+        topics = {EventTopics.COMMERCE},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        concurrency = "${kafka.topics.consolidated.partitions.commerce:3}",
+        autoStartup = CONSOLIDATED_BATCH_MODE
+    )
+    public void consumeConsolidatedCommerceEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                                       Consumer<?, ?> consumer) {
+        consumeBatch(withoutDualCopies(records), acknowledgment, consumer, this::routeByEventType);
+    }
+
+    @KafkaListener(
+        topics = {EventTopics.HIGH_VOLUME},
+        groupId = "analytics-consumers",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        concurrency = "${kafka.topics.consolidated.partitions.highvolume:12}",
+        autoStartup = CONSOLIDATED_BATCH_MODE
+    )
+    public void consumeConsolidatedHighVolumeEventsBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                                         Consumer<?, ?> consumer) {
+        consumeBatch(withoutDualCopies(records), acknowledgment, consumer, this::routeByEventType);
+    }
+
+    // =========================================================================
+    // RETRY CONSUMER - Handles records from the retry topics once their delay has passed
+    // =========================================================================
+    @KafkaListener(
+        topicPattern = EventTopics.RETRY_TOPIC_PATTERN,
+        groupId = "analytics-retry",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = RETRY_MODE
+    )
+    public void consumeRetryBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                                  Consumer<?, ?> consumer) {
+        // A retry topic has a single delay, so records become due in offset order within a partition;
+        // a poll spans several partitions and retry levels, though, so readiness is decided per partition
+        long now = System.currentTimeMillis();
+        List<ConsumerRecord<String, byte[]>> due = new ArrayList<>(records.size());
+        Map<TopicPartition, OffsetAndMetadata> handled = new HashMap<>();
+        Map<TopicPartition, Long> waiting = new LinkedHashMap<>();
+        long nextDue = Long.MAX_VALUE;
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (waiting.containsKey(partition)) {
+                continue;
+            }
+            long dueAt = EventRetryRouter.dueAt(record);
+            if (dueAt <= now) {
+                due.add(record);
+                handled.put(partition, new OffsetAndMetadata(record.offset() + 1));
+            } else {
+                waiting.put(partition, record.offset());
+                nextDue = Math.min(nextDue, dueAt);
+            }
         }
+        if (due.isEmpty() && !waiting.isEmpty()) {
+            // Nothing to do yet: redeliver the poll once its earliest record is due
+            acknowledgment.nack(0, Duration.ofMillis(Math.max(100, nextDue - now)));
+            return;
+        }
+        processBatch(due, this::routeByEventType, null);
+        if (waiting.isEmpty()) {
+            acknowledgment.acknowledge();
+            return;
+        }
+        // Commit the partitions that were handled and redeliver the others from their first pending record
+        waiting.forEach(consumer::seek);
+        consumer.commitSync(handled);
+        logger.debug("✓ Handled {} retried records, {} partitions not due yet", due.size(), waiting.size());
     }
-    
+
     /**
-     * Process scroll event from periodic_events batch
+     * Hand an event from a consolidated or retry topic to the handler of its event type.
      */
-    private void processScrollEvent(JsonNode event, String trackingId, String sessionId,
-                                    String userId, String url, String timestampStr) {
-        try {
-            LocalDateTime timestamp = parseTimestampString(timestampStr);
-            
-            String sql = "INSERT INTO scroll_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, depth_percent, scroll_top, scroll_percent) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
-                sessionId,
-                userId,
-                trackingId,
-                url,
-                "scroll_depth",
-                event.has("depth") ? event.get("depth").asInt() : null,
-                event.has("scrollTop") ? event.get("scrollTop").asInt() : null,
-                event.has("scrollPercent") ? event.get("scrollPercent").asInt() : null
-            );
-        } catch (Exception e) {
-            logger.error("Error processing periodic scroll event: {}", e.getMessage());
+    private void routeByEventType(ConsumerRecord<String, byte[]> record, JsonNode json, ClickHouseRowSink sink) {
+        String eventType = json.path("event_type").asText("");
+        EventHandler handler = handlers.get(EventTopics.legacyTopic(eventType));
+        if (handler == null) {
+            logger.debug("No consumer for event type {} on topic {}", eventType, record.topic());
+            return;
         }
+        handler.handle(record, json, sink);
     }
-    
+
     /**
-     * Process form event from periodic_events batch
+     * Consolidated copies of dual-published events are skipped without parsing them; their legacy
+     * copy is the one consumed.
      */
-    private void processFormEvent(JsonNode event, String eventType, String trackingId,
-                                  String sessionId, String userId, String url, String timestampStr) {
-        try {
-            LocalDateTime timestamp = parseTimestampString(timestampStr);
-            
-            String sql = "INSERT INTO form_events (timestamp, session_id, user_id, tracking_id, " +
-                        "page_url, event_type, form_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            
-            jdbcTemplate.update(sql,
-                timestamp.format(FORMATTER),
-                sessionId,
-                userId,
-                trackingId,
-                url,
-                eventType,
-                event.path("form_id").asText(event.path("formId").asText(""))
-            );
-        } catch (Exception e) {
-            logger.error("Error processing periodic form event: {}", e.getMessage());
+    private static boolean isDualCopy(ConsumerRecord<String, byte[]> record) {
+        return EventHeaders.get(record.headers(), EventHeaders.DUAL_PUBLISH) != null;
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> withoutDualCopies(List<ConsumerRecord<String, byte[]>> records) {
+        for (ConsumerRecord<String, byte[]> record : records) {
+            if (isDualCopy(record)) {
+                return records.stream().filter(r -> !isDualCopy(r)).toList();
+            }
         }
+        return records;
     }
     
     /**
@@ -1,5 +1,9 @@
 package Kafka_Project.service;
 
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
@@ -7,22 +11,113 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import Kafka_Project.config.EventTopics;
+
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 
 @Service
 public class KafkaProducerService {
     
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducerService.class);
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    
+    // "string" round-trips every message through a String before sending, as the StringSerializer used to
+    @Value("${kafka.serialization.mode:bytes}")
+    private String serializationMode;
+    
+    // Record key: "session" (session_id, falling back to tracking_id), "tracking_id" or "none" (no key)
+    @Value("${kafka.producer.key-strategy:session}")
+    private String keyStrategy = "session";
     
-    public KafkaProducerService(KafkaTemplate<String, String> kafkaTemplate) {
+    // Topic layout to publish to: "legacy" (topic per event type), "consolidated" or "dual" (both)
+    @Value("${kafka.topics.producer-mode:legacy}")
+    private String topicMode = "legacy";
+    
+    public KafkaProducerService(KafkaTemplate<String, byte[]> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
     }
     
     public void sendMessage(@NonNull String message, @NonNull String topic) {
+        send(message.getBytes(StandardCharsets.UTF_8), topic, null, null);
+    }
+    
+    /**
+     * Send an already-encoded UTF-8 JSON message as is.
+     */
+    public void sendMessage(@NonNull byte[] message, @NonNull String topic) {
+        sendMessage(message, topic, null);
+    }
+    
+    /**
+     * Send an already-encoded UTF-8 JSON message with a record key. Records with the same key land
+     * on the same partition, so one consumer thread sees them in order. A null key lets the
+     * producer spread records over partitions.
+     */
+    public void sendMessage(@NonNull byte[] message, @NonNull String topic, String key) {
+        sendMessage(message, topic, key, null);
+    }
+    
+    /**
+     * Send an already-encoded UTF-8 JSON message with a record key and headers (see {@link EventHeaders}).
+     */
+    public void sendMessage(@NonNull byte[] message, @NonNull String topic, String key, Headers headers) {
+        if ("string".equals(serializationMode)) {
+            message = new String(message, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+        }
+        send(message, topic, key, headers);
+    }
+    
+    /**
+     * Publish an event to the topic(s) of its type according to kafka.topics.producer-mode.
+     * In dual mode the consolidated copy is marked with the dual_publish header so that consumers
+     * reading both layouts process the event once, from the legacy topic.
+     */
+    public void sendEvent(@NonNull byte[] message, @NonNull String eventType, String key, Headers headers) {
+        String legacyTopic = EventTopics.legacyTopic(eventType);
+        String consolidatedTopic = EventTopics.consolidatedTopic(eventType);
+        if (consolidatedTopic == null || "legacy".equals(topicMode)) {
+            sendMessage(message, legacyTopic, key, headers);
+        } else if ("dual".equals(topicMode)) {
+            // Headers become read-only once sent, so each record gets its own copy
+            sendMessage(message, legacyTopic, key, copy(headers));
+            Headers dualHeaders = copy(headers);
+            dualHeaders.add(EventHeaders.DUAL_PUBLISH, "1".getBytes(StandardCharsets.UTF_8));
+            sendMessage(message, consolidatedTopic, key, dualHeaders);
+        } else {
+            sendMessage(message, consolidatedTopic, key, headers);
+        }
+    }
+    
+    private static Headers copy(Headers headers) {
+        return headers == null ? new RecordHeaders() : new RecordHeaders(headers.toArray());
+    }
+    
+    /**
+     * Record key for an event according to kafka.producer.key-strategy.
+     *
+     * @return the key, or null when the strategy is "none" or the event has no usable id
+     */
+    public String partitionKey(String sessionId, String trackingId) {
+        return switch (keyStrategy) {
+            case "none" -> null;
+            case "tracking_id" -> usableId(trackingId);
+            default -> {
+                String session = usableId(sessionId);
+                yield session != null ? session : usableId(trackingId);
+            }
+        };
+    }
+    
+    private static String usableId(String id) {
+        // "anonymous" is the parser's placeholder; keying on it would funnel all such events to one partition
+        return id == null || id.isEmpty() || "anonymous".equals(id) ? null : id;
+    }
+    
+    private void send(byte[] message, String topic, String key, Headers headers) {
         try {
-            CompletableFuture<SendResult<String, String>> future = 
-                kafkaTemplate.send(topic, message);
+            CompletableFuture<SendResult<String, byte[]>> future = 
+                kafkaTemplate.send(new ProducerRecord<>(topic, null, key, message, headers));
             
             future.whenComplete((result, ex) -> {
                 if (ex == null) {
@@ -41,7 +136,7 @@ public class KafkaProducerService {
     
     public void sendMessageSync(@NonNull String message, @NonNull String topic) {
         try {
-            SendResult<String, String> result = kafkaTemplate.send(topic, message).get();
+            SendResult<String, byte[]> result = kafkaTemplate.send(topic, message.getBytes(StandardCharsets.UTF_8)).get();
             logger.info("Message sent successfully to topic: {} at offset: {}", 
                 topic, result.getRecordMetadata().offset());
         } catch (Exception e) {
@@ -0,0 +1,381 @@
+package Kafka_Project.service;
+
+import Kafka_Project.Redis.RedisService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding-window counters per tracking_id, updated from the consumer path so the live dashboard does
+ * not wait for the ClickHouse materialized views: events per second (over the last 10 seconds), page
+ * views and purchases over the last minute and sessions active within live.active-session-window-sec.
+ *
+ * Counts are bucketed by arrival time, not event time. Updates are lock-free: each bucket packs its
+ * second and its count into one long that is updated with compare-and-set. Counters of a tracking_id
+ * without events for the session window are dropped.
+ *
+ * The consumer instances share the partitions of a tracking_id, so each one only sees part of its
+ * traffic. With live.cluster.enabled every node also pushes its per-second counts to Redis every
+ * live.cluster.flush-interval-ms (live:&lt;metric&gt;:&lt;tracking_id&gt;:&lt;second&gt;, added up with
+ * INCRBY) and its session IDs to HyperLogLogs of 10-second buckets, in one pipelined round trip.
+ * Snapshots then read the totals of all nodes with one MGET and one PFCOUNT, whichever node serves
+ * the client; other nodes' counts lag by up to one flush interval. If Redis is unavailable, the
+ * snapshot falls back to this node's counts and unflushed counts are kept for the window length.
+ */
+@Service
+public class LiveMetricsAggregator implements EventObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveMetricsAggregator.class);
+
+    static final int RATE_WINDOW_SEC = 10;
+    static final int MINUTE_WINDOW_SEC = 60;
+    static final int SESSION_BUCKET_SEC = 10;
+
+    private static final String EVENTS = "events";
+    private static final String PAGE_VIEWS = "page_views";
+    private static final String PURCHASES = "purchases";
+
+    private final RedisService redisService;
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    // Counts and session IDs not yet pushed to Redis; values are only touched inside merge()/compute() or after remove()
+    private final Map<Bucket, Long> pendingCounts = new ConcurrentHashMap<>();
+    private final Map<Bucket, Set<String>> pendingSessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService expirer;
+
+    @Value("${live.active-session-window-sec:300}")
+    private long activeSessionWindowSec = 300;
+
+    @Value("${live.cluster.enabled:true}")
+    private boolean clusterEnabled = true;
+
+    @Value("${live.cluster.flush-interval-ms:1000}")
+    private long flushIntervalMs = 1000;
+
+    public LiveMetricsAggregator(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    @PostConstruct
+    void start() {
+        expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expirer.scheduleWithFixedDelay(() -> {
+            try {
+                expire(System.currentTimeMillis() / 1000);
+            } catch (Exception e) {
+                logger.error("✗ Live metrics expiry failed: {}", e.getMessage(), e);
+            }
+        }, 10, 10, TimeUnit.SECONDS);
+        if (clusterEnabled) {
+            expirer.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (expirer != null) {
+            expirer.shutdownNow();
+        }
+        if (clusterEnabled) {
+            flushSafely();
+        }
+    }
+
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        record(event, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Count one event envelope in the bucket of the given second.
+     */
+    public void record(JsonNode event, long nowSec) {
+        JsonNode data = event.path("data");
+        String trackingId = data.path("tracking_id").asText("");
+        if (trackingId.isEmpty()) {
+            return;
+        }
+        Counters tracked = counters.computeIfAbsent(trackingId, id -> new Counters(nowSec));
+        tracked.lastSeenSec = nowSec;
+
+        String eventType = event.path("event_type").asText("");
+        int count = EventObserver.eventCount(eventType, data);
+        tracked.events.add(nowSec, count);
+        countForCluster(EVENTS, trackingId, nowSec, count);
+        if ("page_view".equals(eventType)) {
+            tracked.pageViews.add(nowSec, 1);
+            countForCluster(PAGE_VIEWS, trackingId, nowSec, 1);
+        } else if ("purchase".equals(eventType)) {
+            tracked.purchases.add(nowSec, 1);
+            countForCluster(PURCHASES, trackingId, nowSec, 1);
+        }
+        String sessionId = data.path("session_id").asText("");
+        if (!sessionId.isEmpty()) {
+            tracked.sessions.put(sessionId, nowSec);
+            if (clusterEnabled) {
+                Bucket bucket = new Bucket("sessions", trackingId, nowSec - Math.floorMod(nowSec, SESSION_BUCKET_SEC));
+                pendingSessions.compute(bucket, (b, ids) -> {
+                    Set<String> set = ids == null ? new HashSet<>() : ids;
+                    set.add(sessionId);
+                    return set;
+                });
+            }
+        }
+    }
+
+    private void countForCluster(String metric, String trackingId, long sec, long count) {
+        if (clusterEnabled && count > 0) {
+            pendingCounts.merge(new Bucket(metric, trackingId, sec), count, Long::sum);
+        }
+    }
+
+    /**
+     * Current values for one tracking_id, over windows ending with the last complete second.
+     * Unknown tracking IDs read as zero.
+     */
+    public Map<String, Object> snapshot(String trackingId, long nowSec) {
+        if (clusterEnabled) {
+            try {
+                return clusterSnapshot(trackingId, nowSec);
+            } catch (Exception e) {
+                logger.debug("Live metrics unavailable from Redis, using this node's counts: {}", e.getMessage());
+            }
+        }
+        return localSnapshot(trackingId, nowSec);
+    }
+
+    private Map<String, Object> localSnapshot(String trackingId, long nowSec) {
+        Counters tracked = counters.get(trackingId);
+        long last = nowSec - 1;
+        Map<String, Object> values = new LinkedHashMap<>();
+        long recentEvents = tracked == null ? 0 : tracked.events.sum(last, RATE_WINDOW_SEC);
+        values.put("events_per_sec", recentEvents / (double) RATE_WINDOW_SEC);
+        values.put("active_sessions", tracked == null ? 0 : tracked.activeSessions(nowSec - activeSessionWindowSec));
+        values.put("page_views_per_min", tracked == null ? 0L : tracked.pageViews.sum(last, MINUTE_WINDOW_SEC));
+        values.put("purchases_per_min", tracked == null ? 0L : tracked.purchases.sum(last, MINUTE_WINDOW_SEC));
+        return values;
+    }
+
+    /**
+     * Totals of all nodes from Redis, plus what this node has not pushed yet.
+     */
+    private Map<String, Object> clusterSnapshot(String trackingId, long nowSec) {
+        long last = nowSec - 1;
+        List<Bucket> buckets = new ArrayList<>(RATE_WINDOW_SEC + 2 * MINUTE_WINDOW_SEC);
+        for (long sec = last - RATE_WINDOW_SEC + 1; sec <= last; sec++) {
+            buckets.add(new Bucket(EVENTS, trackingId, sec));
+        }
+        for (long sec = last - MINUTE_WINDOW_SEC + 1; sec <= last; sec++) {
+            buckets.add(new Bucket(PAGE_VIEWS, trackingId, sec));
+            buckets.add(new Bucket(PURCHASES, trackingId, sec));
+        }
+        List<String> keys = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            keys.add(bucket.redisKey());
+        }
+        List<Long> values = redisService.getCounters(keys);
+        Map<String, Long> sums = new HashMap<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            sums.merge(bucket.metric(), values.get(i) + pendingCounts.getOrDefault(bucket, 0L), Long::sum);
+        }
+
+        List<String> sessionKeys = new ArrayList<>();
+        long since = nowSec - activeSessionWindowSec;
+        for (long start = since - Math.floorMod(since, SESSION_BUCKET_SEC); start <= nowSec;
+                start += SESSION_BUCKET_SEC) {
+            sessionKeys.add(new Bucket("sessions", trackingId, start).redisKey());
+        }
+        long activeSessions = redisService.countHyperLogLogs(sessionKeys);
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("events_per_sec", sums.getOrDefault(EVENTS, 0L) / (double) RATE_WINDOW_SEC);
+        snapshot.put("active_sessions", (int) activeSessions);
+        snapshot.put("page_views_per_min", sums.getOrDefault(PAGE_VIEWS, 0L));
+        snapshot.put("purchases_per_min", sums.getOrDefault(PURCHASES, 0L));
+        return snapshot;
+    }
+
+    /**
+     * Push the counts and session IDs collected since the last flush to Redis.
+     */
+    public void flush(long nowSec) {
+        Map<Bucket, Long> counts = new HashMap<>();
+        for (Bucket bucket : pendingCounts.keySet()) {
+            Long count = pendingCounts.remove(bucket);
+            if (count != null) {
+                counts.put(bucket, count);
+            }
+        }
+        Map<Bucket, Set<String>> sessions = new HashMap<>();
+        for (Bucket bucket : pendingSessions.keySet()) {
+            Set<String> ids = pendingSessions.remove(bucket);
+            if (ids != null) {
+                sessions.put(bucket, ids);
+            }
+        }
+        if (counts.isEmpty() && sessions.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, Long> deltas = new HashMap<>();
+            counts.forEach((bucket, count) -> deltas.put(bucket.redisKey(), count));
+            redisService.incrementCounters(deltas, 2 * MINUTE_WINDOW_SEC);
+            Map<String, Set<String>> ids = new HashMap<>();
+            Map<String, Long> expiry = new HashMap<>();
+            long sessionTtl = activeSessionWindowSec + 2 * SESSION_BUCKET_SEC;
+            sessions.forEach((bucket, set) -> {
+                ids.put(bucket.redisKey(), set);
+                expiry.put(bucket.redisKey(), sessionTtl);
+            });
+            redisService.addToHyperLogLogs(ids, expiry);
+        } catch (RuntimeException e) {
+            // Keep what still falls inside a window for the next flush
+            counts.forEach((bucket, count) -> {
+                if (bucket.sec() > nowSec - MINUTE_WINDOW_SEC) {
+                    pendingCounts.merge(bucket, count, Long::sum);
+                }
+            });
+            sessions.forEach((bucket, set) -> {
+                if (bucket.sec() > nowSec - activeSessionWindowSec) {
+                    pendingSessions.compute(bucket, (b, ids) -> {
+                        if (ids == null) {
+                            return set;
+                        }
+                        ids.addAll(set);
+                        return ids;
+                    });
+                }
+            });
+            throw e;
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush(System.currentTimeMillis() / 1000);
+        } catch (Exception e) {
+            logger.warn("✗ Live metrics flush to Redis failed, retrying on the next one: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Forget sessions outside the active window, and tracking IDs with no events in it.
+     */
+    public void expire(long nowSec) {
+        long cutoff = nowSec - activeSessionWindowSec;
+        counters.values().removeIf(tracked -> tracked.lastSeenSec < cutoff);
+        for (Counters tracked : counters.values()) {
+            tracked.sessions.values().removeIf(seen -> seen < cutoff);
+        }
+    }
+
+    public int trackedIds() {
+        return counters.size();
+    }
+
+    /**
+     * One per-second counter, or a 10-second session bucket, of one tracking_id in Redis.
+     */
+    private record Bucket(String metric, String trackingId, long sec) {
+
+        String redisKey() {
+            return "live:" + metric + ":" + trackingId + ":" + sec;
+        }
+    }
+
+    private static final class Counters {
+        final RollingCounter events = new RollingCounter(MINUTE_WINDOW_SEC + 1);
+        final RollingCounter pageViews = new RollingCounter(MINUTE_WINDOW_SEC + 1);
+        final RollingCounter purchases = new RollingCounter(MINUTE_WINDOW_SEC + 1);
+        // session_id -> last second an event was seen
+        final Map<String, Long> sessions = new ConcurrentHashMap<>();
+        volatile long lastSeenSec;
+
+        Counters(long createdSec) {
+            this.lastSeenSec = createdSec;
+        }
+
+        int activeSessions(long sinceSec) {
+            int active = 0;
+            for (long seen : sessions.values()) {
+                if (seen >= sinceSec) {
+                    active++;
+                }
+            }
+            return active;
+        }
+    }
+
+    /**
+     * Ring of one-second buckets. Each slot holds (second &lt;&lt; 32 | count), so a writer that finds
+     * the slot still stamped with an older second resets it with the same compare-and-set that
+     * adds its count, and no increment is lost to a concurrent reset.
+     */
+    static final class RollingCounter {
+        private final AtomicLongArray slots;
+
+        RollingCounter(int seconds) {
+            this.slots = new AtomicLongArray(seconds);
+        }
+
+        void add(long sec, long delta) {
+            int index = (int) Math.floorMod(sec, (long) slots.length());
+            long stamp = sec & 0xFFFFFFFFL;
+            while (true) {
+                long current = slots.get(index);
+                long currentStamp = current >>> 32;
+                long next;
+                if (currentStamp == stamp) {
+                    next = current + delta;
+                } else if (currentStamp < stamp) {
+                    next = (stamp << 32) | (delta & 0xFFFFFFFFL);
+                } else {
+                    // The slot already moved on to a newer second
+                    return;
+                }
+                if (slots.compareAndSet(index, current, next)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Total of the window seconds ending with lastSec (inclusive).
+         */
+        long sum(long lastSec, int window) {
+            long total = 0;
+            for (long sec = lastSec - window + 1; sec <= lastSec; sec++) {
+                long slot = slots.get((int) Math.floorMod(sec, (long) slots.length()));
+                if (slot >>> 32 == (sec & 0xFFFFFFFFL)) {
+                    total += slot & 0xFFFFFFFFL;
+                }
+            }
+            return total;
+        }
+    }
+}
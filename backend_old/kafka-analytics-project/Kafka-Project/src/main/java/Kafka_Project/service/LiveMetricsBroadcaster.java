@@ -0,0 +1,196 @@
+package Kafka_Project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the live counters of {@link LiveMetricsAggregator} to Server-Sent Events clients.
+ *
+ * Clients of the same tracking_id share one channel: once per second the channel's snapshot is
+ * computed and serialized once, and only the values that changed since the previous push are sent
+ * to every client as a "delta" event. A new client first gets the channel's last snapshot as a
+ * "snapshot" event, so applying the deltas that follow keeps it in step. Idle connections get a
+ * comment every 15 seconds so that proxies do not close them.
+ */
+@Service
+public class LiveMetricsBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveMetricsBroadcaster.class);
+
+    private static final int HEARTBEAT_TICKS = 15;
+
+    private final LiveMetricsAggregator aggregator;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+    private long ticks;
+
+    @Value("${live.sse.max-clients:1000}")
+    private int maxClients = 1000;
+
+    @Value("${live.sse.timeout-ms:1800000}")
+    private long timeoutMs = 1_800_000;
+
+    public LiveMetricsBroadcaster(LiveMetricsAggregator aggregator, MeterRegistry meterRegistry) {
+        this.aggregator = aggregator;
+        Gauge.builder("live.sse.clients", this, LiveMetricsBroadcaster::clients)
+            .description("Connected live metrics clients")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-metrics-broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick(System.currentTimeMillis() / 1000);
+            } catch (Exception e) {
+                logger.error("✗ Live metrics push failed: {}", e.getMessage(), e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        channels.values().forEach(channel -> channel.emitters.forEach(SseEmitter::complete));
+        channels.clear();
+    }
+
+    /**
+     * Open a stream for one tracking_id.
+     *
+     * @throws IllegalStateException if live.sse.max-clients streams are already open
+     */
+    public SseEmitter subscribe(String trackingId) {
+        if (clients() >= maxClients) {
+            throw new IllegalStateException("Too many live metrics clients (" + maxClients + ")");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Map<String, Object> initial = channels.containsKey(trackingId)
+            ? null : aggregator.snapshot(trackingId, System.currentTimeMillis() / 1000);
+        // Added inside compute, so tick() cannot drop the channel between lookup and add
+        Channel channel = channels.compute(trackingId, (id, existing) -> {
+            Channel joined = existing != null ? existing
+                : new Channel(initial != null ? initial : aggregator.snapshot(id, System.currentTimeMillis() / 1000));
+            joined.emitters.add(emitter);
+            return joined;
+        });
+        emitter.onCompletion(() -> channel.emitters.remove(emitter));
+        emitter.onTimeout(() -> channel.emitters.remove(emitter));
+        emitter.onError(e -> channel.emitters.remove(emitter));
+        try {
+            emitter.send(SseEmitter.event().name("snapshot").data(channel.last, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            channel.emitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * Compute each subscribed tracking_id once and push what changed to its clients.
+     */
+    void tick(long nowSec) {
+        boolean heartbeat = ++ticks % HEARTBEAT_TICKS == 0;
+        for (Map.Entry<String, Channel> entry : channels.entrySet()) {
+            Channel channel = entry.getValue();
+            if (channel.emitters.isEmpty()
+                    && channels.computeIfPresent(entry.getKey(), (id, c) -> c.emitters.isEmpty() ? null : c) == null) {
+                continue;
+            }
+            Map<String, Object> snapshot = aggregator.snapshot(entry.getKey(), nowSec);
+            Map<String, Object> delta = delta(channel.last, snapshot);
+            channel.last = snapshot;
+            if (!delta.isEmpty()) {
+                delta.put("ts", nowSec);
+                send(channel, SseEmitter.event().name("delta").data(encode(delta), MediaType.APPLICATION_JSON));
+            } else if (heartbeat) {
+                send(channel, SseEmitter.event().comment("keep-alive"));
+            }
+        }
+    }
+
+    public int clients() {
+        int clients = 0;
+        for (Channel channel : channels.values()) {
+            clients += channel.emitters.size();
+        }
+        return clients;
+    }
+
+    /**
+     * Values of current that differ from previous.
+     */
+    static Map<String, Object> delta(Map<String, Object> previous, Map<String, Object> current) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            if (!Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                delta.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return delta;
+    }
+
+    private void send(Channel channel, SseEmitter.SseEventBuilder event) {
+        Set<ResponseBodyEmitter.DataWithMediaType> data = event.build();
+        for (SseEmitter emitter : channel.emitters) {
+            try {
+                emitter.send(data);
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; the completion callback may not have run yet
+                channel.emitters.remove(emitter);
+                logger.debug("Dropped live metrics client: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String encode(Map<String, Object> values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot encode live metrics", e);
+        }
+    }
+
+    /**
+     * Clients of one tracking_id and the snapshot they were last sent.
+     */
+    private static final class Channel {
+        final Set<SseEmitter> emitters = new CopyOnWriteArraySet<>();
+        volatile Map<String, Object> last;
+
+        Channel(Map<String, Object> last) {
+            this.last = last;
+        }
+    }
+}
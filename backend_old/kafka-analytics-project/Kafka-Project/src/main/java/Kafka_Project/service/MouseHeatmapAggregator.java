@@ -0,0 +1,178 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates mouse_move events into heatmap cells instead of one mouse_events row per coordinate.
+ *
+ * x and y are quantized to cells of heatmap.cell-px pixels, per (tracking_id, page_url, viewport
+ * bucket, minute). The viewport bucket is the viewport width rounded down to heatmap.viewport-bucket-px
+ * (0 when the event does not carry one), so layouts of different widths do not share cells. Cell
+ * counts are written to mouse_heatmap every heatmap.flush-interval-ms, or earlier once
+ * heatmap.max-cells cells are pending. mouse_heatmap is a SummingMergeTree, so partial counts of the
+ * same cell from several flushes or consumers add up.
+ *
+ * Counts are taken once the poll's rows were written, like the other observers. Pending counts are
+ * flushed on shutdown; those of a crashed instance are lost (at most one flush interval).
+ */
+@Service
+public class MouseHeatmapAggregator implements EventObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(MouseHeatmapAggregator.class);
+
+    private final ClickHouseBatchWriter batchWriter;
+    private final Map<Cell, Long> cells = new ConcurrentHashMap<>();
+    private final Counter aggregated;
+    private final Counter flushedCells;
+    private ScheduledExecutorService flusher;
+
+    @Value("${heatmap.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${heatmap.cell-px:20}")
+    private int cellPx = 20;
+
+    @Value("${heatmap.viewport-bucket-px:320}")
+    private int viewportBucketPx = 320;
+
+    @Value("${heatmap.flush-interval-ms:10000}")
+    private long flushIntervalMs = 10_000;
+
+    @Value("${heatmap.max-cells:200000}")
+    private int maxCells = 200_000;
+
+    public MouseHeatmapAggregator(ClickHouseBatchWriter batchWriter, MeterRegistry meterRegistry) {
+        this.batchWriter = batchWriter;
+        this.aggregated = Counter.builder("heatmap.moves")
+            .description("Mouse moves aggregated into heatmap cells")
+            .register(meterRegistry);
+        this.flushedCells = Counter.builder("heatmap.cells.flushed")
+            .description("Heatmap cell rows written to mouse_heatmap")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Mouse heatmap aggregation disabled");
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heatmap-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Mouse heatmap aggregation started (cell-px={}, viewport-bucket-px={}, flush-interval-ms={})",
+            cellPx, viewportBucketPx, flushIntervalMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushSafely();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        if (!enabled || !"mouse_move".equals(event.path("event_type").asText(""))) {
+            return;
+        }
+        JsonNode data = event.path("data");
+        JsonNode x = data.path("x");
+        JsonNode y = data.path("y");
+        if (!x.isNumber() || !y.isNumber()) {
+            return;
+        }
+        int viewportWidth = data.path("viewport_width").asInt(data.path("viewportWidth").asInt(0));
+        Cell cell = new Cell(
+            data.path("tracking_id").asText(""),
+            data.path("page_url").asText(data.path("url").asText("")),
+            Math.min(65535, Math.max(0, viewportWidth) / viewportBucketPx * viewportBucketPx),
+            timestamp.truncatedTo(ChronoUnit.MINUTES).toEpochSecond(ZoneOffset.UTC),
+            quantize(x.asInt()),
+            quantize(y.asInt()));
+        cells.merge(cell, 1L, Long::sum);
+        aggregated.increment();
+        if (cells.size() >= maxCells) {
+            flushSafely();
+        }
+    }
+
+    /**
+     * Hand the pending cell counts to the batch writer.
+     *
+     * @return the number of cells written
+     */
+    public synchronized int flush() {
+        int flushed = 0;
+        for (Cell cell : List.copyOf(cells.keySet())) {
+            Long count = cells.remove(cell);
+            if (count == null) {
+                continue;
+            }
+            batchWriter.add(ClickHouseTable.MOUSE_HEATMAP,
+                LocalDateTime.ofEpochSecond(cell.minute(), 0, ZoneOffset.UTC),
+                cell.trackingId(),
+                cell.pageUrl(),
+                cell.viewportBucket(),
+                cellPx,
+                cell.x(),
+                cell.y(),
+                count);
+            flushed++;
+        }
+        if (flushed > 0) {
+            flushedCells.increment(flushed);
+            logger.debug("✓ Flushed {} heatmap cells", flushed);
+        }
+        return flushed;
+    }
+
+    public int pendingCells() {
+        return cells.size();
+    }
+
+    private int quantize(int coordinate) {
+        return Math.min(65535, Math.max(0, coordinate) / cellPx);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("✗ Heatmap flush failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private record Cell(String trackingId, String pageUrl, int viewportBucket, long minute, int x, int y) {
+    }
+}
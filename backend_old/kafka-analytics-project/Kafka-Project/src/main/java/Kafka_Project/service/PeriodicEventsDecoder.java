@@ -0,0 +1,145 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the item arrays of a periodic_events payload into rows, grouped per table, in one pass.
+ *
+ * linkClicks and mouseClicks go to interaction_events, videoEvents to video_events, scrollEvents to
+ * scroll_events and formEvents to form_events. Every row carries the envelope timestamp and the
+ * session, user, tracking_id and page of the payload, so those are read once per payload rather than
+ * once per item. The consumer hands each list to its sink with a single addAll, so a payload becomes
+ * at most four batched appends however many items it carries.
+ */
+public final class PeriodicEventsDecoder {
+
+    private PeriodicEventsDecoder() {
+    }
+
+    /**
+     * @param scrollRows whether scrollEvents become scroll_events rows (false when ScrollDepthReducer
+     *                   collapses them)
+     * @return the rows per table, tables without items left out
+     */
+    public static Map<ClickHouseTable, List<Object[]>> decode(JsonNode data, LocalDateTime timestamp, String url,
+                                                              boolean scrollRows) {
+        String sessionId = data.path("session_id").asText("");
+        String userId = data.path("user_id").asText("");
+        String trackingId = data.path("tracking_id").asText("");
+        JsonNode linkClicks = array(data, "linkClicks");
+        JsonNode mouseClicks = array(data, "mouseClicks");
+        JsonNode videoEvents = array(data, "videoEvents");
+        JsonNode scrollEvents = scrollRows ? array(data, "scrollEvents") : null;
+        JsonNode formEvents = array(data, "formEvents");
+
+        Map<ClickHouseTable, List<Object[]>> rows = new EnumMap<>(ClickHouseTable.class);
+        int clicks = size(linkClicks) + size(mouseClicks);
+        if (clicks > 0) {
+            List<Object[]> interactions = new ArrayList<>(clicks);
+            appendClicks(interactions, linkClicks, "link_click", timestamp, sessionId, userId, trackingId, url);
+            appendClicks(interactions, mouseClicks, "mouse_click", timestamp, sessionId, userId, trackingId, url);
+            rows.put(ClickHouseTable.INTERACTION_EVENTS, interactions);
+        }
+
+        if (size(videoEvents) > 0) {
+            List<Object[]> videos = new ArrayList<>(videoEvents.size());
+            for (JsonNode video : videoEvents) {
+                videos.add(new Object[] {
+                    timestamp,
+                    sessionId,
+                    userId,
+                    trackingId,
+                    url,
+                    video.path("type").asText(video.path("event_type").asText("video_play")),
+                    video.path("video_src").asText(video.path("src").asText("unknown")),
+                    video.has("duration") ? (float) video.get("duration").asDouble() : null,
+                    video.has("currentTime") ? (float) video.get("currentTime").asDouble() : null
+                });
+            }
+            rows.put(ClickHouseTable.VIDEO_EVENTS, videos);
+        }
+
+        if (size(scrollEvents) > 0) {
+            List<Object[]> scrolls = new ArrayList<>(scrollEvents.size());
+            for (JsonNode scroll : scrollEvents) {
+                scrolls.add(new Object[] {
+                    timestamp,
+                    sessionId,
+                    userId,
+                    trackingId,
+                    url,
+                    "scroll_depth",
+                    integer(scroll, "depth", "depth_percent"),
+                    integer(scroll, "scrollTop", "scroll_top"),
+                    integer(scroll, "scrollPercent", "scroll_percent")
+                });
+            }
+            rows.put(ClickHouseTable.SCROLL_EVENTS, scrolls);
+        }
+
+        if (size(formEvents) > 0) {
+            List<Object[]> forms = new ArrayList<>(formEvents.size());
+            for (JsonNode form : formEvents) {
+                forms.add(new Object[] {
+                    timestamp,
+                    sessionId,
+                    userId,
+                    trackingId,
+                    url,
+                    form.path("type").asText(form.path("event_type").asText("form_input")),
+                    form.path("form_id").asText(form.path("formId").asText("")),
+                    "default_form",
+                    null, null, null, null, null, null, null, null
+                });
+            }
+            rows.put(ClickHouseTable.FORM_EVENTS, forms);
+        }
+        return rows;
+    }
+
+    private static void appendClicks(List<Object[]> rows, JsonNode clicks, String eventType, LocalDateTime timestamp,
+                                     String sessionId, String userId, String trackingId, String url) {
+        if (clicks == null) {
+            return;
+        }
+        for (JsonNode click : clicks) {
+            rows.add(new Object[] {
+                timestamp,
+                sessionId,
+                userId,
+                trackingId,
+                eventType,
+                click.path("url").asText(url),
+                click.has("x") ? click.get("x").asInt() : null,
+                click.has("y") ? click.get("y").asInt() : null,
+                click.path("element").asText(""),
+                null, null, null, null, null, null, null, null, null
+            });
+        }
+    }
+
+    private static JsonNode array(JsonNode data, String field) {
+        JsonNode node = data.get(field);
+        return node != null && node.isArray() ? node : null;
+    }
+
+    private static int size(JsonNode array) {
+        return array == null ? 0 : array.size();
+    }
+
+    // The tracker sends scroll fields in snake_case, older payloads in camelCase
+    private static Integer integer(JsonNode node, String field, String snakeField) {
+        if (node.has(field)) {
+            return node.get(field).asInt();
+        }
+        return node.has(snakeField) ? node.get(snakeField).asInt() : null;
+    }
+}
@@ -0,0 +1,195 @@
+package Kafka_Project.service;
+
+import Kafka_Project.config.EventTopics;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional archive of every raw event envelope in batch_events, so events can be replayed from
+ * ClickHouse after a consumer or schema bug instead of only within Kafka's 7-day retention.
+ *
+ * A separate consumer group (analytics-archive) reads the topics the producers write to. The
+ * records of a poll are grouped per (tracking_id, session_id, minute) and each group becomes one row:
+ * event_data holds the record values as written by the producer, one array element each (raw
+ * passthrough keeps the client's JSON as is, newlines included, so they cannot be joined on a
+ * separator), and event_count the number of envelopes (a multi-event record counts its events). Grouping is read from the record
+ * headers, with the record timestamp as fallback for the minute; only the first record of a group is
+ * parsed, for its user_id. A row is cut at archive.max-blob-bytes or 65535 envelopes.
+ *
+ * event_data is compressed by ClickHouse (ZSTD column codec); the envelopes of one session and minute
+ * are similar enough that a blob compresses far better than single events would. Replay with e.g.
+ * SELECT arrayJoin(event_data) FROM batch_events WHERE timestamp >= ... ORDER BY tracking_id,
+ * session_id, timestamp.
+ *
+ * Polls are written in replay-stable blocks with a deduplication token (see DedupBlockPlanner), so a
+ * redelivered block is not archived twice. Records dropped by kafka.consumer.filter.drop-event-types
+ * never reach the archive either. Enabled with archive.enabled=true.
+ */
+@Service
+public class RawEventArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawEventArchiver.class);
+
+    private static final int MAX_EVENT_COUNT = 65535;
+
+    private final ClickHouseBatchWriter batchWriter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DedupBlockPlanner blockPlanner = new DedupBlockPlanner(10);
+    private final Counter archivedEvents;
+
+    @Value("${kafka.topics.producer-mode:legacy}")
+    private String producerMode = "legacy";
+
+    @Value("${archive.max-blob-bytes:1048576}")
+    private int maxBlobBytes = 1_048_576;
+
+    public RawEventArchiver(ClickHouseBatchWriter batchWriter, MeterRegistry meterRegistry) {
+        this.batchWriter = batchWriter;
+        this.archivedEvents = Counter.builder("archive.events")
+            .description("Event envelopes archived in batch_events")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Topics carrying every event once: the legacy topics unless the producers write the consolidated
+     * ones only (in dual mode the consolidated copies are marked and skipped).
+     */
+    public String[] topics() {
+        List<String> topics = "consolidated".equals(producerMode)
+            ? EventTopics.CONSOLIDATED_TOPICS : EventTopics.LEGACY_TOPICS;
+        return topics.toArray(String[]::new);
+    }
+
+    @KafkaListener(
+        topics = "#{__listener.topics()}",
+        groupId = "analytics-archive",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = "${archive.enabled:false}"
+    )
+    public void archive(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment,
+                        Consumer<?, ?> consumer) {
+        if (records.isEmpty()) {
+            acknowledgment.acknowledge();
+            return;
+        }
+        List<DedupBlockPlanner.Block> blocks = blockPlanner.plan(records, consumer);
+        for (DedupBlockPlanner.Block block : blocks) {
+            ClickHouseRowBatch batch = new ClickHouseRowBatch(block.dedupToken());
+            int events = addBlobs(block.records(), batch);
+            // A failure propagates: the container seeks back and redelivers the poll
+            batchWriter.write(batch);
+            archivedEvents.increment(events);
+            logger.debug("✓ Archived {} events of {} in {} rows", events, block.dedupToken(), batch.getRowCount());
+        }
+        blockPlanner.complete(blocks, consumer);
+    }
+
+    /**
+     * Group records into batch_events rows, in record order.
+     *
+     * @return the number of envelopes archived
+     */
+    public int addBlobs(List<ConsumerRecord<String, byte[]>> records, ClickHouseRowSink sink) {
+        Map<BlobKey, Blob> open = new LinkedHashMap<>();
+        int events = 0;
+        for (ConsumerRecord<String, byte[]> record : records) {
+            if (record.value() == null || EventHeaders.get(record.headers(), EventHeaders.DUAL_PUBLISH) != null) {
+                continue;
+            }
+            BlobKey key = keyOf(record);
+            int count = (int) Math.max(1, EventHeaders.getLong(record.headers(), EventHeaders.EVENT_COUNT, 1));
+            Blob blob = open.get(key);
+            if (blob != null && (blob.count + count > MAX_EVENT_COUNT
+                    || blob.bytes + record.value().length > maxBlobBytes)) {
+                emit(key, open.remove(key), sink);
+                blob = null;
+            }
+            if (blob == null) {
+                blob = new Blob(userIdOf(record));
+                open.put(key, blob);
+            }
+            blob.envelopes.add(new String(record.value(), StandardCharsets.UTF_8));
+            blob.bytes += record.value().length;
+            blob.count += count;
+            events += count;
+        }
+        open.forEach((key, blob) -> emit(key, blob, sink));
+        return events;
+    }
+
+    private static void emit(BlobKey key, Blob blob, ClickHouseRowSink sink) {
+        sink.add(ClickHouseTable.BATCH_EVENTS,
+            LocalDateTime.ofEpochSecond(key.minute() * 60, 0, ZoneOffset.UTC),
+            key.sessionId(),
+            blob.userId,
+            key.trackingId(),
+            blob.envelopes,
+            Math.min(MAX_EVENT_COUNT, blob.count));
+    }
+
+    private BlobKey keyOf(ConsumerRecord<String, byte[]> record) {
+        long ingestMs = EventHeaders.ingestTimestamp(record.headers());
+        long minute = Math.floorDiv(ingestMs >= 0 ? ingestMs : record.timestamp(), 60_000L);
+        String trackingId = EventHeaders.get(record.headers(), EventHeaders.TRACKING_ID);
+        String sessionId = EventHeaders.get(record.headers(), EventHeaders.SESSION_ID);
+        if (trackingId == null) {
+            // Records from before the routing headers: read the ids from the envelope
+            JsonNode data = envelope(record).path("data");
+            trackingId = data.path("tracking_id").asText("");
+            sessionId = data.path("session_id").asText("");
+        }
+        return new BlobKey(trackingId, sessionId == null ? "" : sessionId, minute);
+    }
+
+    private String userIdOf(ConsumerRecord<String, byte[]> record) {
+        JsonNode json = envelope(record);
+        JsonNode first = json.has("events") && !json.has("event_type") ? json.path("events").path(0) : json;
+        return first.path("data").path("user_id").asText("");
+    }
+
+    private JsonNode envelope(ConsumerRecord<String, byte[]> record) {
+        try {
+            return objectMapper.readTree(record.value());
+        } catch (Exception e) {
+            // Archived as is, the blob keeps the raw bytes
+            return objectMapper.missingNode();
+        }
+    }
+
+    private record BlobKey(String trackingId, String sessionId, long minute) {
+    }
+
+    // Record values of one row
+    private static final class Blob {
+        final String userId;
+        final List<String> envelopes = new ArrayList<>();
+        int bytes;
+        int count;
+
+        Blob(String userId) {
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams batches to the ClickHouse HTTP interface as INSERT ... FORMAT RowBinary.
+ *
+ * Rows are encoded straight into a chunked request body, so a batch is never rendered to
+ * text or held in memory as a whole. The HTTP endpoint and database are taken from
+ * spring.datasource.url unless clickhouse.http.url is set.
+ */
+@Component
+public class RowBinaryClickHouseSink implements ClickHouseSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowBinaryClickHouseSink.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String endpoint;
+    private final String database;
+    private final String username;
+    private final String password;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public RowBinaryClickHouseSink(
+            @Value("${spring.datasource.url}") String jdbcUrl,
+            @Value("${clickhouse.http.url:}") String httpUrl,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password,
+            @Value("${clickhouse.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+            @Value("${clickhouse.http.read-timeout-ms:30000}") int readTimeoutMs) {
+        URI uri = URI.create(httpUrl == null || httpUrl.isEmpty() ? toHttpUrl(jdbcUrl) : httpUrl);
+        String path = uri.getPath() == null ? "" : uri.getPath().replaceAll("^/+|/+$", "");
+        this.endpoint = uri.getScheme() + "://" + uri.getHost() + ":" + (uri.getPort() > 0 ? uri.getPort() : 8123) + "/";
+        this.database = path.isEmpty() ? "default" : path;
+        this.username = username;
+        this.password = password;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * jdbc:clickhouse://host:8123/db?opts  ->  http://host:8123/db
+     */
+    static String toHttpUrl(String jdbcUrl) {
+        String url = jdbcUrl.replaceFirst("^jdbc:(clickhouse|ch):", "");
+        int query = url.indexOf('?');
+        boolean ssl = query >= 0 && url.substring(query).contains("ssl=true");
+        if (query >= 0) {
+            url = url.substring(0, query);
+        }
+        if (url.startsWith("//")) {
+            url = (ssl ? "https:" : "http:") + url;
+        }
+        return url;
+    }
+
+    @Override
+    public String getFormat() {
+        return "rowbinary";
+    }
+
+    @Override
+    public void insert(ClickHouseTable table, List<Object[]> rows) {
+        insert(table, rows, null);
+    }
+
+    /**
+     * The whole body is one INSERT, so the token covers all rows.
+     */
+    @Override
+    public void insert(ClickHouseTable table, List<Object[]> rows, String dedupToken) {
+        String query = "INSERT INTO " + table.getTableName() + " (" + table.getColumnList() + ") FORMAT RowBinary";
+        HttpURLConnection connection = null;
+        try {
+            String settings = dedupToken == null ? "" : "&insert_deduplication_token=" + encode(dedupToken);
+            URI uri = URI.create(endpoint + "?database=" + encode(database) + settings + "&query=" + encode(query));
+            connection = (HttpURLConnection) uri.toURL().openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setRequestProperty("X-ClickHouse-User", username);
+            if (password != null && !password.isEmpty()) {
+                connection.setRequestProperty("X-ClickHouse-Key", password);
+            }
+
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream(), CHUNK_SIZE);
+            try {
+                RowBinaryEncoder encoder = new RowBinaryEncoder(out);
+                for (Object[] row : rows) {
+                    encoder.writeRow(table, row);
+                }
+            } catch (IllegalArgumentException e) {
+                // Drop the connection without ending the body, so ClickHouse inserts none of the rows sent so far
+                connection.disconnect();
+                throw e;
+            }
+            out.close();
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                String error = readFully(connection.getErrorStream());
+                throw new IllegalStateException("RowBinary insert into " + table.getTableName() +
+                    " failed with HTTP " + status + ": " + error.trim());
+            }
+            // Drain the response so the keep-alive connection can be reused
+            readFully(connection.getInputStream());
+            logger.debug("✓ Streamed {} rows into {} as RowBinary", rows.size(), table.getTableName());
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            throw new UncheckedIOException("RowBinary insert into " + table.getTableName() + " failed", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseColumnType;
+import Kafka_Project.types.ClickHouseTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes rows in ClickHouse RowBinary format.
+ *
+ * Strings are a LEB128 length followed by UTF-8 bytes, Array(String) a LEB128 element count followed
+ * by the strings (a List or String[] value), integers and floats are little-endian,
+ * DateTime is UInt32 epoch seconds (LocalDateTime values are taken as UTC, matching how the
+ * consumers build them), and Nullable(T) is a 0/1 null marker followed by T when present.
+ * A null in a non-nullable column is written as the type's default, like
+ * input_format_null_as_default does for the JDBC path. An unsigned value out of its type's range
+ * throws IllegalArgumentException instead of wrapping around, so the row fails like it does there.
+ */
+public final class RowBinaryEncoder {
+
+    private final OutputStream out;
+    private final byte[] scratch = new byte[8];
+
+    public RowBinaryEncoder(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeRow(ClickHouseTable table, Object[] row) throws IOException {
+        List<ClickHouseColumnType> types = table.getColumnTypes();
+        for (int i = 0; i < row.length; i++) {
+            try {
+                writeValue(types.get(i), row[i]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(table.getTableName() + "." + table.getColumns().get(i) + ": " +
+                    e.getMessage(), e);
+            }
+        }
+    }
+
+    private void writeValue(ClickHouseColumnType type, Object value) throws IOException {
+        if (type.nullable()) {
+            if (value == null) {
+                out.write(1);
+                return;
+            }
+            out.write(0);
+        }
+        switch (type.baseType()) {
+            case STRING -> writeString(value == null ? "" : value.toString());
+            case STRING_ARRAY -> writeStringArray(value);
+            case UINT8 -> out.write((int) unsigned(toLong(value), 0xFFL, "UInt8"));
+            case UINT16 -> writeLittleEndian(unsigned(toLong(value), 0xFFFFL, "UInt16"), 2);
+            case UINT32 -> writeLittleEndian(unsigned(toLong(value), 0xFFFFFFFFL, "UInt32"), 4);
+            case FLOAT32 -> writeLittleEndian(Float.floatToIntBits((float) toDouble(value)), 4);
+            case FLOAT64 -> writeLittleEndian(Double.doubleToLongBits(toDouble(value)), 8);
+            case DATETIME -> writeLittleEndian(unsigned(toEpochSeconds(value), 0xFFFFFFFFL, "DateTime"), 4);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeStringArray(Object value) throws IOException {
+        List<?> elements = value == null ? List.of()
+            : value instanceof Object[] array ? Arrays.asList(array) : (List<?>) value;
+        writeVarint(elements.size());
+        for (Object element : elements) {
+            writeString(element == null ? "" : element.toString());
+        }
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private void writeLittleEndian(long value, int width) throws IOException {
+        for (int i = 0; i < width; i++) {
+            scratch[i] = (byte) (value >>> (8 * i));
+        }
+        out.write(scratch, 0, width);
+    }
+
+    private static long unsigned(long value, long max, String type) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException(value + " is out of range for " + type);
+        }
+        return value;
+    }
+
+    private static long toLong(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Boolean b) {
+            return b ? 1 : 0;
+        }
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    private static double toDouble(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number n) {
+            return n.doubleValue();
+        }
+        return Double.parseDouble(value.toString());
+    }
+
+    private static long toEpochSeconds(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime.toEpochSecond(ZoneOffset.UTC);
+        }
+        if (value instanceof Instant instant) {
+            return instant.getEpochSecond();
+        }
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return LocalDateTime.parse(value.toString().replace(' ', 'T')).toEpochSecond(ZoneOffset.UTC);
+    }
+}
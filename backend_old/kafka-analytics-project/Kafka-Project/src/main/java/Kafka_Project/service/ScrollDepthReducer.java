@@ -0,0 +1,313 @@
+package Kafka_Project.service;
+
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collapses the scroll samples of a page view into one scroll_events row, since dashboards only use
+ * the deepest point per session and page.
+ *
+ * Samples (scroll_depth events and the scrollEvents of periodic_events) are reduced per
+ * (session_id, page_url) to the maximum depth_percent, scroll_percent and scroll_top. The row is
+ * written with event_type scroll_depth and the time of the last sample when the page_unload of that
+ * page arrives, or after scroll.idle-timeout-ms without samples. At most scroll.max-open pages are
+ * held; beyond that the least recently scrolled page is written early.
+ *
+ * The collapse ratio (samples per row written) is published as scroll.collapse.ratio. Open pages are
+ * written on shutdown; those of a crashed instance are lost. With scroll.collapse.enabled=false every
+ * sample is stored as before.
+ */
+@Service
+public class ScrollDepthReducer implements EventObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScrollDepthReducer.class);
+
+    private static final int SHARDS = 16;
+
+    private final ClickHouseBatchWriter batchWriter;
+    @SuppressWarnings("unchecked")
+    private final LinkedHashMap<PageKey, PageScroll>[] shards = new LinkedHashMap[SHARDS];
+    private final Counter samples;
+    private final Counter rows;
+    private ScheduledExecutorService sweeper;
+
+    @Value("${scroll.collapse.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${scroll.idle-timeout-ms:300000}")
+    private long idleTimeoutMs = 300_000;
+
+    @Value("${scroll.max-open:100000}")
+    private int maxOpen = 100_000;
+
+    @Value("${scroll.sweep-interval-ms:10000}")
+    private long sweepIntervalMs = 10_000;
+
+    public ScrollDepthReducer(ClickHouseBatchWriter batchWriter, MeterRegistry meterRegistry) {
+        this.batchWriter = batchWriter;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new LinkedHashMap<>(256, 0.75f, true);
+        }
+        this.samples = Counter.builder("scroll.samples")
+            .description("Scroll samples reduced by the scroll collapser")
+            .register(meterRegistry);
+        this.rows = Counter.builder("scroll.rows")
+            .description("Collapsed scroll_events rows written")
+            .register(meterRegistry);
+        Gauge.builder("scroll.collapse.ratio", this, ScrollDepthReducer::collapseRatio)
+            .description("Scroll samples per scroll_events row written")
+            .register(meterRegistry);
+        Gauge.builder("scroll.open", this, ScrollDepthReducer::openPages)
+            .description("Pages with scroll samples not yet written")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Scroll collapsing disabled, every scroll sample is stored");
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scroll-reducer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.error("✗ Scroll sweep failed: {}", e.getMessage(), e);
+            }
+        }, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdown();
+        }
+        closeAll();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        if (!enabled) {
+            return;
+        }
+        String eventType = event.path("event_type").asText("");
+        JsonNode data = event.path("data");
+        String sessionId = data.path("session_id").asText("");
+        if (sessionId.isEmpty()) {
+            return;
+        }
+        String pageUrl = data.path("page_url").asText(data.path("url").asText(""));
+        long now = System.currentTimeMillis();
+        switch (eventType) {
+            case "scroll_depth" -> add(new PageKey(sessionId, pageUrl), data, data, timestamp, now);
+            case "periodic_events" -> {
+                PageKey key = new PageKey(sessionId, pageUrl);
+                for (JsonNode sample : data.path("scrollEvents")) {
+                    add(key, data, sample, timestamp, now);
+                }
+            }
+            case "page_unload" -> close(new PageKey(sessionId, pageUrl));
+            default -> {
+            }
+        }
+    }
+
+    private void add(PageKey key, JsonNode data, JsonNode sample, LocalDateTime timestamp, long now) {
+        Integer depth = integer(sample, "depth_percent", "depthPercent", "depth");
+        Integer percent = integer(sample, "scroll_percent", "scrollPercent", null);
+        Integer top = integer(sample, "scroll_top", "scrollTop", null);
+        samples.increment();
+        LinkedHashMap<PageKey, PageScroll> shard = shardOf(key);
+        List<PageScroll> evicted = null;
+        synchronized (shard) {
+            PageScroll page = shard.get(key);
+            if (page == null) {
+                page = new PageScroll(key, data.path("user_id").asText(""), data.path("tracking_id").asText(""));
+                shard.put(key, page);
+            }
+            page.depthPercent = max(page.depthPercent, depth);
+            page.scrollPercent = max(page.scrollPercent, percent);
+            page.scrollTop = max(page.scrollTop, top);
+            if (page.lastSample == null || timestamp.isAfter(page.lastSample)) {
+                page.lastSample = timestamp;
+            }
+            page.lastActivityMs = now;
+            int capacity = Math.max(1, maxOpen / SHARDS);
+            if (shard.size() > capacity) {
+                evicted = new ArrayList<>();
+                Iterator<PageScroll> eldest = shard.values().iterator();
+                while (shard.size() > capacity && eldest.hasNext()) {
+                    evicted.add(eldest.next());
+                    eldest.remove();
+                }
+            }
+        }
+        if (evicted != null) {
+            evicted.forEach(this::emit);
+        }
+    }
+
+    /**
+     * Write the row of a page that was left. Returns false if no samples were pending for it.
+     */
+    public boolean close(PageKey key) {
+        LinkedHashMap<PageKey, PageScroll> shard = shardOf(key);
+        PageScroll page;
+        synchronized (shard) {
+            page = shard.remove(key);
+        }
+        if (page == null) {
+            return false;
+        }
+        emit(page);
+        return true;
+    }
+
+    /**
+     * Write the pages without samples for scroll.idle-timeout-ms.
+     *
+     * @return the number of rows written
+     */
+    public int sweep(long now) {
+        int closed = 0;
+        for (LinkedHashMap<PageKey, PageScroll> shard : shards) {
+            List<PageScroll> idle = new ArrayList<>();
+            synchronized (shard) {
+                // Access order: the idle pages come first
+                Iterator<PageScroll> it = shard.values().iterator();
+                while (it.hasNext()) {
+                    PageScroll page = it.next();
+                    if (now - page.lastActivityMs < idleTimeoutMs) {
+                        break;
+                    }
+                    idle.add(page);
+                    it.remove();
+                }
+            }
+            idle.forEach(this::emit);
+            closed += idle.size();
+        }
+        return closed;
+    }
+
+    public int openPages() {
+        int open = 0;
+        for (LinkedHashMap<PageKey, PageScroll> shard : shards) {
+            synchronized (shard) {
+                open += shard.size();
+            }
+        }
+        return open;
+    }
+
+    public double collapseRatio() {
+        return rows.count() == 0 ? 0.0 : samples.count() / rows.count();
+    }
+
+    private void closeAll() {
+        for (LinkedHashMap<PageKey, PageScroll> shard : shards) {
+            List<PageScroll> open;
+            synchronized (shard) {
+                open = new ArrayList<>(shard.values());
+                shard.clear();
+            }
+            open.forEach(this::emit);
+        }
+    }
+
+    private void emit(PageScroll page) {
+        batchWriter.add(ClickHouseTable.SCROLL_EVENTS,
+            page.lastSample,
+            page.key.sessionId(),
+            page.userId,
+            page.trackingId,
+            page.key.pageUrl(),
+            "scroll_depth",
+            clamp(page.depthPercent, 255),
+            clamp(page.scrollTop, 65535),
+            clamp(page.scrollPercent, 255));
+        rows.increment();
+    }
+
+    private LinkedHashMap<PageKey, PageScroll> shardOf(PageKey key) {
+        return shards[Math.floorMod(key.hashCode(), SHARDS)];
+    }
+
+    private static Integer integer(JsonNode node, String field, String camelField, String shortField) {
+        for (String name : new String[] {field, camelField, shortField}) {
+            if (name != null && node.path(name).isNumber()) {
+                return node.path(name).asInt();
+            }
+        }
+        return null;
+    }
+
+    private static Integer clamp(Integer value, int max) {
+        return value == null ? null : Math.max(0, Math.min(max, value));
+    }
+
+    private static Integer max(Integer current, Integer sample) {
+        if (sample == null) {
+            return current;
+        }
+        return current == null ? sample : Math.max(current, sample);
+    }
+
+    /**
+     * One page view of a session.
+     */
+    public record PageKey(String sessionId, String pageUrl) {
+        public PageKey {
+            Objects.requireNonNull(sessionId);
+            Objects.requireNonNull(pageUrl);
+        }
+    }
+
+    private static final class PageScroll {
+        final PageKey key;
+        final String userId;
+        final String trackingId;
+        Integer depthPercent;
+        Integer scrollPercent;
+        Integer scrollTop;
+        LocalDateTime lastSample;
+        long lastActivityMs;
+
+        PageScroll(PageKey key, String userId, String trackingId) {
+            this.key = key;
+            this.userId = userId;
+            this.trackingId = trackingId;
+        }
+    }
+}
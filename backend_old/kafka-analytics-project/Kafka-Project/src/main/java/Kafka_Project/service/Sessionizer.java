@@ -0,0 +1,567 @@
+package Kafka_Project.service;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds one sessions row per visit from the events of all families, instead of one row per page_load.
+ *
+ * Open sessions are kept in memory, keyed by session_id, and accumulate page views, start and end time,
+ * entry and exit page and the number of interaction events (everything that is not a page event). A
+ * session is closed and written when it has been inactive for sessions.inactivity-timeout-ms, or
+ * sessions.unload-grace-ms after a page_unload with no further event (navigating to the next page of
+ * the same visit also sends a page_unload, so it cannot close the session right away).
+ *
+ * State is bounded by sessions.max-open: when a shard is full, its least recently active session is
+ * closed early. Open sessions that changed are checkpointed to a Redis hash every
+ * sessions.checkpoint-interval-ms and on shutdown, and restored on startup, so a restart continues
+ * them. Each instance has its own hash, keyed by sessions.instance-id, and restores only that one;
+ * a shared hash would hand every instance the sessions of all the others. The hash expires after
+ * sessions.checkpoint-ttl-seconds without a checkpoint, so the hash of a retired instance id does not
+ * stay behind. Events processed after the last checkpoint of a crashed instance are counted again
+ * when they are redelivered.
+ *
+ * A closed session stays in its shard (and in the checkpoint) until the batch writer reports its row
+ * written. Rows that failed are appended again on the next sweep; at most sessions.max-open of them
+ * are held, the oldest dropped first.
+ *
+ * Each consumer instance sessionizes the events it receives; with several instances the events of
+ * one session can be split between them and produce several partial rows.
+ */
+@Service
+public class Sessionizer implements EventObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(Sessionizer.class);
+
+    static final String CHECKPOINT_KEY_PREFIX = "sessionizer:open:";
+    private static final String CLOSED_FIELD_PREFIX = "closed:";
+    private static final int SHARDS = 16;
+    private static final Set<String> PAGE_EVENTS =
+        Set.of("page_load", "page_view", "page_unload", "page_hidden", "page_visible");
+
+    private final ClickHouseBatchWriter batchWriter;
+    private final RedisService redisService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Shard[] shards = new Shard[SHARDS];
+    private ScheduledExecutorService scheduler;
+
+    @Value("${sessions.inactivity-timeout-ms:1800000}")
+    private long inactivityTimeoutMs = 1_800_000;
+
+    @Value("${sessions.unload-grace-ms:30000}")
+    private long unloadGraceMs = 30_000;
+
+    @Value("${sessions.max-open:200000}")
+    private int maxOpen = 200_000;
+
+    @Value("${sessions.sweep-interval-ms:5000}")
+    private long sweepIntervalMs = 5000;
+
+    @Value("${sessions.checkpoint-interval-ms:30000}")
+    private long checkpointIntervalMs = 30_000;
+
+    @Value("${sessions.instance-id:local}")
+    private String instanceId = "local";
+
+    @Value("${sessions.checkpoint-ttl-seconds:86400}")
+    private int checkpointTtlSeconds = 86_400;
+
+    public Sessionizer(ClickHouseBatchWriter batchWriter, RedisService redisService, MeterRegistry meterRegistry) {
+        this.batchWriter = batchWriter;
+        this.redisService = redisService;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        Gauge.builder("sessions.open", this, Sessionizer::openSessions)
+            .description("Sessions currently held by the sessionizer")
+            .register(meterRegistry);
+        Gauge.builder("sessions.unwritten", this, Sessionizer::unwrittenSessions)
+            .description("Closed sessions whose row is not written to ClickHouse yet")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        restore();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sessionizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sweepSafely, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::checkpointSafely, checkpointIntervalMs, checkpointIntervalMs,
+            TimeUnit.MILLISECONDS);
+        logger.info("Sessionizer started (instance-id={}, inactivity-timeout-ms={}, max-open={}, {} sessions restored)",
+            instanceId, inactivityTimeoutMs, maxOpen, openSessions());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        // Write the closed sessions now, so that the checkpoint does not hand them to the next start
+        try {
+            batchWriter.flush(ClickHouseTable.SESSIONS);
+        } catch (Exception e) {
+            logger.warn("✗ Could not flush closed sessions on shutdown: {}", e.getMessage());
+        }
+        // Open sessions stay open: the next start restores them from the checkpoint
+        checkpointSafely();
+    }
+
+    /**
+     * Add one event envelope to its session. Events without a session_id are ignored.
+     */
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        JsonNode data = event.path("data");
+        String sessionId = text(data, "session_id", text(event, "session_id", ""));
+        if (sessionId.isEmpty()) {
+            return;
+        }
+        String eventType = event.path("event_type").asText("");
+        long now = System.currentTimeMillis();
+        Shard shard = shardOf(sessionId);
+        List<SessionState> evicted = null;
+        synchronized (shard) {
+            SessionState state = shard.sessions.get(sessionId);
+            if (state == null) {
+                state = new SessionState();
+                state.sessionId = sessionId;
+                shard.sessions.put(sessionId, state);
+            }
+            state.apply(eventType, data, timestamp, now);
+            shard.dirty.add(sessionId);
+            shard.removed.remove(sessionId);
+            int capacity = Math.max(1, maxOpen / SHARDS);
+            if (shard.sessions.size() > capacity) {
+                evicted = new ArrayList<>();
+                Iterator<SessionState> eldest = shard.sessions.values().iterator();
+                while (shard.sessions.size() > capacity && eldest.hasNext()) {
+                    SessionState victim = eldest.next();
+                    eldest.remove();
+                    shard.forget(victim.sessionId);
+                    evicted.add(victim);
+                }
+            }
+        }
+        if (evicted != null) {
+            emit(evicted, "evicted");
+        }
+    }
+
+    /**
+     * Close and write the sessions that timed out or were unloaded, and append the rows of closed
+     * sessions that failed to write again.
+     *
+     * @return the number of sessions closed
+     */
+    public int sweep(long now) {
+        int closed = 0;
+        for (Shard shard : shards) {
+            List<SessionState> timedOut = new ArrayList<>();
+            List<SessionState> unloaded = new ArrayList<>();
+            List<SessionState> failed = new ArrayList<>();
+            synchronized (shard) {
+                for (SessionState state : shard.unwritten) {
+                    if (!state.writing) {
+                        failed.add(state);
+                    }
+                }
+                Iterator<SessionState> it = shard.sessions.values().iterator();
+                while (it.hasNext()) {
+                    SessionState state = it.next();
+                    if (state.unloadedAtMs > 0 && now - state.unloadedAtMs >= unloadGraceMs) {
+                        unloaded.add(state);
+                    } else if (now - state.lastActivityMs >= inactivityTimeoutMs) {
+                        timedOut.add(state);
+                    } else {
+                        continue;
+                    }
+                    it.remove();
+                    shard.forget(state.sessionId);
+                }
+            }
+            if (!failed.isEmpty()) {
+                logger.info("Retrying {} closed sessions whose row was not written", failed.size());
+                failed.forEach(this::write);
+            }
+            emit(timedOut, "timeout");
+            emit(unloaded, "unload");
+            closed += timedOut.size() + unloaded.size();
+        }
+        return closed;
+    }
+
+    /**
+     * Write the sessions that changed since the last checkpoint to Redis and drop the closed and
+     * written ones. Closed sessions not written yet are saved under a field of their own.
+     */
+    public void checkpoint() {
+        Map<String, String> put = new HashMap<>();
+        Set<String> remove = new HashSet<>();
+        List<SessionState> saved = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (String sessionId : shard.dirty) {
+                    put.put(sessionId, encode(shard.sessions.get(sessionId)));
+                }
+                for (SessionState state : shard.unwritten) {
+                    if (!state.saved) {
+                        state.saved = true;
+                        saved.add(state);
+                        put.put(state.closedField(), encode(state));
+                    }
+                }
+                remove.addAll(shard.removed);
+                shard.dirty.clear();
+                shard.removed.clear();
+            }
+        }
+        try {
+            redisService.updateHash(checkpointKey(), put, remove, checkpointTtlSeconds);
+        } catch (RuntimeException e) {
+            // Keep the changes for the next checkpoint, unless the session was closed or reopened meanwhile
+            for (String sessionId : put.keySet()) {
+                Shard shard = shardOf(sessionId);
+                synchronized (shard) {
+                    if (shard.sessions.containsKey(sessionId)) {
+                        shard.dirty.add(sessionId);
+                    }
+                }
+            }
+            for (SessionState state : saved) {
+                Shard shard = shardOf(state.sessionId);
+                synchronized (shard) {
+                    state.saved = false;
+                }
+            }
+            for (String sessionId : remove) {
+                Shard shard = shardOf(sessionId);
+                synchronized (shard) {
+                    if (!shard.sessions.containsKey(sessionId)) {
+                        shard.removed.add(sessionId);
+                    }
+                }
+            }
+            throw e;
+        }
+        logger.debug("✓ Checkpointed {} open sessions, removed {}", put.size(), remove.size());
+    }
+
+    public int openSessions() {
+        int open = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                open += shard.sessions.size();
+            }
+        }
+        return open;
+    }
+
+    public int unwrittenSessions() {
+        int unwritten = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                unwritten += shard.unwritten.size();
+            }
+        }
+        return unwritten;
+    }
+
+    private void restore() {
+        Map<String, String> saved;
+        try {
+            saved = redisService.getHash(checkpointKey());
+        } catch (Exception e) {
+            logger.warn("✗ Could not restore open sessions from Redis, starting empty: {}", e.getMessage());
+            return;
+        }
+        for (Map.Entry<String, String> entry : saved.entrySet()) {
+            try {
+                SessionState state = objectMapper.readValue(entry.getValue(), SessionState.class);
+                Shard shard = shardOf(state.sessionId);
+                synchronized (shard) {
+                    if (entry.getKey().startsWith(CLOSED_FIELD_PREFIX)) {
+                        // Closed before the restart but not written: the first sweep appends it
+                        state.saved = true;
+                        shard.unwritten.add(state);
+                    } else {
+                        shard.sessions.put(state.sessionId, state);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("✗ Dropping unreadable session checkpoint {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private String checkpointKey() {
+        return CHECKPOINT_KEY_PREFIX + instanceId;
+    }
+
+    private void emit(List<SessionState> sessions, String reason) {
+        int capacity = Math.max(1, maxOpen / SHARDS);
+        for (SessionState state : sessions) {
+            Shard shard = shardOf(state.sessionId);
+            SessionState dropped = null;
+            synchronized (shard) {
+                shard.unwritten.add(state);
+                if (shard.unwritten.size() > capacity) {
+                    Iterator<SessionState> eldest = shard.unwritten.iterator();
+                    dropped = eldest.next();
+                    eldest.remove();
+                    if (dropped.saved) {
+                        shard.removed.add(dropped.closedField());
+                    }
+                }
+            }
+            if (dropped != null) {
+                meterRegistry.counter("sessions.dropped").increment();
+                logger.error("✗ Dropping closed session {}: too many sessions waiting to be written", dropped.sessionId);
+            }
+            write(state);
+        }
+        if (!sessions.isEmpty()) {
+            meterRegistry.counter("sessions.closed", "reason", reason).increment(sessions.size());
+            logger.debug("✓ Closed {} sessions ({})", sessions.size(), reason);
+        }
+    }
+
+    /**
+     * Append the row of a closed session and forget the session once the row is written.
+     */
+    private void write(SessionState state) {
+        Shard shard = shardOf(state.sessionId);
+        synchronized (shard) {
+            state.writing = true;
+        }
+        CompletableFuture<Void> written;
+        try {
+            written = batchWriter.append(ClickHouseTable.SESSIONS, state.toRow());
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        written.whenComplete((ignored, error) -> {
+            synchronized (shard) {
+                state.writing = false;
+                if (error == null && shard.unwritten.remove(state) && state.saved) {
+                    shard.removed.add(state.closedField());
+                }
+            }
+        });
+    }
+
+    private void sweepSafely() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.error("✗ Session sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void checkpointSafely() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            logger.warn("✗ Session checkpoint failed, retrying on the next one: {}", e.getMessage());
+        }
+    }
+
+    private String encode(SessionState state) {
+        try {
+            return objectMapper.writeValueAsString(state);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot encode session " + state.sessionId, e);
+        }
+    }
+
+    private Shard shardOf(String sessionId) {
+        return shards[Math.floorMod(sessionId.hashCode(), SHARDS)];
+    }
+
+    private static String text(JsonNode node, String field, String fallback) {
+        JsonNode value = node.path(field);
+        return value.isValueNode() && !value.isNull() && !value.asText().isEmpty() ? value.asText() : fallback;
+    }
+
+    private static int clamp(JsonNode data, String field, String camelField) {
+        return Math.max(0, Math.min(65535, data.path(field).asInt(data.path(camelField).asInt(0))));
+    }
+
+    /**
+     * Open sessions of one shard, least recently active first.
+     */
+    private static final class Shard {
+        final LinkedHashMap<String, SessionState> sessions = new LinkedHashMap<>(256, 0.75f, true);
+        // Changed since the last checkpoint / closed since the last checkpoint
+        final Set<String> dirty = new HashSet<>();
+        final Set<String> removed = new HashSet<>();
+        // Closed sessions whose row is not written yet, oldest first
+        final Set<SessionState> unwritten = new LinkedHashSet<>();
+
+        void forget(String sessionId) {
+            dirty.remove(sessionId);
+            removed.add(sessionId);
+        }
+    }
+
+    /**
+     * Accumulated state of one open session. Public fields so that it checkpoints as plain JSON;
+     * times are epoch seconds (UTC).
+     */
+    static final class SessionState {
+        public String sessionId;
+        public String userId = "";
+        public String trackingId = "";
+        public long startSec = Long.MAX_VALUE;
+        public long endSec = Long.MIN_VALUE;
+        public String deviceType = "Unknown";
+        public String operatingSystem = "Unknown";
+        public String browser = "Unknown";
+        public int screenWidth;
+        public int screenHeight;
+        public int viewportWidth;
+        public int viewportHeight;
+        public String language = "en";
+        public String timezone = "UTC";
+        public String referrer = "";
+        public String entryPage;
+        public long entryPageSec = Long.MAX_VALUE;
+        public String exitPage;
+        public long exitPageSec = Long.MIN_VALUE;
+        public boolean described;
+        public int pageLoads;
+        public int pageViews;
+        public long interactions;
+        public long lastActivityMs;
+        public long unloadedAtMs;
+        // Once closed: a row append is in flight / the state is in the checkpoint; guarded by the shard
+        boolean writing;
+        boolean saved;
+
+        /**
+         * Checkpoint field of the closed session, apart from a reopened session of the same id.
+         */
+        String closedField() {
+            return CLOSED_FIELD_PREFIX + sessionId + ":" + startSec;
+        }
+
+        void apply(String eventType, JsonNode data, LocalDateTime timestamp, long now) {
+            long sec = timestamp.toEpochSecond(ZoneOffset.UTC);
+            startSec = Math.min(startSec, sec);
+            endSec = Math.max(endSec, sec);
+            lastActivityMs = now;
+            userId = userId.isEmpty() ? text(data, "user_id", "") : userId;
+            trackingId = trackingId.isEmpty() ? text(data, "tracking_id", "") : trackingId;
+
+            if (!PAGE_EVENTS.contains(eventType)) {
+                unloadedAtMs = 0;
+                interactions += EventObserver.eventCount(eventType, data);
+                return;
+            }
+            if ("page_unload".equals(eventType)) {
+                unloadedAtMs = now;
+            } else if ("page_load".equals(eventType) || "page_view".equals(eventType)) {
+                unloadedAtMs = 0;
+                if ("page_load".equals(eventType)) {
+                    pageLoads++;
+                } else {
+                    pageViews++;
+                }
+                if (!described || ("page_load".equals(eventType) && sec < entryPageSec)) {
+                    describe(data);
+                }
+            }
+            String url = text(data, "page_url", text(data, "url", ""));
+            if (!url.isEmpty()) {
+                if (sec < entryPageSec) {
+                    entryPage = url;
+                    entryPageSec = sec;
+                }
+                if (sec >= exitPageSec) {
+                    exitPage = url;
+                    exitPageSec = sec;
+                }
+            }
+        }
+
+        /**
+         * Device, locale and referrer as sent with the first page event.
+         */
+        private void describe(JsonNode data) {
+            described = true;
+            deviceType = text(data, "device_type", text(data, "deviceType", "Unknown"));
+            operatingSystem = text(data, "operating_system", text(data, "os", "Unknown"));
+            browser = text(data, "browser", "Unknown");
+            screenWidth = clamp(data, "screen_width", "screenWidth");
+            screenHeight = clamp(data, "screen_height", "screenHeight");
+            viewportWidth = clamp(data, "viewport_width", "viewportWidth");
+            viewportHeight = clamp(data, "viewport_height", "viewportHeight");
+            language = text(data, "language", "en");
+            timezone = text(data, "timezone", "UTC");
+            referrer = text(data, "referrer", "");
+        }
+
+        Object[] toRow() {
+            // Trackers send page_load, page_view or both for each page
+            int pages = Math.min(65535, Math.max(pageLoads, pageViews));
+            long durationMs = Math.max(0, endSec - startSec) * 1000;
+            return new Object[] {
+                sessionId,
+                userId.isEmpty() ? "guest" : userId,
+                trackingId,
+                LocalDateTime.ofEpochSecond(startSec, 0, ZoneOffset.UTC),
+                LocalDateTime.ofEpochSecond(endSec, 0, ZoneOffset.UTC),
+                deviceType,
+                operatingSystem,
+                browser,
+                screenWidth,
+                screenHeight,
+                viewportWidth,
+                viewportHeight,
+                language,
+                timezone,
+                referrer,
+                entryPage == null ? "" : entryPage,
+                exitPage,
+                Math.min(durationMs, 0xFFFFFFFFL),
+                pages <= 1 ? 1 : 0,
+                pages,
+                Math.min(interactions, 0xFFFFFFFFL)
+            };
+        }
+    }
+}
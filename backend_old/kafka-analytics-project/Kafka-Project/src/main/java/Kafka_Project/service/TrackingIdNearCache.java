@@ -0,0 +1,207 @@
+package Kafka_Project.service;
+
+import Kafka_Project.Redis.RedisService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of tracking ID lookups in front of the Redis registry.
+ *
+ * Both hits and misses are cached, so repeated events for an unknown ID do not reach Redis either.
+ * Every entry has a bounded TTL, and the whole cache is dropped as soon as the registry changes:
+ * RedisService bumps a version key and publishes on a channel for every write. This node listens
+ * on the channel and also polls the version key (every second by default) in case a message
+ * is missed, so remote changes are seen within the poll interval. Local writes invalidate right away.
+ *
+ * If Redis cannot be reached the lookup fails open, as before, and the result is not cached.
+ */
+@Component
+public class TrackingIdNearCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingIdNearCache.class);
+
+    private final RedisService redisService;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Incremented on every invalidation; lookups that raced with one are not stored
+    private final AtomicLong generation = new AtomicLong();
+    private volatile String lastVersion;
+    private volatile boolean running;
+    private volatile JedisPubSub subscriber;
+    private ScheduledExecutorService versionPoller;
+    private Thread subscriberThread;
+
+    @Value("${tracking.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tracking.cache.positive-ttl-ms:30000}")
+    private long positiveTtlMs;
+
+    @Value("${tracking.cache.negative-ttl-ms:5000}")
+    private long negativeTtlMs;
+
+    @Value("${tracking.cache.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${tracking.cache.version-poll-ms:1000}")
+    private long versionPollMs;
+
+    @Value("${tracking.cache.pubsub.enabled:true}")
+    private boolean pubSubEnabled;
+
+    public TrackingIdNearCache(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Tracking ID near-cache disabled, every lookup goes to Redis");
+            return;
+        }
+        running = true;
+        versionPoller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tracking-id-version-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        versionPoller.scheduleWithFixedDelay(this::checkVersion, 0, versionPollMs, TimeUnit.MILLISECONDS);
+
+        if (pubSubEnabled) {
+            subscriberThread = new Thread(this::subscribeLoop, "tracking-id-subscriber");
+            subscriberThread.setDaemon(true);
+            subscriberThread.start();
+        }
+        logger.info("Tracking ID near-cache started (positive-ttl-ms={}, negative-ttl-ms={}, max-entries={})",
+            positiveTtlMs, negativeTtlMs, maxEntries);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (versionPoller != null) {
+            versionPoller.shutdownNow();
+        }
+        JedisPubSub current = subscriber;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        if (subscriberThread != null) {
+            subscriberThread.interrupt();
+        }
+    }
+
+    /**
+     * Whether the tracking ID is in the registry, answered locally when possible.
+     */
+    public boolean isRegistered(String trackingId) {
+        if (!enabled) {
+            return redisService.isTrackingIdRegistered(trackingId);
+        }
+
+        long now = System.nanoTime();
+        Entry entry = entries.get(trackingId);
+        if (entry != null && now - entry.expiresAtNanos < 0) {
+            return entry.registered;
+        }
+
+        long observedGeneration = generation.get();
+        boolean registered;
+        try {
+            registered = redisService.isTrackingIdMember(trackingId);
+        } catch (Exception e) {
+            logger.warn("✗ Tracking ID lookup failed, allowing {}: {}", trackingId, e.getMessage());
+            return true;
+        }
+
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        long ttlMs = registered ? positiveTtlMs : negativeTtlMs;
+        Entry fresh = new Entry(registered, now + TimeUnit.MILLISECONDS.toNanos(ttlMs));
+        entries.put(trackingId, fresh);
+        if (generation.get() != observedGeneration) {
+            // The registry changed while we were asking, the answer may already be stale
+            entries.remove(trackingId, fresh);
+        }
+        return registered;
+    }
+
+    /**
+     * Drop all cached lookups. Called after local writes and when another node changes the registry.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(e -> now - e.expiresAtNanos >= 0);
+        if (entries.size() >= maxEntries) {
+            // Still full of live entries (e.g. a flood of unknown IDs); start over rather than grow
+            entries.clear();
+        }
+    }
+
+    private void checkVersion() {
+        try {
+            onVersion(redisService.getTrackingIdVersion());
+        } catch (Exception e) {
+            logger.debug("Tracking ID version check failed: {}", e.getMessage());
+        }
+    }
+
+    private void onVersion(String version) {
+        if (!Objects.equals(version, lastVersion)) {
+            lastVersion = version;
+            invalidateAll();
+            logger.debug("Tracking ID registry version is now {}, cache invalidated", version);
+        }
+    }
+
+    private void subscribeLoop() {
+        while (running) {
+            JedisPubSub listener = new JedisPubSub() {
+                @Override
+                public void onMessage(String channel, String message) {
+                    onVersion(message);
+                }
+            };
+            subscriber = listener;
+            try {
+                redisService.subscribeTrackingIdChanges(listener);
+            } catch (Exception e) {
+                logger.warn("✗ Tracking ID change subscription lost: {}", e.getMessage());
+            }
+            // Messages may have been missed while disconnected
+            checkVersion();
+            try {
+                Thread.sleep(versionPollMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private record Entry(boolean registered, long expiresAtNanos) {
+    }
+}
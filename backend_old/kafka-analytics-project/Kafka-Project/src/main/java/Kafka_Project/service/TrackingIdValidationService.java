@@ -10,7 +10,8 @@ import java.util.Set;
 
 /**
  * Service for validating tracking IDs against registered users.
- * Uses Redis to cache registered tracking IDs for fast lookup.
+ * Uses Redis to cache registered tracking IDs for fast lookup, with an in-process
+ * near-cache ({@link TrackingIdNearCache}) in front of it on the ingest path.
  * 
  * The sync of tracking IDs from MySQL/Laravel can be done via:
  * 1. API endpoint (POST /api/tracking-ids/sync)
@@ -23,6 +24,7 @@ public class TrackingIdValidationService {
     private static final Logger logger = LoggerFactory.getLogger(TrackingIdValidationService.class);
     
     private final RedisService redisService;
+    private final TrackingIdNearCache nearCache;
     
     // Enable/disable tracking ID validation (can be disabled for development)
     @Value("${tracking.validation.enabled:true}")
@@ -32,8 +34,9 @@ public class TrackingIdValidationService {
     @Value("${tracking.validation.allow-anonymous:false}")
     private boolean allowAnonymous;
     
-    public TrackingIdValidationService(RedisService redisService) {
+    public TrackingIdValidationService(RedisService redisService, TrackingIdNearCache nearCache) {
         this.redisService = redisService;
+        this.nearCache = nearCache;
     }
     
     /**
@@ -53,8 +56,8 @@ public class TrackingIdValidationService {
             return allowAnonymous;
         }
         
-        // Check if registered in Redis
-        boolean isRegistered = redisService.isTrackingIdRegistered(trackingId);
+        // Check the near-cache, falling back to Redis
+        boolean isRegistered = nearCache.isRegistered(trackingId);
         
         if (!isRegistered) {
             logger.warn("Unregistered tracking ID attempted: {}", trackingId);
@@ -69,6 +72,7 @@ public class TrackingIdValidationService {
     public void registerTrackingId(String trackingId) {
         if (trackingId != null && !trackingId.isEmpty()) {
             redisService.registerTrackingId(trackingId);
+            nearCache.invalidateAll();
             logger.info("Registered tracking ID: {}", trackingId);
         }
     }
@@ -80,6 +84,7 @@ public class TrackingIdValidationService {
     public void syncTrackingIds(Set<String> trackingIds) {
         if (trackingIds != null && !trackingIds.isEmpty()) {
             redisService.registerTrackingIds(trackingIds);
+            nearCache.invalidateAll();
             logger.info("Synced {} tracking IDs to Redis", trackingIds.size());
         }
     }
@@ -90,6 +95,7 @@ public class TrackingIdValidationService {
     public void unregisterTrackingId(String trackingId) {
         if (trackingId != null && !trackingId.isEmpty()) {
             redisService.unregisterTrackingId(trackingId);
+            nearCache.invalidateAll();
             logger.info("Unregistered tracking ID: {}", trackingId);
         }
     }
@@ -0,0 +1,250 @@
+package Kafka_Project.service;
+
+import Kafka_Project.Redis.RedisService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unique users and sessions per tracking_id as HyperLogLog sketches, so "unique users in the last
+ * N minutes" does not need a uniqExact scan over page_events or sessions.
+ *
+ * The sketches are Redis HyperLogLogs, one per metric, tracking_id and minute, hour and day bucket
+ * (uniques:&lt;metric&gt;:&lt;tracking_id&gt;:&lt;m|h|d&gt;:&lt;bucket&gt;, bucket = epoch seconds / bucket
+ * length). Redis stores each as a compact binary string (sparse encoding while small, 12 KB at most)
+ * and PFADD and PFCOUNT merge registers, so every consumer node writes to the same keys and a
+ * query over several buckets is a union computed by PFCOUNT. The standard error is 0.81%.
+ *
+ * Events are bucketed by event time. Each node collects the distinct IDs per minute in memory and
+ * adds them every uniques.flush-interval-ms to the minute bucket and its hour and day roll-ups in one
+ * pipelined round trip. If Redis is unavailable the IDs are kept for the next flush, up to
+ * uniques.max-pending buckets.
+ */
+@Service
+public class UniqueVisitorSketches implements EventObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(UniqueVisitorSketches.class);
+
+    public static final double STANDARD_ERROR = 0.0081;
+
+    public enum Metric {
+        USERS("users"), SESSIONS("sessions");
+
+        private final String key;
+
+        Metric(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    public enum Granularity {
+        MINUTE("m", 60), HOUR("h", 3600), DAY("d", 86400);
+
+        private final String key;
+        private final long seconds;
+
+        Granularity(String key, long seconds) {
+            this.key = key;
+            this.seconds = seconds;
+        }
+
+        public long getSeconds() {
+            return seconds;
+        }
+    }
+
+    private final RedisService redisService;
+    // Minute key -> IDs seen since the last flush; sets are only touched inside compute() or after remove()
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    @Value("${uniques.flush-interval-ms:1000}")
+    private long flushIntervalMs = 1000;
+
+    @Value("${uniques.max-pending:100000}")
+    private int maxPending = 100_000;
+
+    @Value("${uniques.retention.minute-hours:48}")
+    private long minuteRetentionHours = 48;
+
+    @Value("${uniques.retention.hour-days:35}")
+    private long hourRetentionDays = 35;
+
+    @Value("${uniques.retention.day-days:400}")
+    private long dayRetentionDays = 400;
+
+    public UniqueVisitorSketches(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    @PostConstruct
+    void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "unique-visitor-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushSafely();
+    }
+
+    @Override
+    public void observe(JsonNode event, LocalDateTime timestamp) {
+        JsonNode data = event.path("data");
+        String trackingId = data.path("tracking_id").asText("");
+        if (trackingId.isEmpty()) {
+            return;
+        }
+        long minute = timestamp.toEpochSecond(ZoneOffset.UTC) / Granularity.MINUTE.seconds;
+        String userId = data.path("user_id").asText("");
+        if (!userId.isEmpty() && !"guest".equals(userId)) {
+            collect(key(Metric.USERS, trackingId, Granularity.MINUTE, minute), userId);
+        }
+        String sessionId = data.path("session_id").asText("");
+        if (!sessionId.isEmpty()) {
+            collect(key(Metric.SESSIONS, trackingId, Granularity.MINUTE, minute), sessionId);
+        }
+    }
+
+    private void collect(String minuteKey, String id) {
+        if (pending.size() >= maxPending && !pending.containsKey(minuteKey)) {
+            logger.warn("✗ {} unique-visitor buckets pending, dropping {}", maxPending, minuteKey);
+            return;
+        }
+        pending.compute(minuteKey, (k, ids) -> {
+            Set<String> set = ids == null ? new HashSet<>() : ids;
+            set.add(id);
+            return set;
+        });
+    }
+
+    /**
+     * Add the collected IDs to their minute, hour and day sketches.
+     */
+    public void flush() {
+        Map<String, Set<String>> drained = new HashMap<>();
+        for (String minuteKey : List.copyOf(pending.keySet())) {
+            Set<String> ids = pending.remove(minuteKey);
+            if (ids != null) {
+                drained.put(minuteKey, ids);
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        Map<String, Set<String>> elements = new HashMap<>();
+        Map<String, Long> expireSeconds = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : drained.entrySet()) {
+            String minuteKey = entry.getKey();
+            int split = minuteKey.lastIndexOf(":m:");
+            String prefix = minuteKey.substring(0, split);
+            long minute = Long.parseLong(minuteKey.substring(split + 3));
+            long epochSec = minute * Granularity.MINUTE.seconds;
+            for (Granularity granularity : Granularity.values()) {
+                String key = prefix + ":" + granularity.key + ":" + epochSec / granularity.seconds;
+                elements.computeIfAbsent(key, k -> new HashSet<>()).addAll(entry.getValue());
+                expireSeconds.put(key, retentionSeconds(granularity));
+            }
+        }
+        try {
+            redisService.addToHyperLogLogs(elements, expireSeconds);
+        } catch (RuntimeException e) {
+            // Keep the IDs for the next flush
+            drained.forEach((minuteKey, ids) -> pending.merge(minuteKey, ids, (current, failed) -> {
+                current.addAll(failed);
+                return current;
+            }));
+            throw e;
+        }
+        logger.debug("✓ Added {} unique-visitor buckets to {} sketches", drained.size(), elements.size());
+    }
+
+    /**
+     * Estimated distinct users or sessions of a tracking_id in the last count buckets of the given
+     * granularity, the current (partial) bucket included. Whole hours and days inside the window are
+     * read from the roll-ups, so a week of minutes is not hundreds of keys.
+     */
+    public long countUnique(Metric metric, String trackingId, Granularity granularity, int count, long nowSec) {
+        return redisService.countHyperLogLogs(keys(metric, trackingId, granularity, count, nowSec));
+    }
+
+    /**
+     * Sketch keys covering the window, coarsest first where a whole bucket fits.
+     */
+    public List<String> keys(Metric metric, String trackingId, Granularity granularity, int count, long nowSec) {
+        if (count < 1 || count * granularity.seconds > retentionSeconds(granularity)) {
+            throw new IllegalArgumentException("Window must be between 1 and " +
+                retentionSeconds(granularity) / granularity.seconds + " " + granularity.name().toLowerCase() + "s");
+        }
+        List<String> keys = new ArrayList<>();
+        long cursor = (nowSec / granularity.seconds - count + 1) * granularity.seconds;
+        while (cursor <= nowSec) {
+            Granularity step = granularity;
+            for (Granularity coarser : Granularity.values()) {
+                if (coarser.seconds > step.seconds && cursor % coarser.seconds == 0
+                        && cursor + coarser.seconds - 1 <= nowSec) {
+                    step = coarser;
+                }
+            }
+            keys.add(key(metric, trackingId, step, cursor / step.seconds));
+            cursor += step.seconds;
+        }
+        return keys;
+    }
+
+    public int pendingBuckets() {
+        return pending.size();
+    }
+
+    private long retentionSeconds(Granularity granularity) {
+        return switch (granularity) {
+            case MINUTE -> TimeUnit.HOURS.toSeconds(minuteRetentionHours);
+            case HOUR -> TimeUnit.DAYS.toSeconds(hourRetentionDays);
+            case DAY -> TimeUnit.DAYS.toSeconds(dayRetentionDays);
+        };
+    }
+
+    private static String key(Metric metric, String trackingId, Granularity granularity, long bucket) {
+        return "uniques:" + metric.key + ":" + trackingId + ":" + granularity.key + ":" + bucket;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("✗ Unique-visitor flush failed, retrying on the next one: {}", e.getMessage());
+        }
+    }
+}
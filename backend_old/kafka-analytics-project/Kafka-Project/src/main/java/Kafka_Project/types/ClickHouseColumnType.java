@@ -0,0 +1,47 @@
+package Kafka_Project.types;
+
+/**
+ * Wire type of a ClickHouse column as seen by the RowBinary encoder.
+ * LowCardinality(T) is sent exactly like T, so it is folded into the underlying type.
+ */
+public record ClickHouseColumnType(BaseType baseType, boolean nullable) {
+
+    public enum BaseType {
+        STRING, STRING_ARRAY, UINT8, UINT16, UINT32, FLOAT32, FLOAT64, DATETIME
+    }
+
+    /**
+     * Parse a type declaration as written in create_tables.v3.sql,
+     * e.g. "LowCardinality(Nullable(String))" or "Nullable(UInt16)".
+     */
+    public static ClickHouseColumnType parse(String declaration) {
+        String type = declaration.trim();
+        if (type.startsWith("LowCardinality(")) {
+            type = unwrap(type, "LowCardinality(");
+        }
+        boolean nullable = false;
+        if (type.startsWith("Nullable(")) {
+            type = unwrap(type, "Nullable(");
+            nullable = true;
+        }
+        BaseType baseType = switch (type) {
+            case "String" -> BaseType.STRING;
+            case "Array(String)" -> BaseType.STRING_ARRAY;
+            case "UInt8" -> BaseType.UINT8;
+            case "UInt16" -> BaseType.UINT16;
+            case "UInt32" -> BaseType.UINT32;
+            case "Float32" -> BaseType.FLOAT32;
+            case "Float64" -> BaseType.FLOAT64;
+            case "DateTime" -> BaseType.DATETIME;
+            default -> throw new IllegalArgumentException("Unsupported ClickHouse type: " + declaration);
+        };
+        return new ClickHouseColumnType(baseType, nullable);
+    }
+
+    private static String unwrap(String type, String prefix) {
+        if (!type.endsWith(")")) {
+            throw new IllegalArgumentException("Malformed ClickHouse type: " + type);
+        }
+        return type.substring(prefix.length(), type.length() - 1).trim();
+    }
+}
@@ -0,0 +1,219 @@
+package Kafka_Project.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ClickHouse tables written by the consumers, with the column order and types used for inserts.
+ * Rows handed to the batch writer must list their values in exactly this order.
+ */
+public enum ClickHouseTable {
+
+    PAGE_EVENTS("page_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "event_type String",
+        "page_url String",
+        "page_title String",
+        "referrer String"),
+
+    SESSIONS("sessions",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "start_time DateTime",
+        "end_time Nullable(DateTime)",
+        "device_type LowCardinality(String)",
+        "operating_system LowCardinality(String)",
+        "browser LowCardinality(String)",
+        "screen_width UInt16",
+        "screen_height UInt16",
+        "viewport_width UInt16",
+        "viewport_height UInt16",
+        "language LowCardinality(String)",
+        "timezone String",
+        "referrer String",
+        "entry_page String",
+        "exit_page Nullable(String)",
+        "duration_ms Nullable(UInt32)",
+        "bounce UInt8",
+        "page_views UInt16",
+        "interaction_count UInt32"),
+
+    INTERACTION_EVENTS("interaction_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "event_type String",
+        "page_url String",
+        "x Nullable(UInt16)",
+        "y Nullable(UInt16)",
+        "element String",
+        "element_id Nullable(String)",
+        "element_class Nullable(String)",
+        "button_text Nullable(String)",
+        "button_type Nullable(String)",
+        "link_url Nullable(String)",
+        "link_text Nullable(String)",
+        "file_name Nullable(String)",
+        "is_external Nullable(UInt8)",
+        "target Nullable(String)"),
+
+    FORM_EVENTS("form_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "event_type String",
+        "form_id String",
+        "form_name String",
+        "form_action Nullable(String)",
+        "form_method Nullable(String)",
+        "field_name Nullable(String)",
+        "field_type Nullable(String)",
+        "field_count Nullable(UInt8)",
+        "value_length Nullable(UInt16)",
+        "has_file_upload Nullable(UInt8)",
+        "success Nullable(UInt8)"),
+
+    ECOMMERCE_EVENTS("ecommerce_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "event_type String",
+        "product_id Nullable(String)",
+        "product_name Nullable(String)",
+        "price Nullable(Float64)",
+        "quantity Nullable(UInt16)",
+        "category LowCardinality(Nullable(String))",
+        "currency LowCardinality(Nullable(String))",
+        "order_id Nullable(String)",
+        "total Nullable(Float64)",
+        "step Nullable(UInt8)",
+        "step_name Nullable(String)"),
+
+    VIDEO_EVENTS("video_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "event_type String",
+        "video_src String",
+        "video_duration Nullable(Float32)",
+        "current_time Nullable(Float32)"),
+
+    SCROLL_EVENTS("scroll_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "event_type String",
+        "depth_percent Nullable(UInt8)",
+        "scroll_top Nullable(UInt16)",
+        "scroll_percent Nullable(UInt8)"),
+
+    CUSTOM_EVENTS("custom_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "event_name LowCardinality(String)",
+        "properties String"),
+
+    BATCH_EVENTS("batch_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "event_data Array(String)",
+        "event_count UInt16"),
+
+    MOUSE_EVENTS("mouse_events",
+        "timestamp DateTime",
+        "session_id String",
+        "user_id String",
+        "tracking_id String",
+        "page_url String",
+        "x UInt16",
+        "y UInt16"),
+
+    MOUSE_HEATMAP("mouse_heatmap",
+        "minute DateTime",
+        "tracking_id String",
+        "page_url String",
+        "viewport_bucket UInt16",
+        "cell_size UInt8",
+        "cell_x UInt16",
+        "cell_y UInt16",
+        "count UInt32");
+
+    private final String tableName;
+    private final List<String> columns;
+    private final List<ClickHouseColumnType> columnTypes;
+    private final String insertSql;
+    private final String valuesTuple;
+
+    /**
+     * @param columns "name Type" pairs, with types spelled as in create_tables.v3.sql
+     */
+    ClickHouseTable(String tableName, String... columns) {
+        List<String> names = new ArrayList<>(columns.length);
+        List<ClickHouseColumnType> types = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            int space = column.indexOf(' ');
+            names.add(column.substring(0, space));
+            types.add(ClickHouseColumnType.parse(column.substring(space + 1)));
+        }
+        this.tableName = tableName;
+        this.columns = List.copyOf(names);
+        this.columnTypes = List.copyOf(types);
+        this.valuesTuple = "(" + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        this.insertSql = "INSERT INTO " + tableName + " (" + getColumnList() + ") VALUES " + valuesTuple;
+    }
+
+    public String getTableName() { return tableName; }
+
+    public List<String> getColumns() { return columns; }
+
+    public List<ClickHouseColumnType> getColumnTypes() { return columnTypes; }
+
+    public int getColumnCount() { return columns.size(); }
+
+    public String getColumnList() { return String.join(", ", columns); }
+
+    public String getInsertSql() { return insertSql; }
+
+    /**
+     * INSERT of rowCount rows as one statement, VALUES (?, ...), (?, ...), so a whole batch is one
+     * query and one part. The JDBC driver inlines the values; ClickHouse parses the VALUES data as a
+     * stream, so it does not count towards max_query_size.
+     *
+     * @param dedupToken insert_deduplication_token for the statement, or null for none
+     */
+    public String getInsertSql(int rowCount, String dedupToken) {
+        StringBuilder sql = new StringBuilder(64 + rowCount * (valuesTuple.length() + 2));
+        sql.append("INSERT INTO ").append(tableName).append(" (").append(getColumnList()).append(')');
+        if (dedupToken != null) {
+            sql.append(" SETTINGS insert_deduplication_token = '")
+                .append(dedupToken.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+        }
+        sql.append(" VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(valuesTuple);
+        }
+        return sql.toString();
+    }
+}
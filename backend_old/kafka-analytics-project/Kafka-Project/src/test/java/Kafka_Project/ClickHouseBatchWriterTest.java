@@ -0,0 +1,177 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.ClickHouseRowBatch;
+import Kafka_Project.service.JdbcClickHouseSink;
+import Kafka_Project.types.ClickHouseTable;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the per-table ClickHouse batch writer (no ClickHouse required).
+ */
+public class ClickHouseBatchWriterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private ClickHouseBatchWriter writer;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("clickhouse.batch.tables.mouse_events.max-rows", "2");
+
+        writer = new ClickHouseBatchWriter(List.of(new JdbcClickHouseSink(jdbcTemplate)), meterRegistry, environment);
+        ReflectionTestUtils.setField(writer, "defaultSink", "jdbc");
+        ReflectionTestUtils.setField(writer, "defaultMaxRows", 100);
+        ReflectionTestUtils.setField(writer, "defaultMaxBytes", 1_000_000L);
+        ReflectionTestUtils.setField(writer, "defaultLingerMs", 200L);
+        ReflectionTestUtils.invokeMethod(writer, "start");
+    }
+
+    @AfterEach
+    void cleanup() {
+        ReflectionTestUtils.invokeMethod(writer, "stop");
+    }
+
+    private Object[] mouseRow(int x) {
+        return new Object[] {LocalDateTime.now(), "sess", "user", "track", "/", x, 10};
+    }
+
+    @Test
+    void flushesWhenPerTableRowLimitReached() {
+        CompletableFuture<Void> first = writer.append(ClickHouseTable.MOUSE_EVENTS, mouseRow(1));
+        assertFalse(first.isDone(), "One row should stay buffered");
+
+        writer.append(ClickHouseTable.MOUSE_EVENTS, mouseRow(2));
+
+        assertTrue(first.isDone(), "Reaching max-rows should flush synchronously");
+        verify(jdbcTemplate, times(1)).update(eq(ClickHouseTable.MOUSE_EVENTS.getInsertSql(2, null)),
+            any(PreparedStatementSetter.class));
+        assertEquals(2.0, meterRegistry.get("clickhouse.batch.rows").tag("table", "mouse_events")
+            .summary().totalAmount());
+    }
+
+    @Test
+    void flushesAfterLinger() {
+        CompletableFuture<Void> pending = writer.append(ClickHouseTable.MOUSE_EVENTS, mouseRow(1));
+
+        await().atMost(2, TimeUnit.SECONDS).until(pending::isDone);
+        verify(jdbcTemplate, times(1)).update(eq(ClickHouseTable.MOUSE_EVENTS.getInsertSql(1, null)),
+            any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void flushSendsOneStatementForAllRows() throws Exception {
+        // A real JdbcTemplate over a mocked driver: counts what would reach ClickHouse
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        ClickHouseBatchWriter jdbcWriter = new ClickHouseBatchWriter(
+            List.of(new JdbcClickHouseSink(new JdbcTemplate(dataSource))), meterRegistry, new MockEnvironment());
+        ReflectionTestUtils.setField(jdbcWriter, "defaultSink", "jdbc");
+        ReflectionTestUtils.setField(jdbcWriter, "defaultMaxRows", 3);
+        ReflectionTestUtils.setField(jdbcWriter, "defaultMaxBytes", 1_000_000L);
+        ReflectionTestUtils.setField(jdbcWriter, "defaultLingerMs", 60_000L);
+        ReflectionTestUtils.invokeMethod(jdbcWriter, "start");
+        try {
+            for (int x = 1; x <= 3; x++) {
+                jdbcWriter.append(ClickHouseTable.MOUSE_EVENTS, mouseRow(x));
+            }
+
+            verify(connection, times(1)).prepareStatement(ClickHouseTable.MOUSE_EVENTS.getInsertSql(3, null));
+            verify(statement, times(1)).executeUpdate();
+            verify(statement, never()).addBatch();
+            verify(statement, never()).executeBatch();
+            // 3 rows x 7 columns bound to the one statement
+            verify(statement).setObject(eq(21), eq(10));
+        } finally {
+            ReflectionTestUtils.invokeMethod(jdbcWriter, "stop");
+        }
+    }
+
+    @Test
+    void failedFlushCompletesExceptionally() {
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new RuntimeException("clickhouse down"));
+
+        CompletableFuture<Void> pending = writer.append(ClickHouseTable.PAGE_EVENTS,
+            LocalDateTime.now(), "sess", "user", "track", "page_load", "/", "Home", "");
+        writer.flush(ClickHouseTable.PAGE_EVENTS);
+
+        assertTrue(pending.isCompletedExceptionally());
+        assertEquals(1.0, meterRegistry.get("clickhouse.batch.flush.failures").tag("table", "page_events")
+            .counter().count());
+    }
+
+    @Test
+    void pollBatchIsWrittenSynchronouslyPerTable() {
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+        batch.add(ClickHouseTable.MOUSE_EVENTS, mouseRow(1));
+        batch.add(ClickHouseTable.PAGE_EVENTS,
+            LocalDateTime.now(), "sess", "user", "track", "page_load", "/", "Home", "");
+
+        writer.write(batch);
+
+        verify(jdbcTemplate).update(eq(ClickHouseTable.MOUSE_EVENTS.getInsertSql(1, null)),
+            any(PreparedStatementSetter.class));
+        verify(jdbcTemplate).update(eq(ClickHouseTable.PAGE_EVENTS.getInsertSql(1, null)),
+            any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void dedupTokenCoversTheWholeBlockOverJdbc() {
+        ClickHouseRowBatch batch = new ClickHouseRowBatch("page_view:0:5-6");
+        batch.add(ClickHouseTable.MOUSE_EVENTS, mouseRow(1));
+        batch.add(ClickHouseTable.MOUSE_EVENTS, mouseRow(2));
+
+        writer.write(batch);
+
+        verify(jdbcTemplate, times(1)).update(eq(ClickHouseTable.MOUSE_EVENTS.getInsertSql(2, "page_view:0:5-6")),
+            any(PreparedStatementSetter.class));
+        verifyNoMoreInteractions(jdbcTemplate);
+        assertTrue(ClickHouseTable.MOUSE_EVENTS.getInsertSql(1, "t'1")
+            .contains(" SETTINGS insert_deduplication_token = 't\\'1' VALUES ("));
+    }
+
+    @Test
+    void pollBatchFailurePropagates() {
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new RuntimeException("clickhouse down"));
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+        batch.add(ClickHouseTable.MOUSE_EVENTS, mouseRow(1));
+
+        assertThrows(RuntimeException.class, () -> writer.write(batch));
+    }
+
+    @Test
+    void rejectsRowsWithWrongColumnCount() {
+        assertThrows(IllegalArgumentException.class,
+            () -> writer.append(ClickHouseTable.MOUSE_EVENTS, "too", "few"));
+    }
+}
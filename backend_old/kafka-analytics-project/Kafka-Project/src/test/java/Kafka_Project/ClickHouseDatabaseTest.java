@@ -306,7 +306,7 @@ void test00_DebugTableSchema() {
         
         // Session 1: New user, engaged (5 pages, no bounce)
         jdbcTemplate.update(
-            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 120000, 0, 5, ?)",
+            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 120000, 0, 5, 0, ?)",
             TEST_SESSION_1, TEST_USER_1, TEST_TRACKING_ID, now,
             "Desktop", "Windows", "Chrome", 1920, 1080, 1440, 900,
             "Jordan", "JO", "en-US", "Asia/Amman",
@@ -316,7 +316,7 @@ void test00_DebugTableSchema() {
         
         // Session 2: Same user, returning (3 pages)
         jdbcTemplate.update(
-            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 60000, 0, 3, ?)",
+            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 60000, 0, 3, 0, ?)",
             TEST_SESSION_2, TEST_USER_1, TEST_TRACKING_ID, 
             LocalDateTime.now().plusDays(2).format(formatter),
             "Mobile", "iOS", "Safari", 390, 844, 390, 750,
@@ -327,7 +327,7 @@ void test00_DebugTableSchema() {
         
         // Session 3: New user, bounced (1 page)
         jdbcTemplate.update(
-            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 5000, 1, 1, ?)",
+            "INSERT INTO sessions VALUES (?, ?, ?, ?, NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 5000, 1, 1, 0, ?)",
             TEST_SESSION_3, TEST_USER_2, TEST_TRACKING_ID, now,
             "Desktop", "macOS", "Firefox", 1680, 1050, 1440, 900,
             "Jordan", "JO", "en-US", "Asia/Amman",
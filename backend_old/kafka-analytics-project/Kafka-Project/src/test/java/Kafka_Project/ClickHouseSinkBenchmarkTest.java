@@ -0,0 +1,96 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseSink;
+import Kafka_Project.service.JdbcClickHouseSink;
+import Kafka_Project.service.RowBinaryClickHouseSink;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark: JDBC prepared-statement batches vs. RowBinary HTTP streaming.
+ *
+ * Requires a local ClickHouse with create_tables.v3.sql applied. Run with:
+ *   mvn test -Dtest=ClickHouseSinkBenchmarkTest -Dclickhouse.available=true
+ */
+@EnabledIfSystemProperty(named = "clickhouse.available", matches = "true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ClickHouseSinkBenchmarkTest {
+
+    private static final String URL = "jdbc:clickhouse://localhost:8123/default?use_binary_format=false";
+    private static final int BATCH_SIZE = 10_000;
+    private static final int BATCHES = 10;
+    private static final int WARMUP_BATCHES = 2;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void setup() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername("default");
+        dataSource.setPassword("root");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    void cleanup() {
+        jdbcTemplate.update("ALTER TABLE mouse_events DELETE WHERE tracking_id LIKE 'bench-%'");
+        dataSource.close();
+    }
+
+    private List<Object[]> mouseRows(String trackingId) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            rows.add(new Object[] {now, "sess-" + (i % 100), "user-" + (i % 50), trackingId,
+                "https://example.com/page/" + (i % 20), i % 1920, i % 1080});
+        }
+        return rows;
+    }
+
+    private double run(ClickHouseSink sink) {
+        String trackingId = "bench-" + sink.getFormat() + "-" + System.currentTimeMillis();
+        List<Object[]> rows = mouseRows(trackingId);
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            sink.insert(ClickHouseTable.MOUSE_EVENTS, rows);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BATCHES; i++) {
+            sink.insert(ClickHouseTable.MOUSE_EVENTS, rows);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rowsPerSecond = BATCH_SIZE * BATCHES / seconds;
+
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT count() FROM mouse_events WHERE tracking_id = ?", Long.class, trackingId);
+        assertEquals((long) BATCH_SIZE * (BATCHES + WARMUP_BATCHES), count);
+
+        System.out.printf("%-10s %,12.0f rows/s  (%d x %d rows in %.2fs)%n",
+            sink.getFormat(), rowsPerSecond, BATCHES, BATCH_SIZE, seconds);
+        return rowsPerSecond;
+    }
+
+    @Test
+    @Order(1)
+    void compareJdbcAndRowBinary() {
+        double jdbc = run(new JdbcClickHouseSink(jdbcTemplate));
+        double rowBinary = run(new RowBinaryClickHouseSink(URL, "", "default", "root", 5000, 30000));
+
+        System.out.printf("RowBinary speedup over JDBC: %.2fx%n", rowBinary / jdbc);
+        assertTrue(rowBinary > 0 && jdbc > 0);
+    }
+}
@@ -24,7 +24,8 @@ import org.springframework.test.web.servlet.MvcResult;
 import java.util.concurrent.TimeUnit;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -65,7 +66,7 @@ public class CompleteIntegrationTest {
 @BeforeEach
 void setup() {
     // Setup test user
-    when(rateLimiter.rateLimiter(anyString())).thenReturn(true);
+    when(rateLimiter.tryAcquire(any(), any())).thenReturn(RateLimiter.Decision.unlimited());
 
     String makeUser = 
         "INSERT INTO user (user_id, company_name, email, password, is_verify) " +
@@ -104,7 +105,7 @@ void cleanup() {
     @org.junit.jupiter.api.BeforeEach
     void setupMocks() {
         // Mock rate limiter to always allow requests before each test
-        when(rateLimiter.rateLimiter(anyString())).thenReturn(true);
+        when(rateLimiter.tryAcquire(any(), any())).thenReturn(RateLimiter.Decision.unlimited());
     }
 
     @Test
@@ -815,7 +816,7 @@ void testEcommerceEvents_KafkaToClickHouse_DEFAULT_SCHEMA() throws Exception {
     @Test
     void testRateLimitExceeded() throws Exception {
         // Mock rate limiter to deny request
-        when(rateLimiter.rateLimiter(anyString())).thenReturn(false);
+        when(rateLimiter.tryAcquire(any(), any())).thenReturn(new RateLimiter.Decision(false, 100, 0, 5, 100));
 
         String testData = """
         [
@@ -835,9 +836,11 @@ void testEcommerceEvents_KafkaToClickHouse_DEFAULT_SCHEMA() throws Exception {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(testData))
                 .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "5"))
+                .andExpect(header().string("X-RateLimit-Remaining", "0"))
                 .andExpect(jsonPath("$.error").value("Too many requests, try again later"));
 
         // Reset for other tests
-        when(rateLimiter.rateLimiter(anyString())).thenReturn(true);
+        when(rateLimiter.tryAcquire(any(), any())).thenReturn(RateLimiter.Decision.unlimited());
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package Kafka_Project;
+
+import Kafka_Project.service.CustomPropertyLimiter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-tracking_id cap on custom event property keys.
+ */
+public class CustomPropertyLimiterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry registry;
+    private CustomPropertyLimiter limiter;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        limiter = new CustomPropertyLimiter(registry);
+        ReflectionTestUtils.setField(limiter, "maxKeys", 2);
+    }
+
+    private String toJson(String trackingId, String properties) throws Exception {
+        return limiter.toJson(trackingId, objectMapper.readTree(properties));
+    }
+
+    @Test
+    void dropsNewKeysOnceATrackingIdReachesTheCap() throws Exception {
+        assertEquals("{\"plan\":\"pro\",\"seats\":3}", toJson("t1", "{\"plan\":\"pro\",\"seats\":3}"));
+        // Known keys keep passing, nested values untouched
+        assertEquals("{\"seats\":5,\"plan\":{\"tier\":2}}",
+            toJson("t1", "{\"coupon\":\"X\",\"seats\":5,\"plan\":{\"tier\":2}}"));
+        // Another tracking_id has its own budget
+        assertEquals("{\"coupon\":\"X\"}", toJson("t2", "{\"coupon\":\"X\"}"));
+
+        assertEquals(2, limiter.keyCount("t1"));
+        assertEquals(1.0, registry.counter("custom.properties.dropped").count());
+    }
+
+    @Test
+    void storesMissingAndScalarPropertiesAsObjects() throws Exception {
+        assertEquals("{}", limiter.toJson("t1", null));
+        assertEquals("{}", toJson("t1", "null"));
+        assertEquals("{\"value\":\"checkout\"}", toJson("t1", "\"checkout\""));
+    }
+}
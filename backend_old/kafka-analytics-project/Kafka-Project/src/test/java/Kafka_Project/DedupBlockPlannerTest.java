@@ -0,0 +1,102 @@
+package Kafka_Project;
+
+import Kafka_Project.service.DedupBlockPlanner;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replay-stable block boundaries for deduplicated inserts, against a MockConsumer.
+ */
+public class DedupBlockPlannerTest {
+
+    private static final TopicPartition PAGE_0 = new TopicPartition("page_view", 0);
+    private static final TopicPartition PAGE_1 = new TopicPartition("page_view", 1);
+
+    private MockConsumer<String, byte[]> consumer;
+
+    @BeforeEach
+    void setup() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PAGE_0, PAGE_1));
+        consumer.updateBeginningOffsets(Map.of(PAGE_0, 0L, PAGE_1, 0L));
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> records(TopicPartition partition, long from, long to) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        for (long offset = from; offset <= to; offset++) {
+            records.add(new ConsumerRecord<>(partition.topic(), partition.partition(), offset, null, new byte[0]));
+        }
+        return records;
+    }
+
+    private OffsetAndMetadata committed(TopicPartition partition) {
+        return consumer.committed(Set.of(partition)).get(partition);
+    }
+
+    @Test
+    void onePlannedBlockPerPartition() {
+        List<ConsumerRecord<String, byte[]>> poll = new ArrayList<>(records(PAGE_0, 10, 14));
+        poll.addAll(records(PAGE_1, 3, 4));
+        DedupBlockPlanner planner = new DedupBlockPlanner(3);
+
+        List<DedupBlockPlanner.Block> blocks = planner.plan(poll, consumer);
+
+        assertEquals(2, blocks.size());
+        assertEquals("page_view:0:10-14", blocks.get(0).dedupToken());
+        assertEquals(5, blocks.get(0).records().size());
+        assertEquals("page_view:1:3-4", blocks.get(1).dedupToken());
+        // The plan is stored without moving the committed position
+        assertEquals(new OffsetAndMetadata(10, "dedup:10-14"), committed(PAGE_0));
+
+        planner.complete(blocks, consumer);
+
+        assertEquals(15, committed(PAGE_0).offset());
+        assertEquals("", committed(PAGE_0).metadata());
+        assertEquals(5, committed(PAGE_1).offset());
+    }
+
+    @Test
+    void redeliveryAfterCrashRebuildsTheSameBlock() {
+        new DedupBlockPlanner(3).plan(records(PAGE_0, 10, 14), consumer);
+        // Crash before the block was completed; a new instance gets a larger poll from offset 10
+        DedupBlockPlanner restarted = new DedupBlockPlanner(3);
+
+        List<DedupBlockPlanner.Block> blocks = restarted.plan(records(PAGE_0, 10, 30), consumer);
+
+        assertEquals(1, blocks.size());
+        assertEquals("page_view:0:10-14", blocks.get(0).dedupToken());
+        assertEquals(5, blocks.get(0).records().size());
+        assertEquals(15, consumer.position(PAGE_0), "Records after the planned block are redelivered");
+
+        restarted.complete(blocks, consumer);
+        List<DedupBlockPlanner.Block> next = restarted.plan(records(PAGE_0, 15, 30), consumer);
+        assertEquals("page_view:0:15-30", next.get(0).dedupToken());
+    }
+
+    @Test
+    void shortRedeliveryWaitsForThePlannedEnd() {
+        new DedupBlockPlanner(3).plan(records(PAGE_0, 10, 14), consumer);
+        DedupBlockPlanner restarted = new DedupBlockPlanner(1);
+
+        assertTrue(restarted.plan(records(PAGE_0, 10, 12), consumer).isEmpty());
+        assertEquals(10, consumer.position(PAGE_0));
+
+        // Past the deferral limit the short poll becomes a new block rather than stalling the partition
+        List<DedupBlockPlanner.Block> blocks = restarted.plan(records(PAGE_0, 10, 12), consumer);
+        assertEquals("page_view:0:10-12", blocks.get(0).dedupToken());
+        assertEquals(new OffsetAndMetadata(10, "dedup:10-12"), committed(PAGE_0));
+    }
+}
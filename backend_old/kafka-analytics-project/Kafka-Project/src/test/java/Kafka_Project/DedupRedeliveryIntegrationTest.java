@@ -0,0 +1,227 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.ClickHouseSink;
+import Kafka_Project.service.CustomPropertyLimiter;
+import Kafka_Project.service.EventRetryRouter;
+import Kafka_Project.service.JdbcClickHouseSink;
+import Kafka_Project.service.KafkaConsumerService;
+import Kafka_Project.service.RowBinaryClickHouseSink;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Kills a batch consumer after part of a poll has been inserted, restarts it with a different poll
+ * size and checks that every event ends up in ClickHouse exactly once.
+ *
+ * Requires a local ClickHouse with create_tables.v3.sql applied. Run with:
+ *   mvn test -Dtest=DedupRedeliveryIntegrationTest -Dclickhouse.available=true
+ */
+@EnabledIfSystemProperty(named = "clickhouse.available", matches = "true")
+@EmbeddedKafka(partitions = 3, topics = {"dedup_jdbc", "dedup_rowbinary"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DedupRedeliveryIntegrationTest {
+
+    private static final String URL = "jdbc:clickhouse://localhost:8123/default?use_binary_format=false";
+    private static final int EVENTS = 600;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void setup() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername("default");
+        dataSource.setPassword("root");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("ALTER TABLE " + ClickHouseTable.PAGE_EVENTS.getTableName() +
+            " MODIFY SETTING non_replicated_deduplication_window = 10000");
+    }
+
+    @AfterAll
+    void cleanup() {
+        jdbcTemplate.update("ALTER TABLE page_events DELETE WHERE tracking_id LIKE 'dedup-%'");
+        dataSource.close();
+    }
+
+    /**
+     * Passes inserts through until armed, then dies right after the next one, as a process killed
+     * after writing a block but before committing its offsets would.
+     */
+    private static final class KillAfterInsertSink implements ClickHouseSink {
+        private final ClickHouseSink delegate;
+        private final AtomicBoolean armed = new AtomicBoolean();
+
+        KillAfterInsertSink(ClickHouseSink delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getFormat() {
+            return delegate.getFormat();
+        }
+
+        @Override
+        public void insert(ClickHouseTable table, List<Object[]> rows) {
+            insert(table, rows, null);
+        }
+
+        @Override
+        public void insert(ClickHouseTable table, List<Object[]> rows, String dedupToken) {
+            delegate.insert(table, rows, dedupToken);
+            if (armed.getAndSet(false)) {
+                throw new IllegalStateException("killed after inserting into " + table.getTableName());
+            }
+        }
+    }
+
+    private KafkaConsumerService consumerService(ClickHouseSink sink) {
+        ClickHouseBatchWriter writer =
+            new ClickHouseBatchWriter(List.of(sink), new SimpleMeterRegistry(), new MockEnvironment());
+        ReflectionTestUtils.setField(writer, "defaultSink", sink.getFormat());
+        ReflectionTestUtils.setField(writer, "defaultMaxRows", 5000);
+        ReflectionTestUtils.setField(writer, "defaultMaxBytes", 4_194_304L);
+        ReflectionTestUtils.setField(writer, "defaultLingerMs", 1000L);
+        ReflectionTestUtils.invokeMethod(writer, "start");
+        // Retry disabled: a failed insert propagates and the poll is redelivered
+        KafkaConsumerService service = new KafkaConsumerService(writer, mock(EventRetryRouter.class), List.of(),
+            new CustomPropertyLimiter(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "serializationMode", "bytes");
+        return service;
+    }
+
+    private KafkaConsumer<String, byte[]> consumer(EmbeddedKafkaBroker broker, String topic, String group,
+                                                   int maxPollRecords) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(group, "false", broker);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props);
+        consumer.subscribe(List.of(topic));
+        return consumer;
+    }
+
+    private void produce(EmbeddedKafkaBroker broker, String topic, String trackingId) {
+        Map<String, Object> props = KafkaTestUtils.producerProps(broker);
+        try (KafkaProducer<String, byte[]> producer =
+                 new KafkaProducer<>(props, new StringSerializer(), new ByteArraySerializer())) {
+            for (int i = 0; i < EVENTS; i++) {
+                String event = "{\"timestamp\":\"2024-05-01T10:00:00Z\",\"event_type\":\"page_load\"," +
+                    "\"data\":{\"session_id\":\"s" + i + "\",\"user_id\":\"u" + i + "\",\"tracking_id\":\"" +
+                    trackingId + "\",\"url\":\"https://example.com/" + i + "\"}}";
+                producer.send(new ProducerRecord<>(topic, "s" + i, event.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    private static long committed(KafkaConsumer<String, byte[]> consumer) {
+        Set<TopicPartition> partitions = consumer.assignment();
+        long total = 0;
+        for (OffsetAndMetadata offset : consumer.committed(partitions).values()) {
+            total += offset == null ? 0 : offset.offset();
+        }
+        return total;
+    }
+
+    private long count(String table, String trackingId) {
+        return jdbcTemplate.queryForObject(
+            "SELECT count() FROM " + table + " WHERE tracking_id = ?", Long.class, trackingId);
+    }
+
+    @Test
+    void killedJdbcConsumerLeavesNoDuplicates(EmbeddedKafkaBroker broker) {
+        killAndRestart("jdbc", broker);
+    }
+
+    @Test
+    void killedRowBinaryConsumerLeavesNoDuplicates(EmbeddedKafkaBroker broker) {
+        killAndRestart("rowbinary", broker);
+    }
+
+    private void killAndRestart(String format, EmbeddedKafkaBroker broker) {
+        String trackingId = "dedup-" + format + "-" + System.currentTimeMillis();
+        String topic = "dedup_" + format;
+        String group = "dedup-test-" + trackingId;
+        produce(broker, topic, trackingId);
+        ClickHouseSink transport = "jdbc".equals(format)
+            ? new JdbcClickHouseSink(jdbcTemplate)
+            : new RowBinaryClickHouseSink(URL, "", "default", "root", 5000, 30000);
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        // First instance: one clean poll, then dies after the second poll was written
+        KillAfterInsertSink killing = new KillAfterInsertSink(transport);
+        KafkaConsumerService first = consumerService(killing);
+        try (KafkaConsumer<String, byte[]> consumer = consumer(broker, topic, group, 50)) {
+            List<ConsumerRecord<String, byte[]>> records = List.of();
+            for (int polls = 0; polls < 2; polls++) {
+                records = new ArrayList<>();
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (records.isEmpty() && System.currentTimeMillis() < deadline) {
+                    ConsumerRecords<String, byte[]> poll = consumer.poll(Duration.ofMillis(500));
+                    poll.forEach(records::add);
+                }
+                assertFalse(records.isEmpty(), "No records polled");
+                if (polls == 1) {
+                    killing.armed.set(true);
+                    List<ConsumerRecord<String, byte[]>> batch = records;
+                    assertThrows(IllegalStateException.class,
+                        () -> first.consumePageEventsBatch(batch, acknowledgment, consumer));
+                } else {
+                    first.consumePageEventsBatch(records, acknowledgment, consumer);
+                }
+            }
+            assertTrue(count("page_events", trackingId) > 0, "The second poll should be written but not committed");
+        }
+
+        // Restarted instance with a larger poll: the pending block is rebuilt and dropped by ClickHouse
+        KafkaConsumerService restarted = consumerService(transport);
+        try (KafkaConsumer<String, byte[]> consumer = consumer(broker, topic, group, 500)) {
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline && (consumer.assignment().isEmpty() || committed(consumer) < EVENTS)) {
+                List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+                consumer.poll(Duration.ofMillis(500)).forEach(records::add);
+                if (!records.isEmpty()) {
+                    restarted.consumePageEventsBatch(records, acknowledgment, consumer);
+                }
+            }
+            assertEquals(EVENTS, committed(consumer));
+        }
+
+        assertEquals(EVENTS, count("page_events", trackingId));
+    }
+}
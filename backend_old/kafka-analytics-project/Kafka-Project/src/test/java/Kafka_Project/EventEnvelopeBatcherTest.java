@@ -0,0 +1,99 @@
+package Kafka_Project;
+
+import Kafka_Project.service.EventEnvelopeBatcher;
+import Kafka_Project.service.EventHeaders;
+import Kafka_Project.service.KafkaProducerService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Packing of request events into multi-event records (no Kafka required).
+ */
+public class EventEnvelopeBatcherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private KafkaProducerService producerService;
+    private SimpleMeterRegistry registry;
+    private EventEnvelopeBatcher batcher;
+
+    @BeforeEach
+    void setup() {
+        producerService = mock(KafkaProducerService.class);
+        registry = new SimpleMeterRegistry();
+        batcher = new EventEnvelopeBatcher(producerService, registry);
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+    }
+
+    private static byte[] envelope(String eventType, int x) {
+        return ("{\"timestamp\":\"2024-05-01T10:00:00Z\",\"event_type\":\"" + eventType
+            + "\",\"client_ip\":\"10.0.0.1\",\"data\":{\"session_id\":\"s1\",\"x\":" + x + "}}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void packsEventsOfSameTypeAndKey() throws Exception {
+        Instant now = Instant.now();
+        EventEnvelopeBatcher.Batch batch = batcher.begin();
+        batch.add(envelope("mouse_move", 1), "mouse_move", "s1", "t1", "s1", now);
+        batch.add(envelope("page_view", 0), "page_view", "s1", "t1", "s1", now);
+        batch.add(envelope("mouse_move", 2), "mouse_move", "s1", "t1", "s1", now);
+        batch.add(envelope("mouse_move", 3), "mouse_move", "s1", "t1", "s1", now);
+        verifyNoInteractions(producerService);
+
+        batch.flush();
+
+        ArgumentCaptor<byte[]> value = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Headers> headers = ArgumentCaptor.forClass(Headers.class);
+        verify(producerService).sendEvent(value.capture(), eq("mouse_move"), eq("s1"), headers.capture());
+        JsonNode events = objectMapper.readTree(value.getValue()).get("events");
+        assertEquals(3, events.size());
+        assertEquals(objectMapper.readTree(envelope("mouse_move", 2)), events.get(1));
+        assertEquals("batch", EventHeaders.get(headers.getValue(), EventHeaders.ENVELOPE));
+        assertEquals("3", EventHeaders.get(headers.getValue(), EventHeaders.EVENT_COUNT));
+        assertEquals("mouse_move", EventHeaders.get(headers.getValue(), EventHeaders.EVENT_TYPE));
+
+        // A lone event stays a plain single-event record
+        verify(producerService).sendEvent(aryEq(envelope("page_view", 0)), eq("page_view"), eq("s1"), any());
+        assertEquals(3.0, registry.counter("ingest.envelope.events").count());
+        assertEquals(1.0, registry.counter("ingest.envelope.records").count());
+        assertTrue(registry.counter("ingest.envelope.bytes.saved").count() > 0);
+    }
+
+    @Test
+    void splitsAtMaxEvents() {
+        ReflectionTestUtils.setField(batcher, "maxEvents", 2);
+        EventEnvelopeBatcher.Batch batch = batcher.begin();
+        for (int i = 0; i < 5; i++) {
+            batch.add(envelope("scroll_depth", i), "scroll_depth", "s1", "t1", "s1", Instant.now());
+        }
+        batch.flush();
+
+        verify(producerService, times(3)).sendEvent(any(), eq("scroll_depth"), eq("s1"), any());
+        assertEquals(2.0, registry.counter("ingest.envelope.records").count());
+    }
+
+    @Test
+    void sendsImmediatelyWhenDisabled() {
+        ReflectionTestUtils.setField(batcher, "enabled", false);
+        EventEnvelopeBatcher.Batch batch = batcher.begin();
+
+        batch.add(envelope("mouse_move", 1), "mouse_move", "s1", "t1", "s1", Instant.now());
+
+        verify(producerService).sendEvent(any(), eq("mouse_move"), eq("s1"), any());
+    }
+}
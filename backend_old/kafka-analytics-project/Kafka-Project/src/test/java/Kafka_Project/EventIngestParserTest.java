@@ -0,0 +1,147 @@
+package Kafka_Project;
+
+import Kafka_Project.service.EventIngestParser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The streaming ingest parser must produce the same envelopes as the old tree-model normalization.
+ */
+public class EventIngestParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventIngestParser parser = new EventIngestParser(objectMapper, true);
+    private final EventIngestParser reencodingParser = new EventIngestParser(objectMapper, false);
+    private final TreeModelIngest treeModel = new TreeModelIngest(objectMapper);
+
+    private List<EventIngestParser.IngestEvent> readAll(String body) throws IOException {
+        return readAll(parser, body);
+    }
+
+    private List<EventIngestParser.IngestEvent> readAll(EventIngestParser parser, String body) throws IOException {
+        List<EventIngestParser.IngestEvent> events = new ArrayList<>();
+        try (EventIngestParser.EventStream stream = parser.open(body.getBytes(StandardCharsets.UTF_8), "10.0.0.1")) {
+            for (EventIngestParser.IngestEvent event = stream.next(); event != null; event = stream.next()) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private void assertSameAsTreeModel(String body) throws IOException {
+        assertSameAsTreeModel(parser, body);
+        assertSameAsTreeModel(reencodingParser, body);
+    }
+
+    private void assertSameAsTreeModel(EventIngestParser parser, String body) throws IOException {
+        List<EventIngestParser.IngestEvent> streamed = readAll(parser, body);
+        List<byte[]> expected = treeModel.normalizeAll(body.getBytes(StandardCharsets.UTF_8), "10.0.0.1");
+        JsonNode events = objectMapper.readTree(body);
+
+        assertEquals(expected.size(), streamed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ObjectNode want = (ObjectNode) objectMapper.readTree(expected.get(i));
+            ObjectNode got = (ObjectNode) objectMapper.readTree(streamed.get(i).payload());
+            assertNotNull(got.remove("timestamp"));
+            want.remove("timestamp");
+            assertEquals(want, got, "Envelope " + i);
+
+            JsonNode event = events.isArray() ? events.get(i) : events;
+            assertEquals(treeModel.getEventType(event), streamed.get(i).eventType());
+            assertEquals(treeModel.extractTrackingId(event), streamed.get(i).trackingId());
+        }
+    }
+
+    @Test
+    void flatTrackerEvent() throws IOException {
+        assertSameAsTreeModel("""
+            {"type":"page_load","ts":1700000000,"session_id":"s1","tracking_id":"t1",
+             "url":"https://example.com/?q=\\u00e9","viewport":{"w":1280,"h":720},"tags":[1,2.5,null,true],
+             "metadata":{"sdk":"1.2"}}
+            """);
+    }
+
+    @Test
+    void nestedEventsInArray() throws IOException {
+        assertSameAsTreeModel("""
+            [
+              {"event_type":"page_view","data":{"session_id":"s1","trackingId":"t-camel","page_url":"/a"}},
+              {"event_type":"periodic_events","timestamp":"x","data":{"tracking_id":"t2","events":[{"type":"mouse_move","x":1}]}},
+              {"event_type":"link_click","tracking_id":"top","data":{"tracking_id":"inner"},"metadata":[1,2]},
+              {"type":"custom_event","event_type":"button_click","data":null}
+            ]
+            """);
+    }
+
+    @Test
+    void eventsWithoutTypeOrTrackingId() throws IOException {
+        assertSameAsTreeModel("""
+            [{"session_id":"s1"}, {"type":{"nested":true},"tracking_id":42}]
+            """);
+    }
+
+    @Test
+    void nonObjectArrayElementsAreUnknown() throws IOException {
+        List<EventIngestParser.IngestEvent> events = readAll("[1, \"x\", [2], {\"type\":\"page_view\"}]");
+
+        assertEquals(4, events.size());
+        assertEquals("unknown", events.get(2).eventType());
+        assertNull(events.get(2).payload());
+        assertEquals("page_view", events.get(3).eventType());
+    }
+
+    @Test
+    void nestedDataIsPassedThroughByteForByte() throws IOException {
+        String data = "{ \"tracking_id\" : \"t1\", \"price\": 1.50, \"name\":\"caf\\u00e9 \u00e9\", \"events\":[ {\"x\":1} ] }";
+        String body = "[{\"event_type\":\"periodic_events\",\"data\":" + data + "}]";
+
+        List<EventIngestParser.IngestEvent> events = readAll(body);
+
+        String payload = new String(events.get(0).payload(), StandardCharsets.UTF_8);
+        assertTrue(payload.contains("\"data\":" + data), payload);
+        assertEquals("t1", events.get(0).trackingId());
+        assertSameAsTreeModel(body);
+    }
+
+    @Test
+    void sessionIdFromEventOrData() throws IOException {
+        for (EventIngestParser p : List.of(parser, reencodingParser)) {
+            List<EventIngestParser.IngestEvent> events = readAll(p, """
+                [
+                  {"type":"page_view","session_id":"flat","tracking_id":"t1"},
+                  {"event_type":"periodic_events","data":{"tracking_id":"t1","session_id":"nested","events":[]}},
+                  {"event_type":"page_view","data":{"sessionId":"camel"}},
+                  {"event_type":"page_view","data":{"tracking_id":"t1"}}
+                ]
+                """);
+
+            assertEquals("flat", events.get(0).sessionId());
+            assertEquals("nested", events.get(1).sessionId());
+            assertEquals("camel", events.get(2).sessionId());
+            assertNull(events.get(3).sessionId());
+        }
+    }
+
+    @Test
+    void malformedBodyDoesNotCorruptLaterRequests() throws IOException {
+        assertThrows(IOException.class, () -> readAll("[{\"type\":\"page_view\",\"data\":{\"a\":[1,"));
+
+        assertSameAsTreeModel("{\"type\":\"page_view\",\"tracking_id\":\"t1\",\"metadata\":{\"v\":1}}");
+    }
+
+    @Test
+    void rejectsScalarBody() {
+        assertThrows(IllegalArgumentException.class,
+            () -> parser.open("\"hello\"".getBytes(StandardCharsets.UTF_8), "10.0.0.1"));
+    }
+}
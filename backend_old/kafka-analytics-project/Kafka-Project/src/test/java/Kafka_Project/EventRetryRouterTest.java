@@ -0,0 +1,101 @@
+package Kafka_Project;
+
+import Kafka_Project.service.EventHeaders;
+import Kafka_Project.service.EventRetryRouter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Retry and dead-letter topic selection and failure headers (no Kafka required).
+ */
+public class EventRetryRouterTest {
+
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private EventRetryRouter router;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        router = new EventRetryRouter(kafkaTemplate, new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, byte[]> route(ConsumerRecord<String, byte[]> record, EventRetryRouter.Stage stage) {
+        clearInvocations(kafkaTemplate);
+        router.routeAll(List.of(new EventRetryRouter.Failure(record, stage, new IllegalStateException("boom"))));
+        ArgumentCaptor<ProducerRecord<String, byte[]>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(sent.capture());
+        return sent.getValue();
+    }
+
+    private static ConsumerRecord<String, byte[]> asConsumed(ProducerRecord<String, byte[]> sent, long offset) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(sent.topic(), 0, offset, sent.key(), sent.value());
+        sent.headers().forEach(record.headers()::add);
+        return record;
+    }
+
+    @Test
+    void retriesWithGrowingDelayThenDeadLetters() {
+        ConsumerRecord<String, byte[]> original = new ConsumerRecord<>("mouse_move", 2, 42L, "s1", new byte[] {1});
+        EventHeaders.forEvent("mouse_move", "t1", "s1", Instant.now()).forEach(original.headers()::add);
+
+        ProducerRecord<String, byte[]> sent = route(original, EventRetryRouter.Stage.INSERT);
+        assertEquals("events.highvolume.retry-0", sent.topic());
+        assertEquals("s1", sent.key());
+        assertEquals("mouse_move", EventHeaders.get(sent.headers(), EventHeaders.EVENT_TYPE));
+        assertEquals("42", EventHeaders.get(sent.headers(), EventHeaders.ORIGINAL_OFFSET));
+        assertEquals("insert", EventHeaders.get(sent.headers(), EventHeaders.FAILURE_STAGE));
+        assertEquals("IllegalStateException: boom", EventHeaders.get(sent.headers(), EventHeaders.FAILURE_REASON));
+        assertTrue(EventHeaders.getLong(sent.headers(), EventHeaders.RETRY_DUE, 0) > System.currentTimeMillis());
+
+        for (int attempt = 1; attempt < 4; attempt++) {
+            sent = route(asConsumed(sent, attempt), EventRetryRouter.Stage.HANDLER);
+            assertEquals("events.highvolume.retry-" + attempt, sent.topic());
+            assertEquals(String.valueOf(attempt), EventHeaders.get(sent.headers(), EventHeaders.RETRY_ATTEMPT));
+            // Retry headers are replaced on each hop, not accumulated
+            assertEquals(1, StreamSupport.stream(
+                sent.headers().headers(EventHeaders.RETRY_ATTEMPT).spliterator(), false).count());
+        }
+        sent = route(asConsumed(sent, 9), EventRetryRouter.Stage.HANDLER);
+        assertEquals("events.highvolume.dlt", sent.topic());
+        assertEquals("mouse_move", EventHeaders.get(sent.headers(), EventHeaders.ORIGINAL_TOPIC));
+        assertEquals("42", EventHeaders.get(sent.headers(), EventHeaders.ORIGINAL_OFFSET));
+        assertNull(sent.headers().lastHeader(EventHeaders.RETRY_DUE));
+        assertTrue(router.delayMs(1) > router.delayMs(0));
+    }
+
+    @Test
+    void unparseableRecordsGoStraightToDeadLetter() {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("events.commerce", 0, 7L, null, new byte[] {'{'});
+
+        assertEquals("events.commerce.dlt", route(record, EventRetryRouter.Stage.PARSE).topic());
+    }
+
+    @Test
+    void failedPublishIsReported() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("down")));
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("page_view", 0, 1L, null, new byte[0]);
+
+        assertThrows(IllegalStateException.class, () -> router.routeAll(List.of(
+            new EventRetryRouter.Failure(record, EventRetryRouter.Stage.HANDLER, new RuntimeException("x")))));
+    }
+}
@@ -0,0 +1,197 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.service.CountMinSketch;
+import Kafka_Project.service.HeavyHitterTracker;
+import Kafka_Project.service.HeavyHitterTracker.Dimension;
+import Kafka_Project.service.HeavyHitterTracker.Window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the Count-Min Sketch and the top-K tracker built on it.
+ */
+public class HeavyHitterTrackerTest {
+
+    private static final long HOUR_MS = 3_600_000L;
+    // 2024-05-01T10:00:00Z, the start of a window
+    private static final long TEN_AM = 1_714_557_600_000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HeavyHitterTracker tracker = new HeavyHitterTracker(mock(RedisService.class), new SimpleMeterRegistry());
+
+    private JsonNode pageView(String url) throws Exception {
+        return objectMapper.readTree("{\"event_type\":\"page_view\",\"data\":{\"tracking_id\":\"t1\",\"page_url\":\"" +
+            url + "\"}}");
+    }
+
+    @Test
+    void sketchNeverUnderestimatesAndMerges() {
+        CountMinSketch first = new CountMinSketch(4, 256);
+        CountMinSketch second = new CountMinSketch(4, 256);
+        for (int i = 0; i < 5000; i++) {
+            first.add("item-" + (i % 500));
+        }
+        second.add("item-7");
+
+        for (int i = 0; i < 500; i++) {
+            long estimate = first.estimate("item-" + i);
+            assertTrue(estimate >= 10 && estimate <= 10 + first.errorBound(), "item-" + i + " = " + estimate);
+        }
+        first.merge(second);
+        assertTrue(first.estimate("item-7") >= 11);
+        assertEquals(5001, first.total());
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new CountMinSketch(4, 128)));
+    }
+
+    @Test
+    void tracksHeavyHittersAmongManyRareItems() throws Exception {
+        for (int i = 0; i < 20_000; i++) {
+            // 3 hot pages among thousands seen once or twice
+            String url = i % 10 == 0 ? "/pricing" : i % 10 == 1 ? "/docs" : i % 20 == 2 ? "/blog" : "/p/" + (i % 9000);
+            tracker.record(pageView(url), TEN_AM + i);
+        }
+
+        List<HeavyHitterTracker.Item> top =
+            tracker.top("t1", Dimension.PAGE_URL, Window.CURRENT, 3, TEN_AM + 30_000).items();
+
+        assertEquals(Set.of("/docs", "/pricing"), Set.of(top.get(0).value(), top.get(1).value()));
+        assertEquals("/blog", top.get(2).value());
+        assertTrue(top.get(0).count() >= 2000);
+        assertTrue(tracker.top("t1", Dimension.ELEMENT_ID, Window.CURRENT, 20, TEN_AM).items().isEmpty());
+    }
+
+    @Test
+    void windowsResetAndMerge() throws Exception {
+        tracker.record(pageView("/old"), TEN_AM + 1000);
+        tracker.record(pageView("/old"), TEN_AM + 2000);
+        tracker.record(pageView("/new"), TEN_AM + HOUR_MS + 1000);
+
+        long now = TEN_AM + HOUR_MS + 5000;
+        assertEquals(List.of(new HeavyHitterTracker.Item("/new", 1)),
+            tracker.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, now).items());
+        assertEquals(List.of(new HeavyHitterTracker.Item("/old", 2)),
+            tracker.top("t1", Dimension.PAGE_URL, Window.PREVIOUS, 20, now).items());
+        HeavyHitterTracker.TopList merged = tracker.top("t1", Dimension.PAGE_URL, Window.MERGED, 20, now);
+        assertEquals(List.of(new HeavyHitterTracker.Item("/old", 2), new HeavyHitterTracker.Item("/new", 1)),
+            merged.items());
+        assertEquals(3, merged.total());
+
+        // Two windows later nothing is left
+        assertTrue(tracker.top("t1", Dimension.PAGE_URL, Window.MERGED, 20, now + 2 * HOUR_MS).items().isEmpty());
+    }
+
+    @Test
+    void extractsElementsLinksAndProducts() throws Exception {
+        tracker.record(objectMapper.readTree("{\"event_type\":\"periodic_events\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"mouseClicks\":[{\"element_id\":\"buy\"},{\"element_id\":\"buy\"},{\"element_id\":null}]," +
+            "\"linkClicks\":[{\"url\":\"https://example.com/a\"}]}}"), TEN_AM);
+        tracker.record(objectMapper.readTree("{\"event_type\":\"cart_add\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"product_id\":\"sku-1\"}}"), TEN_AM);
+
+        assertEquals(List.of(new HeavyHitterTracker.Item("buy", 2)),
+            tracker.top("t1", Dimension.ELEMENT_ID, Window.CURRENT, 20, TEN_AM).items());
+        assertEquals("https://example.com/a",
+            tracker.top("t1", Dimension.LINK_URL, Window.CURRENT, 20, TEN_AM).items().get(0).value());
+        assertEquals("sku-1", tracker.top("t1", Dimension.PRODUCT_ID, Window.CURRENT, 20, TEN_AM).items().get(0).value());
+    }
+
+    @Test
+    void tenantLimitDropsNewTrackingIds() throws Exception {
+        ReflectionTestUtils.setField(tracker, "maxTenants", 1);
+        tracker.record(pageView("/a"), TEN_AM);
+        tracker.record(objectMapper.readTree("{\"event_type\":\"page_view\",\"data\":{\"tracking_id\":\"t2\"," +
+            "\"page_url\":\"/b\"}}"), TEN_AM);
+
+        assertEquals(1, tracker.trackedIds());
+        assertTrue(tracker.top("t2", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items().isEmpty());
+    }
+
+    @Test
+    void countsPageLoadAndPageViewOfOnePageOnce() throws Exception {
+        String load = "{\"event_type\":\"page_load\",\"data\":{\"tracking_id\":\"t1\",\"session_id\":\"%s\",\"url\":\"%s\"}}";
+        String view = load.replace("page_load", "page_view");
+        // s1 sends both for /a, then reloads /a; s2 sends page_load only
+        for (String event : List.of(load.formatted("s1", "/a"), view.formatted("s1", "/a"),
+                load.formatted("s1", "/a"), view.formatted("s1", "/a"), view.formatted("s1", "/b"),
+                load.formatted("s2", "/a"), load.formatted("s2", "/b"))) {
+            tracker.record(objectMapper.readTree(event), TEN_AM);
+        }
+
+        assertEquals(List.of(new HeavyHitterTracker.Item("/a", 3), new HeavyHitterTracker.Item("/b", 2)),
+            tracker.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items());
+    }
+
+    @Test
+    void pageSessionsAreCappedAcrossTrackingIds() throws Exception {
+        ReflectionTestUtils.setField(tracker, "pageSessions", 2);
+        String event = "{\"event_type\":\"%s\",\"data\":{\"tracking_id\":\"%s\",\"session_id\":\"s1\",\"url\":\"/a\"}}";
+        tracker.record(objectMapper.readTree(event.formatted("page_load", "t1")), TEN_AM);
+        tracker.record(objectMapper.readTree(event.formatted("page_load", "t2")), TEN_AM);
+        tracker.record(objectMapper.readTree(event.formatted("page_load", "t3")), TEN_AM);
+        // The page_load of t1 was dropped to make room, so its page_view counts again
+        tracker.record(objectMapper.readTree(event.formatted("page_view", "t1")), TEN_AM);
+        tracker.record(objectMapper.readTree(event.formatted("page_view", "t3")), TEN_AM);
+
+        assertEquals(2, tracker.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items().get(0).count());
+        assertEquals(1, tracker.top("t3", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items().get(0).count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nodesMergeTheirRankingsThroughRedis() throws Exception {
+        // An in-memory stand-in for the published hashes
+        Map<String, Map<String, String>> hashes = new HashMap<>();
+        RedisService redis = mock(RedisService.class);
+        doAnswer(inv -> {
+            ((Map<String, Map<String, String>>) inv.getArgument(0))
+                .forEach((key, fields) -> hashes.computeIfAbsent(key, k -> new HashMap<>()).putAll(fields));
+            return null;
+        }).when(redis).putHashes(anyMap(), anyInt());
+        when(redis.getHash(anyString())).thenAnswer(inv -> hashes.getOrDefault(inv.getArgument(0), Map.of()));
+        HeavyHitterTracker first = new HeavyHitterTracker(redis, new SimpleMeterRegistry());
+        HeavyHitterTracker second = new HeavyHitterTracker(redis, new SimpleMeterRegistry());
+
+        first.record(pageView("/old"), TEN_AM - 1);
+        first.record(pageView("/a"), TEN_AM);
+        first.record(pageView("/a"), TEN_AM);
+        second.record(pageView("/b"), TEN_AM);
+        second.record(pageView("/a"), TEN_AM);
+        second.record(pageView("/b"), TEN_AM);
+        second.record(pageView("/b"), TEN_AM);
+        first.publish(TEN_AM);
+        second.publish(TEN_AM);
+
+        // Either node serves the counts of both, and its own unpublished ones
+        first.record(pageView("/a"), TEN_AM);
+        assertEquals(List.of(new HeavyHitterTracker.Item("/a", 4), new HeavyHitterTracker.Item("/b", 3)),
+            first.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items());
+        assertEquals(List.of(new HeavyHitterTracker.Item("/a", 3), new HeavyHitterTracker.Item("/b", 3),
+                new HeavyHitterTracker.Item("/old", 1)),
+            second.top("t1", Dimension.PAGE_URL, Window.MERGED, 20, TEN_AM).items());
+        assertEquals(6, second.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).total());
+
+        // Only changed rankings are published again
+        clearInvocations(redis);
+        second.publish(TEN_AM);
+        verify(redis).putHashes(eq(Map.of()), anyInt());
+
+        // Without Redis a node falls back to its own counts
+        when(redis.getHash(anyString())).thenThrow(new IllegalStateException("Redis down"));
+        assertEquals(List.of(new HeavyHitterTracker.Item("/b", 3), new HeavyHitterTracker.Item("/a", 1)),
+            second.top("t1", Dimension.PAGE_URL, Window.CURRENT, 20, TEN_AM).items());
+    }
+}
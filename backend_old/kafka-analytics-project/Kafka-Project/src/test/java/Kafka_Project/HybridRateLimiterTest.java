@@ -0,0 +1,141 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.HybridRateLimiter;
+import Kafka_Project.Redis.RateLimiter;
+import Kafka_Project.Redis.RedisService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the hybrid (local + reconciled) rate limiter (no Redis required).
+ */
+public class HybridRateLimiterTest {
+
+    private RedisService redisService;
+    private HybridRateLimiter limiter;
+
+    @BeforeEach
+    void setup() {
+        redisService = mock(RedisService.class);
+        limiter = new HybridRateLimiter(redisService);
+        ReflectionTestUtils.setField(limiter, "windowSeconds", 3600);
+        ReflectionTestUtils.setField(limiter, "maxError", 0.1);
+    }
+
+    @Test
+    void limitsLocallyWithoutRedis() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(List.of("k"), List.of(10L)).allowed());
+        }
+        RateLimiter.Decision denied = limiter.tryAcquire(List.of("k"), List.of(10L));
+
+        assertFalse(denied.allowed());
+        assertEquals(0, denied.remaining());
+        assertTrue(denied.retryAfterSeconds() > 0);
+        verifyNoInteractions(redisService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void globalTotalsFromOtherNodesCountAgainstBudget() {
+        assertTrue(limiter.tryAcquire(List.of("k"), List.of(10L)).allowed());
+        // Other nodes already used 9 of the budget; Redis returns our 1 plus theirs
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenAnswer(inv -> {
+            Map<String, Long> deltas = inv.getArgument(0);
+            return Map.of(deltas.keySet().iterator().next(), 10L);
+        });
+
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+
+        assertFalse(limiter.tryAcquire(List.of("k"), List.of(10L)).allowed());
+    }
+
+    @Test
+    void failedSyncKeepsLocalCounts() {
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(List.of("k"), List.of(10L));
+        }
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenThrow(new RuntimeException("redis down"));
+
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+
+        assertEquals(4, limiter.tryAcquire(List.of("k"), List.of(10L)).remaining());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void windowRollKeepsTheUnsyncedCountOfTheFinishedWindow() {
+        long window = System.currentTimeMillis() / 3_600_000L;
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(List.of("k"), List.of(100L));
+        }
+        // The first request of the next window replaces the counter before a sync ran
+        ReflectionTestUtils.invokeMethod(limiter, "counter", "k", window + 1, 100L);
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenReturn(Map.of());
+
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+
+        ArgumentCaptor<Map<String, Long>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(redisService).incrementCounters(deltas.capture(), anyInt());
+        assertEquals(Map.of("k:w" + window, 3L), deltas.getValue());
+
+        // Flushed once only
+        reset(redisService);
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+        verify(redisService, never()).incrementCounters(anyMap(), anyInt());
+    }
+
+    @Test
+    void idleKeysAreOnlyReadBackEveryRefreshInterval() {
+        ReflectionTestUtils.setField(limiter, "refreshIntervalMs", 3_600_000L);
+        String key = "k:w" + System.currentTimeMillis() / 3_600_000L;
+        limiter.tryAcquire(List.of("k"), List.of(100L));
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenReturn(Map.of(key, 1L));
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+
+        // No new requests: nothing is pushed, and the total was read just now
+        reset(redisService);
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+        verifyNoInteractions(redisService);
+
+        // Once the interval is over, other nodes' requests are read back with one MGET
+        ReflectionTestUtils.setField(limiter, "refreshIntervalMs", 0L);
+        when(redisService.getCounters(List.of(key))).thenReturn(List.of(100L));
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+        verify(redisService, never()).incrementCounters(anyMap(), anyInt());
+        assertFalse(limiter.tryAcquire(List.of("k"), List.of(100L)).allowed());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedPushOfAReplacedCounterIsKeptForTheNextSync() {
+        long window = System.currentTimeMillis() / 3_600_000L;
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(List.of("k"), List.of(100L));
+        }
+        // The window ends while the push is in flight, and the push fails
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenAnswer(inv -> {
+            ReflectionTestUtils.invokeMethod(limiter, "counter", "k", window + 1, 100L);
+            throw new RuntimeException("redis down");
+        });
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+
+        reset(redisService);
+        when(redisService.incrementCounters(anyMap(), anyInt())).thenReturn(Map.of());
+        ReflectionTestUtils.invokeMethod(limiter, "sync");
+        ArgumentCaptor<Map<String, Long>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(redisService).incrementCounters(deltas.capture(), anyInt());
+        assertEquals(Map.of("k:w" + window, 3L), deltas.getValue());
+    }
+}
@@ -0,0 +1,125 @@
+package Kafka_Project;
+
+import Kafka_Project.service.EventIngestParser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark: tree-model normalization (the former ProducerController path) vs. the streaming
+ * EventIngestParser, with nested data passed through as raw bytes (streaming) or re-encoded
+ * token by token (streamingReencode), per request body. Allocation per operation is reported by
+ * the GC profiler as gc.alloc.rate.norm (divide by the events per payload for bytes per event).
+ *
+ * Run with:
+ *   mvn test -Dtest=IngestJsonBenchmark -Dbenchmarks=true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestJsonBenchmark {
+
+    private static final String CLIENT_IP = "203.0.113.7";
+
+    // single: one flat tracker event; batch: 20 nested events; periodic: one nested event with 200 sub-events
+    @Param({"single", "batch", "periodic"})
+    public String payload;
+
+    private byte[] body;
+    private TreeModelIngest treeModel;
+    private EventIngestParser streaming;
+    private EventIngestParser streamingReencode;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        treeModel = new TreeModelIngest(objectMapper);
+        streaming = new EventIngestParser(objectMapper, true);
+        streamingReencode = new EventIngestParser(objectMapper, false);
+        body = switch (payload) {
+            case "single" -> flatEvent(0).getBytes(StandardCharsets.UTF_8);
+            case "batch" -> batch(20).getBytes(StandardCharsets.UTF_8);
+            default -> periodic(200).getBytes(StandardCharsets.UTF_8);
+        };
+    }
+
+    @Benchmark
+    public void treeModel(Blackhole blackhole) throws IOException {
+        for (byte[] message : treeModel.normalizeAll(body, CLIENT_IP)) {
+            blackhole.consume(message);
+        }
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        drain(streaming, blackhole);
+    }
+
+    @Benchmark
+    public void streamingReencode(Blackhole blackhole) throws IOException {
+        drain(streamingReencode, blackhole);
+    }
+
+    private void drain(EventIngestParser parser, Blackhole blackhole) throws IOException {
+        try (EventIngestParser.EventStream events = parser.open(body, CLIENT_IP)) {
+            for (EventIngestParser.IngestEvent event = events.next(); event != null; event = events.next()) {
+                blackhole.consume(event.payload());
+            }
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void runBenchmarks() throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(IngestJsonBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+    private static String flatEvent(int i) {
+        return "{\"type\":\"page_view\",\"ts\":1700000000000,\"session_id\":\"sess-" + i + "\"," +
+            "\"user_id\":\"user-42\",\"tracking_id\":\"track-abc\",\"url\":\"https://example.com/products/" + i + "\"," +
+            "\"title\":\"Product page\",\"referrer\":\"https://google.com/\",\"screen\":{\"w\":1920,\"h\":1080}}";
+    }
+
+    private static String batch(int events) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"event_type\":\"page_view\",\"data\":").append(flatEvent(i)).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String periodic(int subEvents) {
+        StringBuilder json = new StringBuilder("{\"event_type\":\"periodic_events\",\"data\":{")
+            .append("\"session_id\":\"sess-1\",\"user_id\":\"user-42\",\"tracking_id\":\"track-abc\",\"events\":[");
+        for (int i = 0; i < subEvents; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"mouse_move\",\"x\":").append(i % 1920).append(",\"y\":").append(i % 1080)
+                .append(",\"page_url\":\"https://example.com/products/1\",\"timestamp\":\"2024-01-01T00:00:00Z\"}");
+        }
+        return json.append("]}}").toString();
+    }
+}
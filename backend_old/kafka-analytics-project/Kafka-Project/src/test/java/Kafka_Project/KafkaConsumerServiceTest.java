@@ -0,0 +1,312 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.ClickHouseRowBatch;
+import Kafka_Project.service.CustomPropertyLimiter;
+import Kafka_Project.service.EventHeaderFilter;
+import Kafka_Project.service.EventHeaders;
+import Kafka_Project.service.EventRetryRouter;
+import Kafka_Project.service.KafkaConsumerService;
+import Kafka_Project.service.Sessionizer;
+import Kafka_Project.types.ClickHouseTable;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the batch listeners of KafkaConsumerService (no Kafka or ClickHouse required).
+ */
+public class KafkaConsumerServiceTest {
+
+    private static final String PAGE_VIEW = """
+        {"timestamp":"2024-05-01T10:00:00Z","event_type":"page_view","client_ip":"10.0.0.1",
+         "data":{"session_id":"s1","user_id":"u1","tracking_id":"t1","url":"https://example.com/café","title":"Café"}}
+        """;
+
+    private ClickHouseBatchWriter batchWriter;
+    private EventRetryRouter retryRouter;
+    private Sessionizer sessionizer;
+    private KafkaConsumerService consumerService;
+
+    @BeforeEach
+    void setup() {
+        batchWriter = mock(ClickHouseBatchWriter.class);
+        retryRouter = mock(EventRetryRouter.class);
+        sessionizer = mock(Sessionizer.class);
+        consumerService = new KafkaConsumerService(batchWriter, retryRouter, List.of(sessionizer),
+            new CustomPropertyLimiter(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(consumerService, "serializationMode", "bytes");
+    }
+
+    private Object[] consumePageView() {
+        ConsumerRecord<String, byte[]> record =
+            new ConsumerRecord<>("page_view", 0, 42L, null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        consumerService.consumePageEventsBatch(List.of(record), acknowledgment, null);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        verify(acknowledgment).acknowledge();
+        List<Object[]> rows = batch.getValue().getRows().get(ClickHouseTable.PAGE_EVENTS);
+        assertEquals(1, rows.size());
+        return rows.get(0);
+    }
+
+    @Test
+    void parsesRecordBytesDirectly() {
+        Object[] row = consumePageView();
+
+        assertEquals("s1", row[1]);
+        assertEquals("t1", row[3]);
+        assertEquals("https://example.com/café", row[5]);
+        assertEquals("Café", row[6]);
+    }
+
+    @Test
+    void stringModeProducesSameRow() {
+        Object[] fromBytes = consumePageView();
+        reset(batchWriter);
+        ReflectionTestUtils.setField(consumerService, "serializationMode", "string");
+
+        assertArrayEquals(fromBytes, consumePageView());
+    }
+
+    @Test
+    void unpacksMultiEventRecord() {
+        String packed = "{\"events\":[" + PAGE_VIEW.strip() + "," + PAGE_VIEW.strip().replace("\"s1\"", "\"s2\"") + "]}";
+        ConsumerRecord<String, byte[]> record =
+            new ConsumerRecord<>("page_view", 0, 7L, "s1", packed.getBytes(StandardCharsets.UTF_8));
+
+        consumerService.consumePageEventsBatch(List.of(record), mock(Acknowledgment.class), null);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        List<Object[]> rows = batch.getValue().getRows().get(ClickHouseTable.PAGE_EVENTS);
+        assertEquals(2, rows.size());
+        assertEquals("s1", rows.get(0)[1]);
+        assertEquals("s2", rows.get(1)[1]);
+        verify(sessionizer, times(2)).observe(any(), any());
+    }
+
+    @Test
+    void consolidatedTopicRoutesByHeaderAndSkipsDualCopies() {
+        byte[] value = PAGE_VIEW.getBytes(StandardCharsets.UTF_8);
+        ConsumerRecord<String, byte[]> routed = new ConsumerRecord<>("events.page", 0, 1L, "s1", value);
+        EventHeaders.forEvent("page_view", "t1", "s1", Instant.now()).forEach(routed.headers()::add);
+        ConsumerRecord<String, byte[]> dualCopy = new ConsumerRecord<>("events.page", 0, 2L, "s1", value);
+        EventHeaders.forEvent("page_view", "t1", "s1", Instant.now()).forEach(dualCopy.headers()::add);
+        dualCopy.headers().add(EventHeaders.DUAL_PUBLISH, "1".getBytes(StandardCharsets.UTF_8));
+
+        consumerService.consumeConsolidatedPageEventsBatch(List.of(routed, dualCopy), mock(Acknowledgment.class), null);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        List<Object[]> rows = batch.getValue().getRows().get(ClickHouseTable.PAGE_EVENTS);
+        assertEquals(1, rows.size());
+        assertEquals("page_view", rows.get(0)[4]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedRecordsGoToRetryWithoutBlockingTheBatch() {
+        ConsumerRecord<String, byte[]> good =
+            new ConsumerRecord<>("page_view", 0, 1L, null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        ConsumerRecord<String, byte[]> poison =
+            new ConsumerRecord<>("page_view", 0, 2L, null, "{not json".getBytes(StandardCharsets.UTF_8));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        consumerService.consumePageEventsBatch(List.of(good, poison), acknowledgment, null);
+
+        ArgumentCaptor<List<EventRetryRouter.Failure>> failures = ArgumentCaptor.forClass(List.class);
+        verify(retryRouter).routeAll(failures.capture());
+        assertEquals(1, failures.getValue().size());
+        assertSame(poison, failures.getValue().get(0).record());
+        assertEquals(EventRetryRouter.Stage.PARSE, failures.getValue().get(0).stage());
+        verify(batchWriter).write(any());
+        verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedInsertSendsWholePollToRetry() {
+        when(retryRouter.isEnabled()).thenReturn(true);
+        doThrow(new IllegalStateException("ClickHouse down")).when(batchWriter).write(any());
+        ConsumerRecord<String, byte[]> first =
+            new ConsumerRecord<>("page_view", 0, 1L, null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        ConsumerRecord<String, byte[]> second =
+            new ConsumerRecord<>("page_view", 0, 2L, null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        consumerService.consumePageEventsBatch(List.of(first, second), acknowledgment, null);
+
+        ArgumentCaptor<List<EventRetryRouter.Failure>> failures = ArgumentCaptor.forClass(List.class);
+        verify(retryRouter).routeAll(failures.capture());
+        assertEquals(2, failures.getValue().size());
+        assertEquals(EventRetryRouter.Stage.INSERT, failures.getValue().get(1).stage());
+        verify(acknowledgment).acknowledge();
+        // Counted once the retry topic delivers them
+        verify(sessionizer, never()).observe(any(), any());
+    }
+
+    @Test
+    void failedInsertStillBlocksWhenRetryIsDisabled() {
+        doThrow(new IllegalStateException("ClickHouse down")).when(batchWriter).write(any());
+        ConsumerRecord<String, byte[]> record =
+            new ConsumerRecord<>("page_view", 0, 1L, null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        assertThrows(IllegalStateException.class,
+            () -> consumerService.consumePageEventsBatch(List.of(record), acknowledgment, null));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    void observerFailureDoesNotSendWrittenRowsToRetry() {
+        doThrow(new IllegalStateException("observer broken")).when(sessionizer).observe(any(), any());
+
+        consumePageView();
+
+        verify(sessionizer).observe(any(), any());
+        verify(retryRouter).routeAll(List.of());
+    }
+
+    @Test
+    void dedupModeInsertsOneTokenedBlockPerPartitionAndCommitsThroughTheConsumer() {
+        TopicPartition p0 = new TopicPartition("page_view", 0);
+        TopicPartition p1 = new TopicPartition("page_view", 1);
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(p0, p1));
+        byte[] value = PAGE_VIEW.getBytes(StandardCharsets.UTF_8);
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        consumerService.consumePageEventsBatch(List.of(
+            new ConsumerRecord<>("page_view", 0, 5L, null, value),
+            new ConsumerRecord<>("page_view", 1, 9L, null, value),
+            new ConsumerRecord<>("page_view", 0, 6L, null, value)), acknowledgment, consumer);
+
+        ArgumentCaptor<ClickHouseRowBatch> batches = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter, times(2)).write(batches.capture());
+        assertEquals("page_view:0:5-6", batches.getAllValues().get(0).getDedupToken());
+        assertEquals(2, batches.getAllValues().get(0).getRows().get(ClickHouseTable.PAGE_EVENTS).size());
+        assertEquals("page_view:1:9-9", batches.getAllValues().get(1).getDedupToken());
+        assertEquals(7, consumer.committed(Set.of(p0)).get(p0).offset());
+        assertEquals(10, consumer.committed(Set.of(p1)).get(p1).offset());
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    void retryPollHandlesEveryDueRecordAndHoldsBackOnlyPartitionsNotDue() {
+        TopicPartition first = new TopicPartition("events.page.retry-1", 0);
+        TopicPartition second = new TopicPartition("events.page.retry-2", 0);
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(first, second));
+        long now = System.currentTimeMillis();
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        // The second level's record is due although the first level's next one is not
+        consumerService.consumeRetryBatch(List.of(
+            retryRecord(first, 3L, now - 1_000),
+            retryRecord(first, 4L, now + 60_000),
+            retryRecord(first, 5L, now - 1_000),
+            retryRecord(second, 7L, now - 1_000)), acknowledgment, consumer);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        assertEquals(2, batch.getValue().getRows().get(ClickHouseTable.PAGE_EVENTS).size());
+        assertEquals(4, consumer.committed(Set.of(first)).get(first).offset());
+        assertEquals(8, consumer.committed(Set.of(second)).get(second).offset());
+        assertEquals(4, consumer.position(first));
+        verifyNoInteractions(acknowledgment);
+
+        consumerService.consumeRetryBatch(List.of(retryRecord(first, 4L, now + 60_000)), acknowledgment, consumer);
+
+        verify(acknowledgment).nack(eq(0), any(Duration.class));
+        verifyNoMoreInteractions(batchWriter);
+    }
+
+    private static ConsumerRecord<String, byte[]> retryRecord(TopicPartition partition, long offset, long dueAt) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
+            null, PAGE_VIEW.getBytes(StandardCharsets.UTF_8));
+        record.headers().add(EventHeaders.RETRY_DUE, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    @Test
+    void mouseMovesAreOnlyObservedUnlessSampledRaw() {
+        byte[] value = ("{\"timestamp\":\"2024-05-01T10:00:00Z\",\"event_type\":\"mouse_move\"," +
+            "\"data\":{\"session_id\":\"s1\",\"tracking_id\":\"t1\",\"x\":120,\"y\":45}}")
+            .getBytes(StandardCharsets.UTF_8);
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("mouse_move", 0, 1L, null, value);
+
+        consumerService.consumeMouseMoveEventsBatch(List.of(record), mock(Acknowledgment.class), null);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        assertNull(batch.getValue().getRows().get(ClickHouseTable.MOUSE_EVENTS));
+        verify(sessionizer).observe(any(), any());
+
+        reset(batchWriter);
+        ReflectionTestUtils.setField(consumerService, "mouseRawSampleRate", 1.0);
+        consumerService.consumeMouseMoveEventsBatch(List.of(record), mock(Acknowledgment.class), null);
+        verify(batchWriter).write(batch.capture());
+        assertEquals(1, batch.getValue().getRows().get(ClickHouseTable.MOUSE_EVENTS).size());
+    }
+
+    @Test
+    void customEventsStoreTheirPropertiesAsJson() {
+        byte[] value = ("{\"timestamp\":\"2024-05-01T10:00:00Z\",\"event_type\":\"custom_event\"," +
+            "\"data\":{\"session_id\":\"s1\",\"tracking_id\":\"t1\",\"page_url\":\"/app\"," +
+            "\"event_name\":\"feature_used\",\"properties\":{\"feature\":\"search\",\"result_count\":42}}}")
+            .getBytes(StandardCharsets.UTF_8);
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("custom_event", 0, 1L, null, value);
+
+        consumerService.consumeCustomEventsBatch(List.of(record), mock(Acknowledgment.class), null);
+
+        ArgumentCaptor<ClickHouseRowBatch> batch = ArgumentCaptor.forClass(ClickHouseRowBatch.class);
+        verify(batchWriter).write(batch.capture());
+        Object[] row = batch.getValue().getRows().get(ClickHouseTable.CUSTOM_EVENTS).get(0);
+        assertEquals("/app", row[4]);
+        assertEquals("feature_used", row[5]);
+        assertEquals("{\"feature\":\"search\",\"result_count\":42}", row[6]);
+    }
+
+    @Test
+    void headerFilterDropsListedEventTypesWithoutParsing() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EventHeaderFilter filter = new EventHeaderFilter("mouse_move, scroll_depth", registry);
+        // The value is not JSON: a filter that parsed it would fail
+        byte[] garbage = "not json".getBytes(StandardCharsets.UTF_8);
+
+        ConsumerRecord<String, byte[]> mouseMove = new ConsumerRecord<>("mouse_move", 0, 1L, null, garbage);
+        EventHeaders.forEvent("mouse_move", "t1", "s1", Instant.now()).forEach(mouseMove.headers()::add);
+        ConsumerRecord<String, byte[]> pageView = new ConsumerRecord<>("page_view", 0, 2L, null, garbage);
+        EventHeaders.forEvent("page_view", "t1", "s1", Instant.now()).forEach(pageView.headers()::add);
+        ConsumerRecord<String, byte[]> legacy = new ConsumerRecord<>("mouse_move", 0, 3L, null, garbage);
+
+        assertTrue(filter.filter(mouseMove));
+        assertFalse(filter.filter(pageView));
+        assertFalse(filter.filter(legacy));
+        assertEquals(1.0, registry.counter("kafka.consumer.filtered", "event_type", "mouse_move").count());
+        assertFalse(new EventHeaderFilter("", registry).isEnabled());
+    }
+}
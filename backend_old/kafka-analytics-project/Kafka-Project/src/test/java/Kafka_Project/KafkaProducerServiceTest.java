@@ -0,0 +1,116 @@
+package Kafka_Project;
+
+import Kafka_Project.service.EventHeaders;
+import Kafka_Project.service.KafkaProducerService;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Record keys and headers sent by KafkaProducerService (no Kafka required).
+ */
+public class KafkaProducerServiceTest {
+
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private KafkaProducerService producerService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(new CompletableFuture<SendResult<String, byte[]>>());
+        producerService = new KafkaProducerService(kafkaTemplate);
+    }
+
+    @Test
+    void sessionStrategyFallsBackToTrackingId() {
+        assertEquals("s1", producerService.partitionKey("s1", "t1"));
+        assertEquals("t1", producerService.partitionKey(null, "t1"));
+        assertEquals("t1", producerService.partitionKey("", "t1"));
+        assertNull(producerService.partitionKey(null, "anonymous"));
+    }
+
+    @Test
+    void configurableStrategies() {
+        ReflectionTestUtils.setField(producerService, "keyStrategy", "tracking_id");
+        assertEquals("t1", producerService.partitionKey("s1", "t1"));
+
+        ReflectionTestUtils.setField(producerService, "keyStrategy", "none");
+        assertNull(producerService.partitionKey("s1", "t1"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, byte[]> sentRecord() {
+        ArgumentCaptor<ProducerRecord<String, byte[]>> record = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(record.capture());
+        return record.getValue();
+    }
+
+    @Test
+    void sendsWithKey() {
+        byte[] message = "{\"event_type\":\"page_view\"}".getBytes(StandardCharsets.UTF_8);
+
+        producerService.sendMessage(message, "page_view", "s1");
+
+        ProducerRecord<String, byte[]> record = sentRecord();
+        assertEquals("page_view", record.topic());
+        assertEquals("s1", record.key());
+        assertSame(message, record.value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dualModePublishesToBothLayouts() {
+        ReflectionTestUtils.setField(producerService, "topicMode", "dual");
+
+        producerService.sendEvent(new byte[0], "play", "s1", EventHeaders.forEvent("play", "t1", "s1", Instant.now()));
+
+        ArgumentCaptor<ProducerRecord<String, byte[]>> records = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(2)).send(records.capture());
+        List<ProducerRecord<String, byte[]>> sent = records.getAllValues();
+        assertEquals("video_events", sent.get(0).topic());
+        assertNull(sent.get(0).headers().lastHeader(EventHeaders.DUAL_PUBLISH));
+        assertEquals("events.interaction", sent.get(1).topic());
+        assertNotNull(sent.get(1).headers().lastHeader(EventHeaders.DUAL_PUBLISH));
+        assertEquals("play", EventHeaders.get(sent.get(1).headers(), EventHeaders.EVENT_TYPE));
+    }
+
+    @Test
+    void consolidatedModeRoutesByFamily() {
+        ReflectionTestUtils.setField(producerService, "topicMode", "consolidated");
+
+        producerService.sendEvent(new byte[0], "mouse_move", "s1", null);
+
+        assertEquals("events.highvolume", sentRecord().topic());
+    }
+
+    @Test
+    void sendsEventHeaders() {
+        Instant ingestedAt = Instant.parse("2024-05-01T10:00:00.123Z");
+
+        producerService.sendMessage(new byte[0], "page_view", "s1",
+            EventHeaders.forEvent("page_view", "t1", null, ingestedAt));
+
+        ProducerRecord<String, byte[]> record = sentRecord();
+        assertEquals("page_view", EventHeaders.get(record.headers(), EventHeaders.EVENT_TYPE));
+        assertEquals("t1", EventHeaders.get(record.headers(), EventHeaders.TRACKING_ID));
+        assertNull(record.headers().lastHeader(EventHeaders.SESSION_ID));
+        assertEquals(ingestedAt.toEpochMilli(), EventHeaders.ingestTimestamp(record.headers()));
+        assertEquals(EventHeaders.CURRENT_SCHEMA_VERSION, EventHeaders.get(record.headers(), EventHeaders.SCHEMA_VERSION));
+    }
+}
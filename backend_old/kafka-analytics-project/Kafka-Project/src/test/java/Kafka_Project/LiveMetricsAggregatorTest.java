@@ -0,0 +1,159 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.service.LiveMetricsAggregator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the live sliding-window counters.
+ */
+public class LiveMetricsAggregatorTest {
+
+    private static final long NOW = 1_714_557_600L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LiveMetricsAggregator aggregator;
+
+    @BeforeEach
+    void setup() {
+        aggregator = new LiveMetricsAggregator(mock(RedisService.class));
+        ReflectionTestUtils.setField(aggregator, "clusterEnabled", false);
+    }
+
+    private JsonNode event(String eventType, String sessionId) throws Exception {
+        return objectMapper.readTree("{\"event_type\":\"" + eventType + "\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"session_id\":\"" + sessionId + "\"}}");
+    }
+
+    @Test
+    void countsOverSlidingWindows() throws Exception {
+        aggregator.record(event("page_view", "s1"), NOW - 90);
+        for (int i = 0; i < 20; i++) {
+            aggregator.record(event("page_view", "s1"), NOW - 5);
+        }
+        aggregator.record(event("purchase", "s2"), NOW - 30);
+        JsonNode periodic = objectMapper.readTree(
+            "{\"event_type\":\"periodic_events\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"mouseClicks\":[{},{},{}],\"linkClicks\":[{},{}],\"scrollEvents\":[]}}");
+        aggregator.record(periodic, NOW - 2);
+        // The current second is not complete yet
+        aggregator.record(event("page_view", "s3"), NOW);
+
+        Map<String, Object> snapshot = aggregator.snapshot("t1", NOW);
+
+        assertEquals(2.5, (double) snapshot.get("events_per_sec"), 1e-9);
+        assertEquals(20L, snapshot.get("page_views_per_min"));
+        assertEquals(1L, snapshot.get("purchases_per_min"));
+        assertEquals(3, snapshot.get("active_sessions"));
+        assertEquals(0L, aggregator.snapshot("unknown", NOW).get("page_views_per_min"));
+    }
+
+    @Test
+    void reusedBucketsStartFromZero() throws Exception {
+        aggregator.record(event("page_view", "s1"), NOW - 61);
+        aggregator.record(event("page_view", "s1"), NOW - 61);
+        // Same slot of the ring one minute later
+        aggregator.record(event("page_view", "s1"), NOW);
+
+        assertEquals(1L, aggregator.snapshot("t1", NOW + 1).get("page_views_per_min"));
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception {
+        JsonNode pageView = event("page_view", "s1");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    aggregator.record(pageView, NOW - 1 - (i % 3));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000L, aggregator.snapshot("t1", NOW).get("page_views_per_min"));
+    }
+
+    @Test
+    void idleTrackingIdsAndSessionsExpire() throws Exception {
+        aggregator.record(event("page_view", "old"), NOW - 400);
+        aggregator.record(event("page_view", "recent"), NOW - 10);
+        JsonNode other = objectMapper.readTree("{\"event_type\":\"click\",\"data\":{\"tracking_id\":\"t2\"}}");
+        aggregator.record(other, NOW - 400);
+
+        aggregator.expire(NOW);
+
+        assertEquals(1, aggregator.trackedIds());
+        assertEquals(1, aggregator.snapshot("t1", NOW).get("active_sessions"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nodesShareTheirCountsThroughRedis() throws Exception {
+        // An in-memory stand-in for the counters and HyperLogLogs
+        Map<String, Long> counters = new HashMap<>();
+        Map<String, Set<String>> logs = new HashMap<>();
+        RedisService redis = mock(RedisService.class);
+        when(redis.incrementCounters(anyMap(), anyInt())).thenAnswer(inv -> {
+            ((Map<String, Long>) inv.getArgument(0)).forEach((key, delta) -> counters.merge(key, delta, Long::sum));
+            return Map.of();
+        });
+        when(redis.getCounters(anyList())).thenAnswer(inv ->
+            ((List<String>) inv.getArgument(0)).stream().map(key -> counters.getOrDefault(key, 0L)).toList());
+        doAnswer(inv -> {
+            ((Map<String, Collection<String>>) inv.getArgument(0))
+                .forEach((key, ids) -> logs.computeIfAbsent(key, k -> new HashSet<>()).addAll(ids));
+            return null;
+        }).when(redis).addToHyperLogLogs(anyMap(), anyMap());
+        when(redis.countHyperLogLogs(anyCollection())).thenAnswer(inv -> {
+            Set<String> union = new HashSet<>();
+            ((Collection<String>) inv.getArgument(0)).forEach(key -> union.addAll(logs.getOrDefault(key, Set.of())));
+            return (long) union.size();
+        });
+        LiveMetricsAggregator first = new LiveMetricsAggregator(redis);
+        LiveMetricsAggregator second = new LiveMetricsAggregator(redis);
+
+        first.record(event("page_view", "s1"), NOW - 3);
+        first.record(event("page_view", "s1"), NOW - 2);
+        second.record(event("page_view", "s2"), NOW - 2);
+        second.record(event("purchase", "s2"), NOW - 1);
+        first.flush(NOW);
+
+        // Either node serves the totals of both; the second one adds what it has not pushed yet
+        for (LiveMetricsAggregator node : List.of(first, second)) {
+            Map<String, Object> snapshot = node.snapshot("t1", NOW);
+            assertEquals(node == second ? 3L : 2L, snapshot.get("page_views_per_min"));
+        }
+        second.flush(NOW);
+        Map<String, Object> snapshot = first.snapshot("t1", NOW);
+        assertEquals(3L, snapshot.get("page_views_per_min"));
+        assertEquals(1L, snapshot.get("purchases_per_min"));
+        assertEquals(0.4, (double) snapshot.get("events_per_sec"), 1e-9);
+        assertEquals(2, snapshot.get("active_sessions"));
+
+        // Without Redis a node falls back to its own counts
+        when(redis.getCounters(anyList())).thenThrow(new IllegalStateException("Redis down"));
+        assertEquals(2L, first.snapshot("t1", NOW).get("page_views_per_min"));
+    }
+}
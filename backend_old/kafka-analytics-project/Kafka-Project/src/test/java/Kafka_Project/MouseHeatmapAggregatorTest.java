@@ -0,0 +1,87 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.MouseHeatmapAggregator;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the mouse heatmap aggregation (no ClickHouse required).
+ */
+public class MouseHeatmapAggregatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ClickHouseBatchWriter batchWriter;
+    private MouseHeatmapAggregator aggregator;
+
+    @BeforeEach
+    void setup() {
+        batchWriter = mock(ClickHouseBatchWriter.class);
+        aggregator = new MouseHeatmapAggregator(batchWriter, new SimpleMeterRegistry());
+    }
+
+    private void move(int x, int y, String extra, String time) throws Exception {
+        aggregator.observe(objectMapper.readTree("{\"event_type\":\"mouse_move\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"page_url\":\"/home\",\"x\":" + x + ",\"y\":" + y + extra + "}}"), LocalDateTime.parse(time));
+    }
+
+    private List<Object[]> flushedRows() {
+        ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass(Object[].class);
+        verify(batchWriter, atLeast(0)).add(eq(ClickHouseTable.MOUSE_HEATMAP), rows.capture());
+        return rows.getAllValues().stream()
+            .sorted(Comparator.comparing((Object[] row) -> (LocalDateTime) row[0])
+                .thenComparing(row -> (Integer) row[3]).thenComparing(row -> (Integer) row[5]))
+            .toList();
+    }
+
+    @Test
+    void quantizesMovesIntoCellsPerMinuteAndViewport() throws Exception {
+        move(101, 45, "", "2024-05-01T10:00:05");
+        move(119, 59, "", "2024-05-01T10:00:50");
+        move(121, 45, "", "2024-05-01T10:00:51");
+        move(101, 45, "", "2024-05-01T10:01:00");
+        move(101, 45, ",\"viewport_width\":1280", "2024-05-01T10:00:10");
+        aggregator.observe(objectMapper.readTree("{\"event_type\":\"click\",\"data\":{\"x\":1,\"y\":1}}"),
+            LocalDateTime.parse("2024-05-01T10:00:00"));
+
+        assertEquals(4, aggregator.flush());
+
+        List<Object[]> rows = flushedRows();
+        assertEquals(ClickHouseTable.MOUSE_HEATMAP.getColumnCount(), rows.get(0).length);
+        // 10:00, viewport 0, cell (5, 2): two moves
+        assertArrayEquals(new Object[] {LocalDateTime.parse("2024-05-01T10:00"), "t1", "/home", 0, 20, 5, 2, 2L},
+            rows.get(0));
+        assertEquals(6, rows.get(1)[5]);
+        assertEquals(1280, rows.get(2)[3]);
+        assertEquals(LocalDateTime.parse("2024-05-01T10:01"), rows.get(3)[0]);
+        assertEquals(0, aggregator.pendingCells());
+    }
+
+    @Test
+    void laterFlushesOnlyCarryNewCounts() throws Exception {
+        move(10, 10, "", "2024-05-01T10:00:00");
+        aggregator.flush();
+        move(10, 10, "", "2024-05-01T10:00:30");
+        move(10, 10, "", "2024-05-01T10:00:31");
+
+        aggregator.flush();
+
+        // The same cell again, with its increment: mouse_heatmap sums them on merge
+        List<Object[]> rows = flushedRows();
+        assertEquals(2, rows.size());
+        assertEquals(3L, (Long) rows.get(0)[7] + (Long) rows.get(1)[7]);
+    }
+}
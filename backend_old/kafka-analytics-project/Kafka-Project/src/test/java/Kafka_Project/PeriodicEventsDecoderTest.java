@@ -0,0 +1,79 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseRowBatch;
+import Kafka_Project.service.PeriodicEventsDecoder;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the one-pass periodic_events decoding (no ClickHouse required).
+ */
+public class PeriodicEventsDecoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LocalDateTime timestamp = LocalDateTime.parse("2024-05-01T10:00:00");
+
+    @Test
+    void groupsTwoHundredItemsIntoOneListPerTable() throws Exception {
+        ObjectNode data = (ObjectNode) objectMapper.readTree("{\"tracking_id\":\"t1\",\"session_id\":\"s1\"," +
+            "\"user_id\":\"u1\"}");
+        ArrayNode links = data.putArray("linkClicks");
+        ArrayNode clicks = data.putArray("mouseClicks");
+        ArrayNode videos = data.putArray("videoEvents");
+        ArrayNode scrolls = data.putArray("scrollEvents");
+        ArrayNode forms = data.putArray("formEvents");
+        for (int i = 0; i < 40; i++) {
+            links.addObject().put("url", "/l" + i);
+            clicks.addObject().put("x", i).put("y", 2 * i).put("element", "button");
+            videos.addObject().put("type", "video_pause").put("src", "v.mp4").put("currentTime", 1.5);
+            scrolls.addObject().put("scroll_percent", i).put("scroll_top", 10 * i);
+            forms.addObject().put("type", "form_focus").put("form_id", "signup");
+        }
+
+        Map<ClickHouseTable, List<Object[]>> rows = PeriodicEventsDecoder.decode(data, timestamp, "/home", true);
+
+        assertEquals(4, rows.size());
+        assertEquals(80, rows.get(ClickHouseTable.INTERACTION_EVENTS).size());
+        assertEquals(40, rows.get(ClickHouseTable.SCROLL_EVENTS).size());
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+        rows.forEach(batch::addAll);
+        assertEquals(200, batch.getRowCount());
+
+        Object[] link = rows.get(ClickHouseTable.INTERACTION_EVENTS).get(0);
+        assertArrayEquals(new Object[] {timestamp, "s1", "u1", "t1", "link_click", "/l0", null, null, ""},
+            Arrays.copyOf(link, 9));
+        Object[] click = rows.get(ClickHouseTable.INTERACTION_EVENTS).get(43);
+        assertEquals("mouse_click", click[4]);
+        assertEquals("/home", click[5]);
+        assertEquals(3, click[6]);
+        assertEquals(6, click[7]);
+        Object[] scroll = rows.get(ClickHouseTable.SCROLL_EVENTS).get(5);
+        assertArrayEquals(new Object[] {timestamp, "s1", "u1", "t1", "/home", "scroll_depth", null, 50, 5}, scroll);
+        assertEquals("video_pause", rows.get(ClickHouseTable.VIDEO_EVENTS).get(0)[5]);
+        assertEquals(1.5f, rows.get(ClickHouseTable.VIDEO_EVENTS).get(0)[8]);
+        assertEquals("signup", rows.get(ClickHouseTable.FORM_EVENTS).get(0)[6]);
+        for (List<Object[]> tableRows : rows.values()) {
+            assertSame(timestamp, tableRows.get(0)[0]);
+        }
+    }
+
+    @Test
+    void leavesOutEmptyArraysAndCollapsedScrolls() throws Exception {
+        Map<ClickHouseTable, List<Object[]>> rows = PeriodicEventsDecoder.decode(objectMapper.readTree(
+            "{\"session_id\":\"s1\",\"linkClicks\":[],\"scrollEvents\":[{\"scroll_percent\":10}]," +
+            "\"mouseClicks\":\"oops\"}"), timestamp, "/", false);
+
+        assertTrue(rows.isEmpty());
+    }
+}
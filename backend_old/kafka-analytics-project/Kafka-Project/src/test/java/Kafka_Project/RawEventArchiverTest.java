@@ -0,0 +1,111 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.ClickHouseRowBatch;
+import Kafka_Project.service.EventHeaders;
+import Kafka_Project.service.RawEventArchiver;
+import Kafka_Project.types.ClickHouseTable;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for the grouping of raw envelopes into batch_events rows (no ClickHouse required).
+ */
+public class RawEventArchiverTest {
+
+    private RawEventArchiver archiver;
+    private long offset;
+
+    @BeforeEach
+    void setup() {
+        archiver = new RawEventArchiver(mock(ClickHouseBatchWriter.class), new SimpleMeterRegistry());
+    }
+
+    private ConsumerRecord<String, byte[]> record(String session, String time, String value) {
+        ConsumerRecord<String, byte[]> record =
+            new ConsumerRecord<>("page_view", 0, offset++, session, value.getBytes(StandardCharsets.UTF_8));
+        EventHeaders.forEvent("page_view", "t1", session, Instant.parse(time)).forEach(record.headers()::add);
+        return record;
+    }
+
+    private static String envelope(String session, String user) {
+        return "{\"event_type\":\"page_view\",\"data\":{\"session_id\":\"" + session + "\",\"user_id\":\"" + user + "\"}}";
+    }
+
+    @Test
+    void groupsEnvelopesPerSessionAndMinute() {
+        ConsumerRecord<String, byte[]> packed = record("s1", "2024-05-01T10:00:40Z",
+            "{\"events\":[" + envelope("s1", "u1") + "," + envelope("s1", "u1") + "]}");
+        packed.headers().add(EventHeaders.EVENT_COUNT, "2".getBytes(StandardCharsets.UTF_8));
+        ConsumerRecord<String, byte[]> dualCopy = record("s1", "2024-05-01T10:00:50Z", envelope("s1", "u1"));
+        dualCopy.headers().add(EventHeaders.DUAL_PUBLISH, "1".getBytes(StandardCharsets.UTF_8));
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            record("s1", "2024-05-01T10:00:05Z", envelope("s1", "u1")),
+            record("s2", "2024-05-01T10:00:10Z", envelope("s2", "guest")),
+            packed,
+            dualCopy,
+            record("s1", "2024-05-01T10:01:00Z", envelope("s1", "u1")));
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+
+        assertEquals(5, archiver.addBlobs(records, batch));
+
+        List<Object[]> rows = batch.getRows().get(ClickHouseTable.BATCH_EVENTS);
+        assertEquals(3, rows.size());
+        Object[] first = rows.get(0);
+        assertEquals(LocalDateTime.parse("2024-05-01T10:00"), first[0]);
+        assertEquals("s1", first[1]);
+        assertEquals("u1", first[2]);
+        assertEquals("t1", first[3]);
+        assertEquals(List.of(envelope("s1", "u1"),
+            "{\"events\":[" + envelope("s1", "u1") + "," + envelope("s1", "u1") + "]}"), first[4]);
+        assertEquals(3, first[5]);
+        assertEquals("guest", rows.get(1)[2]);
+        assertEquals(LocalDateTime.parse("2024-05-01T10:01"), rows.get(2)[0]);
+    }
+
+    @Test
+    void cutsRowsAtMaxBlobBytes() {
+        ReflectionTestUtils.setField(archiver, "maxBlobBytes", 150);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            record("s1", "2024-05-01T10:00:01Z", envelope("s1", "u1")),
+            record("s1", "2024-05-01T10:00:02Z", envelope("s1", "u1")),
+            record("s1", "2024-05-01T10:00:03Z", envelope("s1", "u1")));
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+
+        archiver.addBlobs(records, batch);
+
+        List<Object[]> rows = batch.getRows().get(ClickHouseTable.BATCH_EVENTS);
+        assertEquals(2, rows.size());
+        assertEquals(2, rows.get(0)[5]);
+        assertEquals(1, rows.get(1)[5]);
+    }
+
+    @Test
+    void keepsMultiLineEnvelopesWhole() {
+        // Raw passthrough stores the client's JSON as sent, line breaks included
+        String pretty = "{\"event_type\":\"page_view\",\"data\":{\n  \"session_id\":\"s1\",\n  \"user_id\":\"u1\"\n}}";
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            record("s1", "2024-05-01T10:00:01Z", pretty),
+            record("s1", "2024-05-01T10:00:02Z", envelope("s1", "u1")));
+        ClickHouseRowBatch batch = new ClickHouseRowBatch();
+
+        archiver.addBlobs(records, batch);
+
+        Object[] row = batch.getRows().get(ClickHouseTable.BATCH_EVENTS).get(0);
+        assertEquals("u1", row[2]);
+        assertEquals(List.of(pretty, envelope("s1", "u1")), row[4]);
+        assertEquals(2, row[5]);
+    }
+}
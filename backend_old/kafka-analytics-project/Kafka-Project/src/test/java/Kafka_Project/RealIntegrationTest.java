@@ -25,7 +25,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.awaitility.Awaitility.await;
@@ -79,7 +79,7 @@ public class RealIntegrationTest {
 
     @BeforeEach
     void setupMocks() {
-        when(rateLimiter.rateLimiter(anyString())).thenReturn(true);
+        when(rateLimiter.tryAcquire(any(), any())).thenReturn(RateLimiter.Decision.unlimited());
     }
 
     @BeforeAll
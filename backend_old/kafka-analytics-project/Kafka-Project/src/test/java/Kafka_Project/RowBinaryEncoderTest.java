@@ -0,0 +1,100 @@
+package Kafka_Project;
+
+import Kafka_Project.service.RowBinaryEncoder;
+import Kafka_Project.types.ClickHouseTable;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Byte-level checks of the RowBinary encoding used by the rowbinary ClickHouse sink.
+ */
+public class RowBinaryEncoderTest {
+
+    private byte[] encode(ClickHouseTable table, Object... row) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RowBinaryEncoder(out).writeRow(table, row);
+        return out.toByteArray();
+    }
+
+    @Test
+    void encodesMouseEventRow() throws Exception {
+        LocalDateTime ts = LocalDateTime.of(2025, 1, 2, 3, 4, 5);
+        byte[] bytes = encode(ClickHouseTable.MOUSE_EVENTS, ts, "s", "u", "t", "/p", 300, 7);
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1735787045L, Integer.toUnsignedLong(buf.getInt()), "DateTime as UInt32 epoch seconds");
+        for (String expected : new String[] {"s", "u", "t", "/p"}) {
+            int len = buf.get();
+            byte[] str = new byte[len];
+            buf.get(str);
+            assertEquals(expected, new String(str));
+        }
+        assertEquals(300, Short.toUnsignedInt(buf.getShort()));
+        assertEquals(7, Short.toUnsignedInt(buf.getShort()));
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    void encodesNullableMarkersAndDefaults() throws Exception {
+        LocalDateTime ts = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+        byte[] bytes = encode(ClickHouseTable.SCROLL_EVENTS, ts, null, "u", "t", "/", "scroll_depth", 50, null, 75);
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.getInt();
+        assertEquals(0, buf.get(), "null in a non-nullable String is written as an empty string");
+        buf.position(buf.position() + 2 + 2 + 2 + 1 + "scroll_depth".length());
+        assertEquals(0, buf.get(), "depth_percent present");
+        assertEquals(50, buf.get());
+        assertEquals(1, buf.get(), "scroll_top is NULL");
+        assertEquals(0, buf.get(), "scroll_percent present");
+        assertEquals(75, buf.get());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    void encodesLongStringsWithVarintLength() throws Exception {
+        String longUrl = "x".repeat(200);
+        byte[] bytes = encode(ClickHouseTable.MOUSE_EVENTS, LocalDateTime.now(), "", "", "", longUrl, 0, 0);
+
+        // 4 (DateTime) + 3 empty strings, then the varint for 200 = 0xC8 0x01
+        assertEquals((byte) 0xC8, bytes[7]);
+        assertEquals((byte) 0x01, bytes[8]);
+        assertEquals(4 + 3 + 2 + 200 + 4, bytes.length);
+    }
+
+    @Test
+    void encodesStringArraysWithElementCount() throws Exception {
+        byte[] bytes = encode(ClickHouseTable.BATCH_EVENTS, LocalDateTime.now(), "", "", "",
+            List.of("{\n}", "ab"), 2);
+
+        // 4 (DateTime) + 3 empty strings, then the count and each element with its length
+        assertArrayEquals(new byte[] {2, 3, '{', '\n', '}', 2, 'a', 'b'}, Arrays.copyOfRange(bytes, 7, 15));
+        assertEquals(15 + 2, bytes.length);
+        assertEquals(0, encode(ClickHouseTable.BATCH_EVENTS, LocalDateTime.now(), "", "", "", null, 0)[7]);
+    }
+
+    @Test
+    void rejectsUnsignedValuesOutOfRange() throws Exception {
+        LocalDateTime ts = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+        IllegalArgumentException negative = assertThrows(IllegalArgumentException.class,
+            () -> encode(ClickHouseTable.MOUSE_EVENTS, ts, "s", "u", "t", "/p", -1, 7));
+        assertTrue(negative.getMessage().contains("-1 is out of range for UInt16"), negative.getMessage());
+        assertThrows(IllegalArgumentException.class,
+            () -> encode(ClickHouseTable.MOUSE_EVENTS, ts, "s", "u", "t", "/p", 65536, 7));
+        assertThrows(IllegalArgumentException.class,
+            () -> encode(ClickHouseTable.SCROLL_EVENTS, ts, "s", "u", "t", "/", "scroll_depth", 256, null, 75));
+        assertThrows(IllegalArgumentException.class,
+            () -> encode(ClickHouseTable.MOUSE_EVENTS, LocalDateTime.of(1969, 12, 31, 0, 0), "s", "u", "t", "/p", 1, 1));
+
+        assertEquals(4 + 3 * 2 + 3 + 2 + 2, encode(ClickHouseTable.MOUSE_EVENTS, ts, "s", "u", "t", "/p", 65535, 0).length);
+    }
+}
@@ -0,0 +1,102 @@
+package Kafka_Project;
+
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.ScrollDepthReducer;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the scroll sample collapsing (no ClickHouse required).
+ */
+public class ScrollDepthReducerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ClickHouseBatchWriter batchWriter;
+    private ScrollDepthReducer reducer;
+
+    @BeforeEach
+    void setup() {
+        batchWriter = mock(ClickHouseBatchWriter.class);
+        reducer = new ScrollDepthReducer(batchWriter, new SimpleMeterRegistry());
+    }
+
+    private void observe(String eventType, String session, String data, String time) throws Exception {
+        reducer.observe(objectMapper.readTree("{\"event_type\":\"" + eventType + "\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"user_id\":\"u1\",\"session_id\":\"" + session + "\",\"page_url\":\"/blog\"" + data + "}}"),
+            LocalDateTime.parse(time));
+    }
+
+    private List<Object[]> writtenRows() {
+        ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass(Object[].class);
+        verify(batchWriter, atLeast(0)).add(eq(ClickHouseTable.SCROLL_EVENTS), rows.capture());
+        return rows.getAllValues();
+    }
+
+    @Test
+    void writesOneMaxDepthRowWhenThePageIsLeft() throws Exception {
+        observe("scroll_depth", "s1", ",\"depth_percent\":25,\"scroll_top\":400", "2024-05-01T10:00:05");
+        observe("scroll_depth", "s1", ",\"depth_percent\":75,\"scroll_top\":1800", "2024-05-01T10:00:20");
+        observe("scroll_depth", "s1", ",\"depth_percent\":50,\"scroll_top\":900", "2024-05-01T10:00:30");
+        observe("periodic_events", "s1", ",\"scrollEvents\":[{\"scroll_percent\":80,\"scroll_top\":2000}," +
+            "{\"scroll_percent\":60,\"scroll_top\":1500}]", "2024-05-01T10:00:40");
+        assertTrue(writtenRows().isEmpty());
+        assertEquals(1, reducer.openPages());
+
+        observe("page_unload", "s1", "", "2024-05-01T10:01:00");
+
+        List<Object[]> rows = writtenRows();
+        assertEquals(1, rows.size());
+        assertArrayEquals(new Object[] {LocalDateTime.parse("2024-05-01T10:00:40"), "s1", "u1", "t1", "/blog",
+            "scroll_depth", 75, 2000, 80}, rows.get(0));
+        assertEquals(5.0, reducer.collapseRatio());
+        assertEquals(0, reducer.openPages());
+    }
+
+    @Test
+    void writesIdlePagesOnSweep() throws Exception {
+        observe("scroll_depth", "s1", ",\"depth_percent\":30", "2024-05-01T10:00:00");
+        long now = System.currentTimeMillis();
+
+        assertEquals(0, reducer.sweep(now));
+        assertEquals(1, reducer.sweep(now + 300_000));
+
+        assertEquals(30, writtenRows().get(0)[6]);
+        // Nothing left for the late page_unload
+        assertFalse(reducer.close(new ScrollDepthReducer.PageKey("s1", "/blog")));
+    }
+
+    @Test
+    void writesTheLeastRecentlyScrolledPageBeyondMaxOpen() throws Exception {
+        ReflectionTestUtils.setField(reducer, "maxOpen", 16);
+        // Sessions landing in the same shard, so its single slot overflows
+        List<String> sessions = new ArrayList<>();
+        int shard = Math.floorMod(new ScrollDepthReducer.PageKey("s0", "/blog").hashCode(), 16);
+        for (int i = 0; sessions.size() < 2; i++) {
+            if (Math.floorMod(new ScrollDepthReducer.PageKey("s" + i, "/blog").hashCode(), 16) == shard) {
+                sessions.add("s" + i);
+            }
+        }
+
+        observe("scroll_depth", sessions.get(0), ",\"depth_percent\":10", "2024-05-01T10:00:00");
+        observe("scroll_depth", sessions.get(1), ",\"depth_percent\":20", "2024-05-01T10:00:01");
+
+        List<Object[]> rows = writtenRows();
+        assertEquals(1, rows.size());
+        assertEquals(sessions.get(0), rows.get(0)[1]);
+        assertEquals(1, reducer.openPages());
+    }
+}
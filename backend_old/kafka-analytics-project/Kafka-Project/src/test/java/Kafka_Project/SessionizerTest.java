@@ -0,0 +1,214 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.service.ClickHouseBatchWriter;
+import Kafka_Project.service.Sessionizer;
+import Kafka_Project.types.ClickHouseTable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-memory sessionizer (no Redis or ClickHouse required).
+ */
+public class SessionizerTest {
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ClickHouseBatchWriter batchWriter;
+    private RedisService redisService;
+    private SimpleMeterRegistry registry;
+    private Sessionizer sessionizer;
+
+    @BeforeEach
+    void setup() {
+        batchWriter = mock(ClickHouseBatchWriter.class);
+        when(batchWriter.append(any(), any(Object[].class))).thenReturn(CompletableFuture.completedFuture(null));
+        redisService = mock(RedisService.class);
+        registry = new SimpleMeterRegistry();
+        sessionizer = new Sessionizer(batchWriter, redisService, registry);
+    }
+
+    private void observe(Sessionizer target, String sessionId, String eventType, String url, String time) {
+        String json = "{\"event_type\":\"" + eventType + "\",\"data\":{\"session_id\":\"" + sessionId +
+            "\",\"user_id\":\"u1\",\"tracking_id\":\"t1\",\"url\":\"" + url + "\",\"browser\":\"Firefox\"}}";
+        try {
+            JsonNode event = objectMapper.readTree(json);
+            target.observe(event, LocalDateTime.parse(time));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Object[]> closedRows() {
+        ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass(Object[].class);
+        verify(batchWriter, atLeast(0)).append(eq(ClickHouseTable.SESSIONS), rows.capture());
+        return rows.getAllValues();
+    }
+
+    @Test
+    void multiPageVisitBecomesOneRow() {
+        observe(sessionizer, "s1", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        observe(sessionizer, "s1", "click", "https://example.com/", "2024-05-01T10:00:20");
+        observe(sessionizer, "s1", "page_unload", "https://example.com/", "2024-05-01T10:00:30");
+        observe(sessionizer, "s1", "page_load", "https://example.com/pricing", "2024-05-01T10:00:31");
+        observe(sessionizer, "s1", "scroll_depth", "https://example.com/pricing", "2024-05-01T10:02:00");
+
+        assertEquals(0, sessionizer.sweep(System.currentTimeMillis()));
+        assertEquals(1, sessionizer.sweep(System.currentTimeMillis() + HOUR_MS));
+
+        List<Object[]> rows = closedRows();
+        assertEquals(1, rows.size());
+        Object[] row = rows.get(0);
+        assertEquals(ClickHouseTable.SESSIONS.getColumns().size(), row.length);
+        assertEquals("s1", row[0]);
+        assertEquals("Firefox", row[7]);
+        assertEquals("https://example.com/", row[15]);
+        assertEquals("https://example.com/pricing", row[16]);
+        assertEquals(120_000L, row[17]);
+        assertEquals(0, row[18]);
+        assertEquals(2, row[19]);
+        assertEquals(2L, row[20]);
+        assertEquals(1.0, registry.counter("sessions.closed", "reason", "timeout").count());
+    }
+
+    @Test
+    void unloadClosesAfterTheGracePeriodUnlessTheVisitContinues() {
+        observe(sessionizer, "left", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        observe(sessionizer, "left", "page_unload", "https://example.com/", "2024-05-01T10:00:10");
+        observe(sessionizer, "navigated", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        observe(sessionizer, "navigated", "page_unload", "https://example.com/", "2024-05-01T10:00:10");
+        observe(sessionizer, "navigated", "page_load", "https://example.com/docs", "2024-05-01T10:00:11");
+
+        assertEquals(1, sessionizer.sweep(System.currentTimeMillis() + 60_000));
+
+        assertEquals("left", closedRows().get(0)[0]);
+        assertEquals(1, closedRows().get(0)[18]);
+        assertEquals(1, sessionizer.openSessions());
+        assertEquals(1.0, registry.counter("sessions.closed", "reason", "unload").count());
+    }
+
+    @Test
+    void fullShardEvictsTheLeastRecentlyActiveSession() {
+        ReflectionTestUtils.setField(sessionizer, "maxOpen", 16);
+        // One session per shard at most, so every new session in a shard evicts the one before it
+        for (int i = 0; i < 40; i++) {
+            observe(sessionizer, "s" + i, "page_view", "https://example.com/", "2024-05-01T10:00:00");
+        }
+
+        assertTrue(sessionizer.openSessions() <= 16);
+        assertEquals(40, sessionizer.openSessions() + closedRows().size());
+        assertEquals(closedRows().size(), registry.counter("sessions.closed", "reason", "evicted").count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkpointRestoresOpenSessionsAfterRestart() {
+        observe(sessionizer, "s1", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        observe(sessionizer, "s2", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        sessionizer.checkpoint();
+        ArgumentCaptor<Map<String, String>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(redisService).updateHash(eq("sessionizer:open:local"), saved.capture(), anyCollection(), eq(86_400));
+        assertEquals(2, saved.getValue().size());
+
+        // A session closed before the next checkpoint is removed from the hash
+        observe(sessionizer, "s2", "page_unload", "https://example.com/", "2024-05-01T10:00:05");
+        sessionizer.sweep(System.currentTimeMillis() + 60_000);
+        sessionizer.checkpoint();
+        verify(redisService).updateHash("sessionizer:open:local", Map.of(), Set.of("s2"), 86_400);
+
+        when(redisService.getHash("sessionizer:open:local")).thenReturn(Map.of("s1", saved.getValue().get("s1")));
+        Sessionizer restarted = new Sessionizer(batchWriter, redisService, new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(restarted, "restore");
+        assertEquals(1, restarted.openSessions());
+
+        observe(restarted, "s1", "page_load", "https://example.com/blog", "2024-05-01T10:05:00");
+        restarted.sweep(System.currentTimeMillis() + HOUR_MS);
+        Object[] row = closedRows().get(1);
+        assertEquals("s1", row[0]);
+        assertEquals("https://example.com/", row[15]);
+        assertEquals("https://example.com/blog", row[16]);
+        assertEquals(300_000L, row[17]);
+        assertEquals(0, row[18]);
+    }
+
+    @Test
+    void failedCheckpointIsRetriedWithTheNextOne() {
+        doThrow(new IllegalStateException("Redis down")).when(redisService).updateHash(any(), any(), any(), anyInt());
+        observe(sessionizer, "s1", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+
+        assertThrows(IllegalStateException.class, () -> sessionizer.checkpoint());
+
+        reset(redisService);
+        sessionizer.checkpoint();
+        verify(redisService).updateHash(eq("sessionizer:open:local"), argThat(put -> put.containsKey("s1")), anyCollection(), anyInt());
+    }
+
+    @Test
+    void instancesRestoreOnlyTheirOwnCheckpoint() {
+        ReflectionTestUtils.setField(sessionizer, "instanceId", "a");
+        observe(sessionizer, "s1", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        sessionizer.checkpoint();
+        verify(redisService).updateHash(eq("sessionizer:open:a"), argThat(put -> put.containsKey("s1")), anyCollection(), anyInt());
+        when(redisService.getHash("sessionizer:open:a")).thenReturn(Map.of("s1", "{\"sessionId\":\"s1\"}"));
+        when(redisService.getHash("sessionizer:open:b")).thenReturn(Map.of());
+
+        Sessionizer other = new Sessionizer(batchWriter, redisService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(other, "instanceId", "b");
+        ReflectionTestUtils.invokeMethod(other, "restore");
+        Sessionizer restarted = new Sessionizer(batchWriter, redisService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(restarted, "instanceId", "a");
+        ReflectionTestUtils.invokeMethod(restarted, "restore");
+
+        assertEquals(0, other.openSessions());
+        assertEquals(1, restarted.openSessions());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void closedSessionIsKeptUntilItsRowIsWritten() {
+        CompletableFuture<Void> failed = CompletableFuture.failedFuture(new IllegalStateException("ClickHouse down"));
+        when(batchWriter.append(any(), any(Object[].class))).thenReturn(failed);
+        observe(sessionizer, "s1", "page_load", "https://example.com/", "2024-05-01T10:00:00");
+        sessionizer.sweep(System.currentTimeMillis() + HOUR_MS);
+        assertEquals(1, sessionizer.unwrittenSessions());
+
+        // The checkpoint drops the open session but keeps the closed one until it is written
+        sessionizer.checkpoint();
+        ArgumentCaptor<Map<String, String>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(redisService).updateHash(eq("sessionizer:open:local"), saved.capture(), eq(Set.of("s1")), anyInt());
+        String field = saved.getValue().keySet().iterator().next();
+        assertTrue(field.startsWith("closed:s1:"));
+
+        // A restarted instance appends it again
+        when(redisService.getHash("sessionizer:open:local")).thenReturn(saved.getValue());
+        Sessionizer restarted = new Sessionizer(batchWriter, redisService, new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(restarted, "restore");
+        assertEquals(0, restarted.openSessions());
+        assertEquals(1, restarted.unwrittenSessions());
+
+        // The next sweep retries it, and once written it leaves the checkpoint
+        when(batchWriter.append(any(), any(Object[].class))).thenReturn(CompletableFuture.completedFuture(null));
+        assertEquals(0, sessionizer.sweep(System.currentTimeMillis() + HOUR_MS));
+        assertEquals(0, sessionizer.unwrittenSessions());
+        assertEquals(2, closedRows().size());
+        sessionizer.checkpoint();
+        verify(redisService).updateHash("sessionizer:open:local", Map.of(), Set.of(field), 86_400);
+    }
+}
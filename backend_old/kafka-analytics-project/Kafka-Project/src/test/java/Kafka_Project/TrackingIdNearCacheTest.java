@@ -0,0 +1,71 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.service.TrackingIdNearCache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the tracking ID near-cache (no Redis required).
+ */
+public class TrackingIdNearCacheTest {
+
+    private RedisService redisService;
+    private TrackingIdNearCache cache;
+
+    @BeforeEach
+    void setup() {
+        redisService = mock(RedisService.class);
+        cache = new TrackingIdNearCache(redisService);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "positiveTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "negativeTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+    }
+
+    @Test
+    void cachesHitsAndMisses() {
+        when(redisService.isTrackingIdMember("known")).thenReturn(true);
+        when(redisService.isTrackingIdMember("unknown")).thenReturn(false);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.isRegistered("known"));
+            assertFalse(cache.isRegistered("unknown"));
+        }
+
+        verify(redisService, times(1)).isTrackingIdMember("known");
+        verify(redisService, times(1)).isTrackingIdMember("unknown");
+    }
+
+    @Test
+    void versionChangeInvalidatesCache() {
+        when(redisService.isTrackingIdMember("late")).thenReturn(false, true);
+        assertFalse(cache.isRegistered("late"));
+
+        when(redisService.getTrackingIdVersion()).thenReturn("7");
+        ReflectionTestUtils.invokeMethod(cache, "checkVersion");
+
+        assertTrue(cache.isRegistered("late"), "Registration on another node should be visible after a version bump");
+    }
+
+    @Test
+    void redisFailureFailsOpenWithoutCaching() {
+        when(redisService.isTrackingIdMember("any")).thenThrow(new RuntimeException("redis down"));
+
+        assertTrue(cache.isRegistered("any"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void staysWithinMaxEntries() {
+        for (int i = 0; i < 250; i++) {
+            cache.isRegistered("id-" + i);
+        }
+        assertTrue(cache.size() <= 100);
+    }
+}
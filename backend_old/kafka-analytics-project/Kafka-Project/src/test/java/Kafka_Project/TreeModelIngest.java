@@ -0,0 +1,108 @@
+package Kafka_Project;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The former JsonNode-based normalization from ProducerController, kept as the reference
+ * for EventIngestParserTest and the baseline in IngestJsonBenchmark.
+ */
+final class TreeModelIngest {
+
+    private static final Set<String> METADATA_FIELDS = Set.of(
+        "type", "event_type", "ts", "timestamp"
+    );
+
+    private final ObjectMapper objectMapper;
+
+    TreeModelIngest(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Bind the body to a tree, normalize every event and serialize it, as the controller used to.
+     */
+    List<byte[]> normalizeAll(byte[] body, String clientIp) throws IOException {
+        JsonNode requestBody = objectMapper.readTree(body);
+        ArrayNode eventsArray;
+        if (requestBody.isArray()) {
+            eventsArray = (ArrayNode) requestBody;
+        } else {
+            eventsArray = objectMapper.createArrayNode();
+            eventsArray.add(requestBody);
+        }
+        List<byte[]> messages = new ArrayList<>(eventsArray.size());
+        for (JsonNode eventNode : eventsArray) {
+            String message = objectMapper.writeValueAsString(normalizeEventFormat(eventNode, clientIp));
+            messages.add(message.getBytes(StandardCharsets.UTF_8));
+        }
+        return messages;
+    }
+
+    String extractTrackingId(JsonNode eventNode) {
+        if (eventNode.has("tracking_id")) {
+            return eventNode.get("tracking_id").asText();
+        }
+        if (eventNode.has("data")) {
+            JsonNode data = eventNode.get("data");
+            if (data.has("tracking_id")) {
+                return data.get("tracking_id").asText();
+            }
+            if (data.has("trackingId")) {
+                return data.get("trackingId").asText();
+            }
+        }
+        return "anonymous";
+    }
+
+    String getEventType(JsonNode eventNode) {
+        if (eventNode.has("event_type")) {
+            return eventNode.get("event_type").asText();
+        }
+        if (eventNode.has("type")) {
+            return eventNode.get("type").asText();
+        }
+        return "unknown";
+    }
+
+    ObjectNode normalizeEventFormat(JsonNode eventNode, String clientIp) {
+        ObjectNode messageNode = objectMapper.createObjectNode();
+
+        String eventType = getEventType(eventNode);
+        String trackingId = extractTrackingId(eventNode);
+
+        messageNode.put("timestamp", Instant.now().toString());
+        messageNode.put("event_type", eventType);
+        messageNode.put("client_ip", clientIp);
+
+        if (eventNode.has("data")) {
+            messageNode.set("data", eventNode.get("data"));
+        } else {
+            ObjectNode dataNode = objectMapper.createObjectNode();
+            for (Map.Entry<String, JsonNode> field : eventNode.properties()) {
+                if (!METADATA_FIELDS.contains(field.getKey())) {
+                    dataNode.set(field.getKey(), field.getValue());
+                }
+            }
+            if (!dataNode.has("tracking_id") && !trackingId.equals("anonymous")) {
+                dataNode.put("tracking_id", trackingId);
+            }
+            messageNode.set("data", dataNode);
+        }
+
+        if (eventNode.has("metadata")) {
+            messageNode.set("metadata", eventNode.get("metadata"));
+        }
+        return messageNode;
+    }
+}
@@ -0,0 +1,99 @@
+package Kafka_Project;
+
+import Kafka_Project.Redis.RedisService;
+import Kafka_Project.service.UniqueVisitorSketches;
+import Kafka_Project.service.UniqueVisitorSketches.Granularity;
+import Kafka_Project.service.UniqueVisitorSketches.Metric;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the unique-visitor sketches, against a mocked Redis.
+ */
+public class UniqueVisitorSketchesTest {
+
+    // 2024-05-01T10:00:00Z
+    private static final long TEN_AM = 1_714_557_600L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RedisService redisService;
+    private UniqueVisitorSketches sketches;
+
+    @BeforeEach
+    void setup() {
+        redisService = mock(RedisService.class);
+        sketches = new UniqueVisitorSketches(redisService);
+    }
+
+    private void observe(String userId, String sessionId, String time) throws Exception {
+        sketches.observe(objectMapper.readTree("{\"event_type\":\"page_view\",\"data\":{\"tracking_id\":\"t1\"," +
+            "\"user_id\":\"" + userId + "\",\"session_id\":\"" + sessionId + "\"}}"), LocalDateTime.parse(time));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushAddsDistinctIdsToMinuteHourAndDaySketches() throws Exception {
+        observe("u1", "s1", "2024-05-01T10:00:05");
+        observe("u1", "s1", "2024-05-01T10:00:40");
+        observe("u2", "s2", "2024-05-01T10:01:10");
+        observe("guest", "s3", "2024-05-01T10:01:20");
+
+        sketches.flush();
+
+        ArgumentCaptor<Map<String, Set<String>>> elements = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map<String, Long>> expiry = ArgumentCaptor.forClass(Map.class);
+        verify(redisService).addToHyperLogLogs(elements.capture(), expiry.capture());
+        long minute = TEN_AM / 60;
+        assertEquals(Set.of("u1"), elements.getValue().get("uniques:users:t1:m:" + minute));
+        assertEquals(Set.of("u2"), elements.getValue().get("uniques:users:t1:m:" + (minute + 1)));
+        assertEquals(Set.of("u1", "u2"), elements.getValue().get("uniques:users:t1:h:" + TEN_AM / 3600));
+        assertEquals(Set.of("s1", "s2", "s3"), elements.getValue().get("uniques:sessions:t1:d:" + TEN_AM / 86400));
+        assertEquals(48 * 3600L, expiry.getValue().get("uniques:users:t1:m:" + minute));
+        assertEquals(0, sketches.pendingBuckets());
+    }
+
+    @Test
+    void failedFlushKeepsIdsForTheNextOne() throws Exception {
+        doThrow(new IllegalStateException("Redis down")).when(redisService).addToHyperLogLogs(any(), any());
+        observe("u1", "s1", "2024-05-01T10:00:05");
+
+        assertThrows(IllegalStateException.class, () -> sketches.flush());
+
+        assertEquals(2, sketches.pendingBuckets());
+    }
+
+    @Test
+    void windowsUseRollupsForWholeBuckets() {
+        // 10:30:15, the 90 minutes back start at 09:01
+        long now = TEN_AM + 30 * 60 + 15;
+
+        List<String> keys = sketches.keys(Metric.USERS, "t1", Granularity.MINUTE, 90, now);
+
+        long firstMinute = (TEN_AM - 59 * 60) / 60;
+        assertEquals("uniques:users:t1:m:" + firstMinute, keys.get(0));
+        // 59 minutes of the 9 o'clock hour, then the 31 minutes of the current hour
+        assertEquals(90, keys.size());
+
+        List<String> twoHours = sketches.keys(Metric.USERS, "t1", Granularity.MINUTE, 120 + 31, now);
+        assertEquals("uniques:users:t1:h:" + (TEN_AM / 3600 - 2), twoHours.get(0));
+        assertEquals("uniques:users:t1:h:" + (TEN_AM / 3600 - 1), twoHours.get(1));
+        assertEquals(2 + 31, twoHours.size());
+
+        List<String> week = sketches.keys(Metric.SESSIONS, "t1", Granularity.HOUR, 7 * 24, now);
+        assertTrue(week.size() < 7 + 2 * 24, "Whole days come from the day sketches");
+        assertThrows(IllegalArgumentException.class,
+            () -> sketches.keys(Metric.USERS, "t1", Granularity.MINUTE, 49 * 60, now));
+    }
+}
@@ -60,10 +60,12 @@ CREATE TABLE IF NOT EXISTS sessions (
     duration_ms Nullable(UInt32),
     bounce UInt8 DEFAULT 0,
     page_views UInt16 DEFAULT 0,
+    interaction_count UInt32 DEFAULT 0,
     created_at DateTime DEFAULT now()
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(start_time)
-ORDER BY (tracking_id, session_id, start_time);
+ORDER BY (tracking_id, session_id, start_time)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 -- 2. page_events - FIXED: Removed enum, use String instead
 CREATE TABLE IF NOT EXISTS page_events (
@@ -89,7 +91,8 @@ CREATE TABLE IF NOT EXISTS page_events (
     save_data Nullable(UInt8)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 -- 3. form_events - FIXED: Removed enum
 CREATE TABLE IF NOT EXISTS form_events (
@@ -111,7 +114,8 @@ CREATE TABLE IF NOT EXISTS form_events (
     success Nullable(UInt8)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 -- 4. ecommerce_events - FIXED: Removed enum
 CREATE TABLE IF NOT EXISTS ecommerce_events (
@@ -133,7 +137,8 @@ CREATE TABLE IF NOT EXISTS ecommerce_events (
     step_name Nullable(String)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 -- =====================================================
 -- Other tables (unchanged but included for completeness)
@@ -170,7 +175,8 @@ CREATE TABLE IF NOT EXISTS interaction_events (
     target Nullable(String)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 CREATE TABLE IF NOT EXISTS mouse_events (
     timestamp DateTime,
@@ -182,7 +188,23 @@ CREATE TABLE IF NOT EXISTS mouse_events (
     y UInt16
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
+
+-- Mouse moves aggregated by the consumer into grid cells per page, viewport bucket and minute.
+-- Partial counts of the same cell (several flushes or consumers) are summed on merge: query with sum(count)
+CREATE TABLE IF NOT EXISTS mouse_heatmap (
+    minute DateTime,
+    tracking_id String,
+    page_url String,
+    viewport_bucket UInt16,
+    cell_size UInt8,
+    cell_x UInt16,
+    cell_y UInt16,
+    count UInt32
+) ENGINE = SummingMergeTree(count)
+PARTITION BY toYYYYMM(minute)
+ORDER BY (tracking_id, page_url, minute, viewport_bucket, cell_size, cell_x, cell_y);
 
 CREATE TABLE IF NOT EXISTS scroll_events (
     timestamp DateTime,
@@ -196,7 +218,8 @@ CREATE TABLE IF NOT EXISTS scroll_events (
     scroll_percent Nullable(UInt8)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
 
 CREATE TABLE IF NOT EXISTS video_events (
     timestamp DateTime,
@@ -210,7 +233,16 @@ CREATE TABLE IF NOT EXISTS video_events (
     current_time Nullable(Float32)
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
+
+-- Insert deduplication for the tables written by the Kafka consumers: a redelivered batch
+-- is inserted with the same insert_deduplication_token and dropped. The tables above that
+-- are not recreated may already exist without the setting
+ALTER TABLE interaction_events MODIFY SETTING non_replicated_deduplication_window = 10000;
+ALTER TABLE mouse_events MODIFY SETTING non_replicated_deduplication_window = 10000;
+ALTER TABLE scroll_events MODIFY SETTING non_replicated_deduplication_window = 10000;
+ALTER TABLE video_events MODIFY SETTING non_replicated_deduplication_window = 10000;
 
 CREATE TABLE IF NOT EXISTS custom_events (
     timestamp DateTime,
@@ -219,21 +251,32 @@ CREATE TABLE IF NOT EXISTS custom_events (
     tracking_id String,
     page_url String,
     event_name LowCardinality(String),
+    -- Compact JSON object, keys capped per tracking_id by the consumer (read with JSONExtract*)
     properties String
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
+
+-- Written by the custom_event consumer since it exists; older deployments created it without the setting
+ALTER TABLE custom_events MODIFY SETTING non_replicated_deduplication_window = 10000;
 
 CREATE TABLE IF NOT EXISTS batch_events (
     timestamp DateTime,
     session_id String,
     user_id String,
     tracking_id String,
-    event_data String,
+    -- Raw envelopes of one session and minute, one element each (RawEventArchiver)
+    event_data Array(String) CODEC(ZSTD(3)),
     event_count UInt16
 ) ENGINE = MergeTree()
 PARTITION BY toYYYYMM(timestamp)
-ORDER BY (tracking_id, session_id, timestamp);
+ORDER BY (tracking_id, session_id, timestamp)
+SETTINGS non_replicated_deduplication_window = 10000;
+
+-- Nothing wrote the String column before the archiver, so there are no rows to convert
+ALTER TABLE batch_events MODIFY COLUMN event_data Array(String) CODEC(ZSTD(3));
+ALTER TABLE batch_events MODIFY SETTING non_replicated_deduplication_window = 10000;
 
 CREATE TABLE IF NOT EXISTS user_first_session (
     user_id String,